@@ -0,0 +1,38 @@
+package com.mycompany.chessmasterske.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Headless entry point for the benchmarks. It accepts the usual JMH command
+ * line and runs the selected benchmarks once per thread count, so no
+ * display is needed. For example:
+ * <pre>
+ * java -Dbenchmark.threads=1,8 -jar target/benchmarks.jar LoginBenchmark -p users=1000,1000000
+ * </pre>
+ * The thread counts come from the benchmark.threads system property
+ * (default 1,4,16); a -t option on the command line overrides it.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        System.setProperty("java.awt.headless", "true");
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        String[] threadCounts = options.getThreads().hasValue()
+                ? new String[] {Integer.toString(options.getThreads().get())}
+                : System.getProperty("benchmark.threads", "1,4,16").split(",");
+        for (String threads : threadCounts) {
+            new Runner(new OptionsBuilder()
+                    .parent(options)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .jvmArgsAppend("-Djava.awt.headless=true")
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mycompany.chessmasterske.benchmarks;
+
+import com.mycompany.chessmasterske.CoachingRecord;
+import com.mycompany.chessmasterske.GameResult;
+import com.mycompany.chessmasterske.LessonRecord;
+import com.mycompany.chessmasterske.PuzzleRecord;
+import com.mycompany.chessmasterske.RecordSchema;
+import com.mycompany.chessmasterske.UserRecord;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+/**
+ * This class generates the files the benchmarks run against, in the same
+ * formats the application writes them.
+ */
+final class Datasets {
+    static final String PASSWORD = "benchmark-password";
+
+    private Datasets() {
+    }
+
+    static String username(long n) {
+        return "user" + n;
+    }
+
+    /**
+     * Writes a users file of registered users. Every user shares one
+     * password hash, since hashing millions of passwords would take longer
+     * than the benchmark itself.
+     * @param file The file to write
+     * @param count The number of users
+     * @param passwordHash The stored hash of {@link #PASSWORD}
+     */
+    static void writeUsers(Path file, long count, String passwordHash) throws IOException {
+        writeLines(file, count, n -> new UserRecord(username(n), username(n) + "@example.com", passwordHash,
+                1200 + (int) (n % 800)).toLine());
+    }
+
+    /**
+     * Returns the n-th record of one of the four form logs.
+     * @param form "lesson", "puzzle", "game" or "coaching"
+     * @param n The record number
+     * @return The record, formatted as the form writes it
+     */
+    static String formRecord(String form, long n) {
+        switch (form) {
+            case "lesson":
+                return RecordSchema.LESSONS.encode(new LessonRecord(Long.toString(n), username(n),
+                        Long.toString(10_000_000 + n), "coach" + (n % 50), "Endgame technique"));
+            case "puzzle":
+                return RecordSchema.PUZZLES.encode(new PuzzleRecord(Long.toString(n), username(n), "Hard"));
+            case "game":
+                return new GameResult(Long.toString(n), username(n), username(n + 1), GameResult.DRAW).toLine();
+            case "coaching":
+                return RecordSchema.COACHING.encode(new CoachingRecord(Long.toString(n), "coach" + (n % 50),
+                        "FIDE Master", username(n)));
+            default:
+                throw new IllegalArgumentException("Unknown form: " + form);
+        }
+    }
+
+    /**
+     * Returns the file one of the four forms saves to.
+     */
+    static String formFile(String form) {
+        return form + "_credentials.txt";
+    }
+
+    static void writeLines(Path file, long count, LongFunction<String> line) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long n = 0; n < count; n++) {
+                writer.write(line.apply(n));
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Deletes a benchmark directory and everything in it.
+     */
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.mycompany.chessmasterske.benchmarks;
+
+import com.mycompany.chessmasterske.GroupCommitWriter;
+import com.mycompany.chessmasterske.RecordFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks the four form writers (lesson, puzzle, game and coaching)
+ * appending to a log that already holds the given number of records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FormSaveBenchmark {
+    @Param({"lesson", "puzzle", "game", "coaching"})
+    public String form;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long records;
+
+    private Path directory;
+    private GroupCommitWriter writer;
+    private RecordFile log;
+    private AtomicLong nextRecord;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("form-benchmark");
+        Path logFile = directory.resolve(Datasets.formFile(form));
+        Datasets.writeLines(logFile, records, n -> Datasets.formRecord(form, n));
+        writer = new GroupCommitWriter(GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE, GroupCommitWriter.DEFAULT_MAX_LATENCY_MILLIS);
+        log = RecordFile.open(logFile.toString());
+        nextRecord = new AtomicLong(records);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        RecordFile.closeAll();
+        Datasets.delete(directory);
+    }
+
+    @Benchmark
+    public long save() {
+        return writer.submit(log, Datasets.formRecord(form, nextRecord.getAndIncrement())).join();
+    }
+}
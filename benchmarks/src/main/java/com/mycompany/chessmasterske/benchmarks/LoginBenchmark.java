@@ -0,0 +1,90 @@
+package com.mycompany.chessmasterske.benchmarks;
+
+import com.mycompany.chessmasterske.GroupCommitWriter;
+import com.mycompany.chessmasterske.PasswordHasher;
+import com.mycompany.chessmasterske.RecordFile;
+import com.mycompany.chessmasterske.UserRecord;
+import com.mycompany.chessmasterske.UserStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the login path: finding a user and checking their password,
+ * both when the verification cache answers and when the hash has to be
+ * computed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoginBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long users;
+
+    // Well below the production work factor so misses do not drown out everything else
+    @Param({"1000"})
+    public int iterations;
+
+    private Path directory;
+    private GroupCommitWriter writer;
+    private UserStore store;
+    // A second store over the same users with the verification cache turned off
+    private UserStore uncachedStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty("chessmasters.pbkdf2.iterations", Integer.toString(iterations));
+        directory = Files.createTempDirectory("login-benchmark");
+        Path usersFile = directory.resolve("users.txt");
+        Datasets.writeUsers(usersFile, users, PasswordHasher.hash(Datasets.PASSWORD, iterations));
+        writer = new GroupCommitWriter(GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE, GroupCommitWriter.DEFAULT_MAX_LATENCY_MILLIS);
+        store = UserStore.open(usersFile.toString(), writer);
+        uncachedStore = UserStore.open(usersFile.toString(), writer, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        RecordFile.closeAll();
+        Datasets.delete(directory);
+    }
+
+    private String randomUser() {
+        return Datasets.username(ThreadLocalRandom.current().nextLong(users));
+    }
+
+    @Benchmark
+    public UserRecord findUser() {
+        return store.find(randomUser());
+    }
+
+    @Benchmark
+    public boolean checkCredentialsUnknownUser() {
+        return store.checkCredentials("nobody", Datasets.PASSWORD);
+    }
+
+    @Benchmark
+    public boolean checkCredentialsCached() {
+        // The same few users log in again and again, as after a page reload
+        return store.checkCredentials(Datasets.username(ThreadLocalRandom.current().nextInt(100)), Datasets.PASSWORD);
+    }
+
+    @Benchmark
+    public boolean checkCredentialsUncached() {
+        // Every login is hashed: a cache on this store would answer most of them once warmed up
+        return uncachedStore.checkCredentials(randomUser(), Datasets.PASSWORD);
+    }
+}
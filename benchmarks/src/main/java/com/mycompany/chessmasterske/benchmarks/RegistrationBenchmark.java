@@ -0,0 +1,73 @@
+package com.mycompany.chessmasterske.benchmarks;
+
+import com.mycompany.chessmasterske.GroupCommitWriter;
+import com.mycompany.chessmasterske.PasswordHasher;
+import com.mycompany.chessmasterske.RecordFile;
+import com.mycompany.chessmasterske.UserRecord;
+import com.mycompany.chessmasterske.UserStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks registering new users on top of an existing users file: the
+ * password hash, the group-committed append and the index update. With
+ * more than one shard the users are split into shard files with a writer
+ * each; run with several threads (-t) to see registrations spread over them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RegistrationBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long users;
+
+    @Param({"1000"})
+    public int iterations;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private Path directory;
+    private GroupCommitWriter writer;
+    private UserStore store;
+    private AtomicLong nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty("chessmasters.pbkdf2.iterations", Integer.toString(iterations));
+        directory = Files.createTempDirectory("registration-benchmark");
+        Path usersFile = directory.resolve("users.txt");
+        Datasets.writeUsers(usersFile, users, PasswordHasher.hash(Datasets.PASSWORD, iterations));
+        writer = new GroupCommitWriter(GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE, GroupCommitWriter.DEFAULT_MAX_LATENCY_MILLIS);
+        store = shards == 1 ? UserStore.open(usersFile.toString(), writer)
+                : UserStore.openSharded(usersFile.toString(), shards);
+        nextUser = new AtomicLong(users);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        RecordFile.closeAll();
+        Datasets.delete(directory);
+    }
+
+    @Benchmark
+    public void registerUser() {
+        String username = Datasets.username(nextUser.getAndIncrement());
+        store.register(new UserRecord(username, username + "@example.com", Datasets.PASSWORD, 0)).join();
+    }
+}
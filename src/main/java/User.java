@@ -1,27 +1,74 @@
 import javax.swing.*;
+import javax.swing.event.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import com.mycompany.chessmasterske.ClubHttpServer;
+import com.mycompany.chessmasterske.ClubService;
+import com.mycompany.chessmasterske.DuplicateRegistrationException;
+import com.mycompany.chessmasterske.EdtStallDetector;
+import com.mycompany.chessmasterske.GameResult;
+import com.mycompany.chessmasterske.Leaderboard;
+import com.mycompany.chessmasterske.LessonScheduler;
+import com.mycompany.chessmasterske.MoveCodec;
+import com.mycompany.chessmasterske.NotAuthorizedException;
+import com.mycompany.chessmasterske.OpeningExplorer;
+import com.mycompany.chessmasterske.Position;
+import com.mycompany.chessmasterske.PuzzleCatalog;
+import com.mycompany.chessmasterske.RateLimitedException;
+import com.mycompany.chessmasterske.RecordSchema;
+import com.mycompany.chessmasterske.SearchIndex;
+import com.mycompany.chessmasterske.SessionStore;
+import com.mycompany.chessmasterske.UserRecord;
 
 /**
  * This class represents a user registration system with GUI.
  */
 public class User extends JFrame {
+    // Logins from this window are rate limited as one source
+    private static final String DESKTOP_SOURCE = "desktop";
+    // Height of the saved entries table below each form
+    private static final int HISTORY_HEIGHT = 200;
     // Components for user registration
     private JLabel usernameLabel, emailLabel, passwordLabel, eloRatingLabel;
     private JTextField usernameField, emailField, eloRatingField;
     private JPasswordField passwordField;
     private JButton registerButton, loginButton;
+    // Runs user and log file operations off the Event Dispatch Thread
+    private final ClubService service;
+    // The logged-in member's session, set once the login succeeds
+    private SessionStore.Session session;
 
     /**
      * Constructor to initialize the user registration GUI.
      */
     public User() {
+        this(new ClubService());
+    }
+
+    /**
+     * Constructor to initialize the user registration GUI over a shared
+     * service, e.g. one that also serves the HTTP API.
+     * @param service The service that handles the forms
+     */
+    public User(ClubService service) {
+        this.service = service;
         setTitle("User Registration");
         setSize(400, 250);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new GridLayout(6, 2));
 
+        // Report it if the registered users could not be loaded in the background
+        ClubService.onEdt(service.users(), (store, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error occurred while loading users.");
+            }
+        });
+
         // Initialize components
         usernameLabel = new JLabel("Username:");
         usernameField = new JTextField();
@@ -48,7 +95,6 @@ public class User extends JFrame {
         registerButton.addActionListener(e -> {
             if (validateRegistration()) {
                 registerUser();
-                openLoginPage();
             } else {
                 JOptionPane.showMessageDialog(User.this, "Please fill in all fields.");
             }
@@ -60,6 +106,11 @@ public class User extends JFrame {
         loginButton.addActionListener(e -> openLoginPage());
         add(loginButton);
 
+        // Import button for registering many members from a CSV file
+        JButton importButton = new JButton("Import Members");
+        importButton.addActionListener(e -> importUsers(importButton));
+        add(importButton);
+
         setVisible(true);
     }
 
@@ -68,12 +119,39 @@ public class User extends JFrame {
      * @return true if all fields are filled, false otherwise
      */
     private boolean validateRegistration() {
-        // Check if all fields are filled
-        String username = usernameField.getText();
-        String email = emailField.getText();
-        String password = new String(passwordField.getPassword());
-        String eloRating = eloRatingField.getText();
-        return !username.isEmpty() && !email.isEmpty() && !password.isEmpty() && !eloRating.isEmpty();
+        // Check if all fields are filled and the rating is a number
+        return ClubService.validateRegistration(usernameField.getText(), emailField.getText(),
+                new String(passwordField.getPassword()), eloRatingField.getText());
+    }
+
+    /**
+     * Lets the user pick a CSV file of members (username, email, password,
+     * eloRating) and registers them in the background.
+     * @param importButton The import button, disabled while importing
+     */
+    private void importUsers(JButton importButton) {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        importButton.setEnabled(false);
+        ClubService.onEdt(service.importUsers(chooser.getSelectedFile().toPath()), (report, ex) -> {
+            importButton.setEnabled(true);
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error occurred while importing members.");
+                return;
+            }
+            StringBuilder message = new StringBuilder(report.toString()).append('.');
+            for (String problem : report.getProblems()) {
+                message.append('\n').append(problem);
+                if (message.length() > 2_000) {
+                    message.append("\n...");
+                    break;
+                }
+            }
+            JOptionPane.showMessageDialog(this, message.toString());
+        });
     }
 
     /**
@@ -84,18 +162,23 @@ public class User extends JFrame {
         String username = usernameField.getText();
         String email = emailField.getText();
         String password = new String(passwordField.getPassword());
-        int eloRating = Integer.parseInt(eloRatingField.getText());
-
-        // Save user details to file
-        try (FileWriter writer = new FileWriter("users.txt", true);
-             BufferedWriter bw = new BufferedWriter(writer)) {
-            bw.write(username + "," + email + "," + password + "," + eloRating);
-            bw.newLine();
-            JOptionPane.showMessageDialog(this, "User registered successfully!");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error occurred while registering user.");
-        }
+        int eloRating = Integer.parseInt(eloRatingField.getText().trim());
+
+        // Queue the user for saving; the outcome is reported back on the EDT
+        ClubService.onEdt(service.registerUser(new UserRecord(username, email, password, eloRating)), (result, ex) -> {
+            if (ex instanceof DuplicateRegistrationException) {
+                // Stay on the form so another username or email can be entered
+                JOptionPane.showMessageDialog(this, ex.getMessage());
+                return;
+            }
+            if (ex == null) {
+                JOptionPane.showMessageDialog(this, "User registered successfully!");
+            } else {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error occurred while registering user.");
+            }
+            openLoginPage();
+        });
     }
 
     /**
@@ -160,34 +243,37 @@ public class User extends JFrame {
             String username = usernameField.getText();
             String password = new String(passwordField.getPassword());
 
-            // Validate credentials
-            if (checkCredentials(username, password)) {
-                dispose();
-                displayDashboard(username);
-            } else {
-                JOptionPane.showMessageDialog(this, "Invalid username or password.");
-            }
+            // Validate credentials in the background; disable the button meanwhile
+            loginButton.setEnabled(false);
+            ClubService.onEdt(login(username, password), (session, ex) -> {
+                loginButton.setEnabled(true);
+                Throwable failure = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (failure instanceof RateLimitedException) {
+                    JOptionPane.showMessageDialog(this, "Too many login attempts. Please try again in "
+                            + ((RateLimitedException) failure).getRetryAfterSeconds() + " seconds.");
+                } else if (failure != null) {
+                    failure.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "Error occurred while checking credentials.");
+                } else if (session != null) {
+                    dispose();
+                    User.this.session = session;
+                    displayDashboard(username);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Invalid username or password.");
+                }
+            });
         }
 
         /**
-         * Checks the entered username and password against stored credentials.
+         * Checks the entered username and password against stored credentials
+         * and starts a session if they are valid.
          * @param username The entered username
          * @param password The entered password
-         * @return true if the credentials are valid, false otherwise
+         * @return A future that completes with the session, or with null if
+         *         the credentials are invalid
          */
-        private boolean checkCredentials(String username, String password) {
-            try (BufferedReader br = new BufferedReader(new FileReader("users.txt"))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] data = line.split(",");
-                    if (data[0].equals(username) && data[2].equals(password)) {
-                        return true;
-                    }
-                }
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-            return false;
+        private CompletableFuture<SessionStore.Session> login(String username, String password) {
+            return service.login(username, password, DESKTOP_SOURCE);
         }
 
         /**
@@ -206,7 +292,7 @@ public class User extends JFrame {
     private void displayDashboard(String username) {
         // Create dashboard frame
         JFrame dashboardFrame = new JFrame("Dashboard");
-        dashboardFrame.setSize(400, 200);
+        dashboardFrame.setSize(500, 230);
         dashboardFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Welcome label
@@ -236,10 +322,167 @@ public class User extends JFrame {
         gamesButton.addActionListener(e -> showGameForm());
         coachButton.addActionListener(e -> showCoachingForm());
 
+        // Rank panel, filled in once the leaderboard has been loaded
+        JPanel rankPanel = new JPanel(new GridLayout(1, 5));
+        JLabel rankLabel = new JLabel("Loading rank...");
+        rankLabel.setHorizontalAlignment(JLabel.CENTER);
+        JButton findOpponentButton = new JButton("Find Opponent");
+        JButton leaderboardButton = new JButton("Leaderboard");
+        rankPanel.add(rankLabel);
+        rankPanel.add(findOpponentButton);
+        rankPanel.add(leaderboardButton);
+        JButton exportButton = new JButton("Export Data");
+        rankPanel.add(exportButton);
+        JButton searchButton = new JButton("Search");
+        rankPanel.add(searchButton);
+        dashboardFrame.add(rankPanel, BorderLayout.SOUTH);
+
+        ClubService.onEdt(service.leaderboard(), (leaderboard, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                rankLabel.setText("Rank unavailable");
+                return;
+            }
+            int rank = leaderboard.rank(username);
+            rankLabel.setText(rank < 0 ? "Unranked" : "Rank #" + rank + " of " + leaderboard.size());
+        });
+        leaderboardButton.addActionListener(e -> showLeaderboard());
+        findOpponentButton.addActionListener(e -> findOpponent(username, findOpponentButton));
+        exportButton.addActionListener(e -> exportData(dashboardFrame, exportButton));
+        searchButton.addActionListener(e -> showSearch());
+
         // Make the dashboard frame visible
         dashboardFrame.setVisible(true);
     }
 
+    /**
+     * Lets the user pick a folder and writes the members, games and lesson
+     * requests to users.csv, games.csv and lessons.csv in it, in the
+     * background.
+     * @param dashboardFrame The dashboard, used as the dialogs' parent
+     * @param exportButton The export button, disabled while exporting
+     */
+    private void exportData(JFrame dashboardFrame, JButton exportButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(dashboardFrame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File folder = chooser.getSelectedFile();
+        exportButton.setEnabled(false);
+        CompletableFuture<Long> users = service.exportUsers(new File(folder, "users.csv").toPath());
+        CompletableFuture<Long> games = service.exportGames(new File(folder, "games.csv").toPath());
+        CompletableFuture<Long> lessons = service.exportLessons(new File(folder, "lessons.csv").toPath());
+        ClubService.onEdt(CompletableFuture.allOf(users, games, lessons), (done, ex) -> {
+            exportButton.setEnabled(true);
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(dashboardFrame, "Error occurred while exporting data.");
+            } else {
+                JOptionPane.showMessageDialog(dashboardFrame, "Exported " + users.join() + " members, "
+                        + games.join() + " games and " + lessons.join() + " lesson requests.");
+            }
+        });
+    }
+
+    /**
+     * Joins the matchmaking queue, or leaves it if already searching. Once an
+     * opponent is found the game form opens with both players filled in.
+     * @param username The username of the logged-in user
+     * @param button The button that toggles the search
+     */
+    private void findOpponent(String username, JButton button) {
+        if (service.cancelMatch(username)) {
+            button.setText("Find Opponent");
+            return;
+        }
+        button.setText("Cancel Search");
+        ClubService.onEdt(service.findMatch(username), (match, ex) -> {
+            button.setText("Find Opponent");
+            if (ex instanceof CancellationException) {
+                return;
+            }
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Error occurred while finding an opponent.");
+                return;
+            }
+            showGameForm(match.getWhitePlayer(), match.getBlackPlayer());
+        });
+    }
+
+    /**
+     * Displays the ten highest rated players.
+     */
+    private void showLeaderboard() {
+        ClubService.onEdt(service.leaderboard(), (leaderboard, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Error occurred while loading the leaderboard.");
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            int rank = 1;
+            for (Leaderboard.Entry entry : leaderboard.top(10)) {
+                text.append(rank++).append(". ").append(entry.getUsername())
+                        .append(" (").append(entry.getRating()).append(")\n");
+            }
+            JOptionPane.showMessageDialog(null, text.length() == 0 ? "No players yet." : text.toString(), "Leaderboard", JOptionPane.PLAIN_MESSAGE);
+        });
+    }
+
+    /**
+     * Displays the search window: as the user types, the players, coaches
+     * and lesson requests matching the text so far are listed.
+     */
+    private void showSearch() {
+        JFrame searchFrame = new JFrame("Search");
+        searchFrame.setSize(400, 300);
+        searchFrame.setLayout(new BorderLayout());
+
+        JTextField queryField = new JTextField();
+        queryField.setToolTipText("The start of a username, email, coach or word of a lesson description");
+        searchFrame.add(queryField, BorderLayout.NORTH);
+
+        DefaultListModel<SearchIndex.Hit> results = new DefaultListModel<>();
+        searchFrame.add(new JScrollPane(new JList<>(results)), BorderLayout.CENTER);
+
+        // Only the answer to the latest text is shown, however the searches finish
+        int[] latest = new int[1];
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+
+            private void search() {
+                int query = ++latest[0];
+                ClubService.onEdt(service.search(queryField.getText(), 20), (hits, ex) -> {
+                    if (query != latest[0]) {
+                        return;
+                    }
+                    if (ex != null) {
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(searchFrame, "Error occurred while searching.");
+                        return;
+                    }
+                    results.clear();
+                    hits.forEach(results::addElement);
+                });
+            }
+        });
+
+        // Make the search frame visible
+        searchFrame.setVisible(true);
+    }
+
     /**
      * Displays the lesson training form for the user to apply for lessons.
      */
@@ -278,7 +521,13 @@ public class User extends JFrame {
         lessonFrame.add(backButton);
 
         // Add action listeners to buttons
+        // The lesson is for the logged-in member
+        usernameField.setText(session.getUsername());
+        usernameField.setEditable(false);
         saveButton.addActionListener(e -> {
+            if (!checkSession(lessonFrame)) {
+                return;
+            }
             if (validateLessonForm(idField.getText(), usernameField.getText(), fideIdField.getText(), coachField.getText(), descriptionField.getText())) {
                 saveCredentials(idField.getText(), usernameField.getText(), fideIdField.getText(), coachField.getText(), descriptionField.getText());
             } else {
@@ -288,28 +537,19 @@ public class User extends JFrame {
         backButton.addActionListener(e -> lessonFrame.dispose());
 
         // Display saved credentials
-        JTextArea credentialsArea = new JTextArea();
-        lessonFrame.add(new JScrollPane(credentialsArea));
+        addHistory(lessonFrame, ClubService.LESSONS_FILE, RecordSchema.LESSONS);
 
         // Make the lesson training form frame visible
         lessonFrame.setVisible(true);
     }
     private boolean validateLessonForm(String id, String username, String fideId, String coach, String description) {
-        return !id.isEmpty() && !username.isEmpty() && !fideId.isEmpty() && !coach.isEmpty() && !description
-        .isEmpty();
+        return ClubService.validateLesson(id, username, fideId, coach, description);
     }
 
     private void saveCredentials(String id, String username, String fideId, String coach, String description) {
-        // Save credentials to local storage (e.g., file)
-        try (FileWriter writer = new FileWriter("lesson_credentials.txt", true);
-             BufferedWriter bw = new BufferedWriter(writer)) {
-            bw.write(id + "," + username + "," + fideId + "," + coach + "," + description);
-            bw.newLine();
-            JOptionPane.showMessageDialog(null, "Credentials saved successfully!");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error occurred while saving credentials.");
-        }
+        // Queue credentials for saving to local storage (e.g., file)
+        reportBooked(service.saveLesson(id, username, fideId, coach, description),
+                "Credentials saved successfully!", "Error occurred while saving credentials.");
     }
     /**
      * Displays the puzzle form for the user to try a puzzle.
@@ -326,13 +566,13 @@ public class User extends JFrame {
         puzzleFrame.add(idField);
 
         JLabel usernameLabel = new JLabel("Username:");
-        JTextField usernameField = new JTextField();
+        JTextField usernameField = new JTextField(session.getUsername());
+        usernameField.setEditable(false);
         puzzleFrame.add(usernameLabel);
         puzzleFrame.add(usernameField);
 
         JLabel difficultyLabel = new JLabel("Puzzle Difficulty:");
-        String[] difficulties = {"Easy", "Hard", "Extremely Hard"};
-        JComboBox<String> difficultyComboBox = new JComboBox<>(difficulties);
+        JComboBox<String> difficultyComboBox = new JComboBox<>(PuzzleCatalog.DIFFICULTIES);
         puzzleFrame.add(difficultyLabel);
         puzzleFrame.add(difficultyComboBox);
 
@@ -343,6 +583,9 @@ public class User extends JFrame {
         // ActionListener for the submit button
         submitButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                if (!checkSession(puzzleFrame)) {
+                    return;
+                }
                 if (validatePuzzleForm(idField.getText(), usernameField.getText())) {
                     savePuzzleCredentials(idField.getText(), usernameField.getText(), (String) difficultyComboBox.getSelectedItem());
                 } else {
@@ -363,8 +606,7 @@ public class User extends JFrame {
         puzzleFrame.add(backButton);
 
         // Display area for saved credentials
-        JTextArea credentialsArea = new JTextArea();
-        puzzleFrame.add(new JScrollPane(credentialsArea));
+        addHistory(puzzleFrame, ClubService.PUZZLES_FILE, RecordSchema.PUZZLES);
 
         // Make the puzzle frame visible
         puzzleFrame.setVisible(true);
@@ -377,7 +619,7 @@ public class User extends JFrame {
      * @return True if both ID and username are not empty, otherwise false
      */
     private boolean validatePuzzleForm(String id, String username) {
-        return !id.isEmpty() && !username.isEmpty();
+        return ClubService.validatePuzzle(id, username);
     }
 
     /**
@@ -387,26 +629,49 @@ public class User extends JFrame {
      * @param difficulty The difficulty level selected in the puzzle form
      */
     private void savePuzzleCredentials(String id, String username, String difficulty) {
-        // Save credentials to local storage (e.g., file)
-        try (FileWriter writer = new FileWriter("puzzle_credentials.txt", true);
-             BufferedWriter bw = new BufferedWriter(writer)) {
-            bw.write("ID: " + id + ", Username: " + username + ", Difficulty: " + difficulty);
-            bw.newLine();
-            JOptionPane.showMessageDialog(null, "Puzzle credentials saved successfully!");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error occurred while saving puzzle credentials.");
-        }
+        // Queue credentials for saving to local storage (e.g., file)
+        reportSaved(service.savePuzzle(id, username, difficulty),
+                "Puzzle credentials saved successfully!", "Error occurred while saving puzzle credentials.");
+        showNextPuzzle(username, difficulty);
+    }
+
+    /**
+     * Shows the user the next puzzle of the chosen difficulty they have not
+     * tried yet.
+     * @param username The username entered in the puzzle form
+     * @param difficulty The difficulty level selected in the puzzle form
+     */
+    private void showNextPuzzle(String username, String difficulty) {
+        ClubService.onEdt(service.nextPuzzle(username, difficulty), (puzzle, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Error occurred while loading puzzles.");
+            } else if (puzzle == null) {
+                JOptionPane.showMessageDialog(null, "No new " + difficulty + " puzzles available.");
+            } else {
+                JOptionPane.showMessageDialog(null, "Puzzle " + puzzle.getId() + " (rating " + puzzle.getRating() + ")\n"
+                        + "Position: " + puzzle.getFen());
+            }
+        });
     }
 
   /**
      * Displays the form for playing a game.
      */
     private void showGameForm() {
+        showGameForm("", "");
+    }
+
+    /**
+     * Displays the form for playing a game with the players filled in.
+     * @param whitePlayer The username of the white player
+     * @param blackPlayer The username of the black player
+     */
+    private void showGameForm(String whitePlayer, String blackPlayer) {
         // Create a new JFrame for the game form
         JFrame gameFrame = new JFrame("Play Game");
-        gameFrame.setSize(400, 250);
-        gameFrame.setLayout(new GridLayout(5, 2));
+        gameFrame.setSize(400, 310);
+        gameFrame.setLayout(new GridLayout(7, 2));
 
         // Labels and text fields for your ID, white player, black player, and result
         JLabel yourIdLabel = new JLabel("Your ID:");
@@ -415,12 +680,12 @@ public class User extends JFrame {
         gameFrame.add(yourIdField);
 
         JLabel whitePlayerLabel = new JLabel("White Player Username:");
-        JTextField whitePlayerField = new JTextField();
+        JTextField whitePlayerField = new JTextField(whitePlayer);
         gameFrame.add(whitePlayerLabel);
         gameFrame.add(whitePlayerField);
 
         JLabel blackPlayerLabel = new JLabel("Black Player Username:");
-        JTextField blackPlayerField = new JTextField();
+        JTextField blackPlayerField = new JTextField(blackPlayer);
         gameFrame.add(blackPlayerLabel);
         gameFrame.add(blackPlayerField);
 
@@ -437,6 +702,9 @@ public class User extends JFrame {
         // ActionListener for the submit button
         submitButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                if (!checkSession(gameFrame)) {
+                    return;
+                }
                 // Validate form fields and save credentials if valid
                 if (validateGameForm(yourIdField.getText(), whitePlayerField.getText(), blackPlayerField.getText())) {
                     saveGameCredentials(yourIdField.getText(), whitePlayerField.getText(), blackPlayerField.getText(), (String) resultComboBox.getSelectedItem());
@@ -458,14 +726,63 @@ public class User extends JFrame {
         gameFrame.add(submitButton);
         gameFrame.add(backButton);
 
+        // Import button for archiving games from a PGN file
+        JButton importButton = new JButton("Import PGN");
+        importButton.addActionListener(e -> importPgn(gameFrame, importButton));
+        gameFrame.add(importButton);
+
+        // Explorer button for move statistics from archived games
+        JButton explorerButton = new JButton("Opening Explorer");
+        explorerButton.addActionListener(e -> showOpeningExplorer());
+        gameFrame.add(explorerButton);
+
         // Display area for saved credentials
-        JTextArea credentialsArea = new JTextArea();
-        gameFrame.add(new JScrollPane(credentialsArea));
+        addHistory(gameFrame, ClubService.GAMES_FILE, RecordSchema.GAMES);
 
         // Make the game frame visible
         gameFrame.setVisible(true);
     }
 
+    /**
+     * Shows the records saved in a log below a form, newest first. The table
+     * reads only the rows scrolled into view, so even a long log opens at
+     * once, and it shows new records within a second while the form is open.
+     * @param frame The form
+     * @param fileName The log file, e.g. "game_credentials.txt"
+     * @param schema The log's schema, whose fields become the columns
+     */
+    private void addHistory(JFrame frame, String fileName, RecordSchema<?> schema) {
+        JTable table = new JTable();
+        table.setFillsViewportHeight(true);
+        JScrollPane historyPane = new JScrollPane(table);
+        historyPane.setPreferredSize(new Dimension(frame.getWidth(), HISTORY_HEIGHT));
+
+        // The form keeps its own layout above the table
+        JPanel content = new JPanel(new BorderLayout());
+        content.add(frame.getContentPane(), BorderLayout.NORTH);
+        content.add(historyPane, BorderLayout.CENTER);
+        frame.setContentPane(content);
+        frame.setSize(frame.getWidth(), frame.getHeight() + HISTORY_HEIGHT);
+
+        ClubService.onEdt(service.history(fileName, schema), (model, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(frame, "Error occurred while loading saved entries.");
+                return;
+            }
+            table.setModel(model);
+            Timer refresher = new Timer(1000, null);
+            refresher.addActionListener(e -> {
+                if (table.isShowing()) {
+                    model.refresh();
+                } else {
+                    refresher.stop();
+                }
+            });
+            refresher.start();
+        });
+    }
+
     /**
      * Validates the game form fields.
      * @param yourId The ID entered in the game form
@@ -475,7 +792,7 @@ public class User extends JFrame {
      */
     private boolean validateGameForm(String yourId, String whitePlayer, String blackPlayer) {
         // Check if all fields are not empty
-        return !yourId.isEmpty() && !whitePlayer.isEmpty() && !blackPlayer.isEmpty();
+        return ClubService.validateGame(yourId, whitePlayer, blackPlayer);
     }
 
     /**
@@ -486,17 +803,98 @@ public class User extends JFrame {
      * @param result The result of the game (either "White" or "Black")
      */
     private void saveGameCredentials(String yourId, String whitePlayer, String blackPlayer, String result) {
-        // Save credentials to local storage (e.g., file)
-        try (FileWriter writer = new FileWriter("game_credentials.txt", true);
-             BufferedWriter bw = new BufferedWriter(writer)) {
-            bw.write("Your ID: " + yourId + ", White Player: " + whitePlayer + ", Black Player: " + blackPlayer + ", Result: " + result);
-            bw.newLine();
-            JOptionPane.showMessageDialog(null, "Game credentials saved successfully!");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error occurred while saving game credentials.");
+        // Queue credentials for saving to local storage (e.g., file)
+        reportSaved(service.saveGame(session.getUsername(), new GameResult(yourId, whitePlayer, blackPlayer, result)),
+                "Game credentials saved successfully!", "Error occurred while saving game credentials.");
+    }
+    /**
+     * Lets the user pick a PGN file and imports its games into the game
+     * archive in the background.
+     * @param gameFrame The game form, used as the dialogs' parent
+     * @param importButton The import button, disabled while importing
+     */
+    private void importPgn(JFrame gameFrame, JButton importButton) {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(gameFrame) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        importButton.setEnabled(false);
+        ClubService.onEdt(service.importPgn(chooser.getSelectedFile().toPath()), (imported, ex) -> {
+            importButton.setEnabled(true);
+            if (ex != null) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(gameFrame, "Error occurred while importing games.");
+            } else {
+                JOptionPane.showMessageDialog(gameFrame, "Imported " + imported + " games.");
+            }
+        });
+    }
+
+    /**
+     * Displays the opening explorer: the user enters the moves leading to
+     * a position and sees every move club games continued with, with the
+     * share of white wins, draws and black wins.
+     */
+    private void showOpeningExplorer() {
+        JFrame explorerFrame = new JFrame("Opening Explorer");
+        explorerFrame.setSize(400, 300);
+        explorerFrame.setLayout(new BorderLayout());
+
+        // Moves field and explore button
+        JPanel movesPanel = new JPanel(new BorderLayout());
+        JTextField movesField = new JTextField();
+        movesField.setToolTipText("Moves from the starting position, e.g. e4 e5 Nf3");
+        JButton exploreButton = new JButton("Explore");
+        movesPanel.add(new JLabel("Moves: "), BorderLayout.WEST);
+        movesPanel.add(movesField, BorderLayout.CENTER);
+        movesPanel.add(exploreButton, BorderLayout.EAST);
+        explorerFrame.add(movesPanel, BorderLayout.NORTH);
+
+        // Display area for the continuations
+        JTextArea resultsArea = new JTextArea();
+        resultsArea.setEditable(false);
+        resultsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        explorerFrame.add(new JScrollPane(resultsArea), BorderLayout.CENTER);
+
+        ActionListener explore = e -> {
+            Position position = Position.start();
+            try {
+                for (String move : movesField.getText().trim().split("\\s+")) {
+                    if (!move.isEmpty()) {
+                        position.play(position.parseSan(move));
+                    }
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                JOptionPane.showMessageDialog(explorerFrame, "Invalid moves: " + ex.getMessage());
+                return;
+            }
+            exploreButton.setEnabled(false);
+            resultsArea.setText("Loading...");
+            ClubService.onEdt(service.explore(position), (continuations, ex) -> {
+                exploreButton.setEnabled(true);
+                if (ex != null) {
+                    ex.printStackTrace();
+                    resultsArea.setText("");
+                    JOptionPane.showMessageDialog(explorerFrame, "Error occurred while loading the opening explorer.");
+                    return;
+                }
+                StringBuilder text = new StringBuilder(String.format("%-7s %7s %6s %6s %6s%n", "Move", "Games", "White", "Draw", "Black"));
+                for (OpeningExplorer.Continuation continuation : continuations) {
+                    int games = continuation.getGames();
+                    text.append(String.format("%-7s %7d %5d%% %5d%% %5d%%%n", MoveCodec.toUci(continuation.getMove()), games,
+                            continuation.getWhiteWins() * 100 / games, continuation.getDraws() * 100 / games,
+                            continuation.getBlackWins() * 100 / games));
+                }
+                resultsArea.setText(continuations.isEmpty() ? "No club games reached this position." : text.toString());
+            });
+        };
+        exploreButton.addActionListener(explore);
+        movesField.addActionListener(explore);
+
+        // Make the explorer frame visible
+        explorerFrame.setVisible(true);
     }
+
     /**
      * Displays the form for coaching.
      */
@@ -531,9 +929,16 @@ public class User extends JFrame {
         JButton submitButton = new JButton("Submit");
         JButton backButton = new JButton("Back");
 
+        // The coach filling in the form is the logged-in member
+        nameField.setText(session.getUsername());
+        nameField.setEditable(false);
+
         // ActionListener for the submit button
         submitButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                if (!checkSession(coachingFrame)) {
+                    return;
+                }
                 // Validate form fields and save credentials if valid
                 if (validateCoachingForm(idField.getText(), nameField.getText(), bioField.getText(), studentField.getText())) {
                     saveCoachingCredentials(idField.getText(), nameField.getText(), bioField.getText(), studentField.getText());
@@ -556,8 +961,7 @@ public class User extends JFrame {
         coachingFrame.add(backButton);
 
         // Display area for saved credentials
-        JTextArea credentialsArea = new JTextArea();
-        coachingFrame.add(new JScrollPane(credentialsArea));
+        addHistory(coachingFrame, ClubService.COACHING_FILE, RecordSchema.COACHING);
 
         // Make the coaching frame visible
         coachingFrame.setVisible(true);
@@ -573,7 +977,7 @@ public class User extends JFrame {
      */
     private boolean validateCoachingForm(String id, String name, String bio, String student) {
         // Check if all fields are not empty
-        return !id.isEmpty() && !name.isEmpty() && !bio.isEmpty() && !student.isEmpty();
+        return ClubService.validateCoaching(id, name, bio, student);
     }
 
     /**
@@ -584,24 +988,84 @@ public class User extends JFrame {
      * @param student The student to coach entered in the coaching form
      */
     private void saveCoachingCredentials(String id, String name, String bio, String student) {
-        // Save credentials to local storage (e.g., file)
-        try (FileWriter writer = new FileWriter("coaching_credentials.txt", true);
-             BufferedWriter bw = new BufferedWriter(writer)) {
-            bw.write("ID: " + id + ", Name: " + name + ", Coach Bio: " + bio + ", Student: " + student);
-            bw.newLine();
-            JOptionPane.showMessageDialog(null, "Coaching credentials saved successfully!");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error occurred while saving coaching credentials.");
+        // Queue credentials for saving to local storage (e.g., file)
+        reportBooked(service.saveCoaching(session.getUsername(), id, name, bio, student),
+                "Coaching credentials saved successfully!", "Error occurred while saving coaching credentials.");
+    }
+
+    /**
+     * Checks that the member's session is still live, which also extends
+     * it. If it has expired the member is asked to log in again.
+     * @param frame The form the member is using
+     * @return true if the session is live
+     */
+    private boolean checkSession(JFrame frame) {
+        if (session != null && service.session(session.getToken()) != null) {
+            return true;
         }
+        JOptionPane.showMessageDialog(frame, "Your session has expired. Please log in again.");
+        frame.dispose();
+        new LoginPage(this);
+        return false;
+    }
+
+    /**
+     * Reports the outcome of a queued save once it has been committed,
+     * without blocking the event thread on disk I/O.
+     * @param saved The future of the save
+     * @param successMessage The message shown once the record is saved
+     * @param errorMessage The message shown if the record could not be saved
+     */
+    private void reportSaved(CompletableFuture<?> saved, String successMessage, String errorMessage) {
+        ClubService.onEdt(saved, (result, ex) -> {
+            if (ex == null) {
+                JOptionPane.showMessageDialog(null, successMessage);
+            } else if (ex instanceof NotAuthorizedException) {
+                JOptionPane.showMessageDialog(null, ex.getMessage());
+            } else {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, errorMessage);
+            }
+        });
+    }
+
+    /**
+     * Reports the outcome of a queued lesson request once it has been saved
+     * and booked, with the coach and slot it was given.
+     * @param booked The future of the booking
+     * @param successMessage The message shown once the record is saved
+     * @param errorMessage The message shown if the record could not be saved
+     */
+    private void reportBooked(CompletableFuture<LessonScheduler.Assignment> booked, String successMessage, String errorMessage) {
+        ClubService.onEdt(booked, (lesson, ex) -> {
+            if (ex == null) {
+                JOptionPane.showMessageDialog(null, successMessage + "\n" + ClubService.describeBooking(lesson));
+            } else if (ex instanceof NotAuthorizedException) {
+                JOptionPane.showMessageDialog(null, ex.getMessage());
+            } else {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, errorMessage);
+            }
+        });
     }
 
     // Main method to start the application
     public static void main(String[] args) {
-        // Run the User interface
+        ClubService service = new ClubService();
+        // Serve the HTTP API from the same process when a port is configured
+        Integer port = Integer.getInteger("chessmasters.http.port");
+        if (port != null) {
+            try {
+                new ClubHttpServer(service, port);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        // Run the User interface, logging any listener that stalls the EDT
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                new User();
+                EdtStallDetector.install(100);
+                new User(service);
             }
         });
     }
@@ -0,0 +1,120 @@
+package com.mycompany.chessmasterske;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a Bloom filter over strings: a fixed array of bits in which
+ * each added string sets a few bits chosen by hashing it. A string whose
+ * bits are not all set was certainly never added; one whose bits are all
+ * set probably was, and must be checked against the real data. Bits are set
+ * with atomic operations, so strings can be added and looked up from many
+ * threads at once without a lock.
+ */
+final class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashes;
+    private final long capacity;
+
+    /**
+     * Constructor to create an empty filter.
+     * @param capacity How many strings the filter is sized for
+     * @param falsePositiveRate The chance of a wrong "probably added" once
+     *                          the filter holds that many strings
+     */
+    BloomFilter(long capacity, double falsePositiveRate) {
+        this(capacity, new long[wordCount(capacity, falsePositiveRate)]);
+    }
+
+    /**
+     * Constructor to restore a filter saved with {@link #toWords()}.
+     * @param capacity How many strings the filter was sized for
+     * @param words The filter's bits
+     */
+    BloomFilter(long capacity, long[] words) {
+        this.words = new AtomicLongArray(words);
+        this.bitCount = (long) words.length * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns how many 64-bit words a filter of the given size needs.
+     */
+    static int wordCount(long capacity, double falsePositiveRate) {
+        // m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2 hashes are optimal
+        long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+    }
+
+    /**
+     * Returns a copy of the filter's bits, e.g. to save it.
+     */
+    long[] toWords() {
+        long[] copy = new long[words.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = words.get(i);
+        }
+        return copy;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds a string to the filter.
+     * @param key The string
+     */
+    void add(String key) {
+        long hash = hash(key);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+            hash += step;
+        }
+    }
+
+    /**
+     * Returns whether a string may have been added.
+     * @param key The string
+     * @return false if the string was certainly never added
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a string to 64 bits: FNV-1a over its characters, then mixed so
+     * that every input bit affects every output bit.
+     */
+    static long hash(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        // The finalizer of MurmurHash3
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,246 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class imports records in bulk from a CSV file whose first row names
+ * the columns of a {@link RecordSchema}, in any order. The import runs in
+ * three stages: the file is read a chunk of rows at a time; each chunk is
+ * parsed and validated on the common fork-join pool, several chunks at
+ * once, which is where slow work such as hashing passwords is done; and
+ * the parsed chunks are handed to the sink in file order, from a single
+ * thread, so a sink that queues its records on a {@link GroupCommitWriter}
+ * commits each chunk with a few forced writes. Only a few chunks are in
+ * flight at a time, so a file of any size is imported in bounded memory.
+ * <p>
+ * A row that is invalid, or that the sink refuses, is reported and skipped;
+ * the other rows are still imported.
+ *
+ * @param <T> The type of record imported
+ */
+public final class BulkImporter<T> {
+    public static final int CHUNK_ROWS = 4096;
+
+    /**
+     * This interface turns one row into a record. It is called from several
+     * threads at once.
+     */
+    public interface Parser<T> {
+        /**
+         * Parses a row.
+         * @param row The row's fields, in the order of the schema's fields
+         * @return The record
+         * @throws IllegalArgumentException If the row is invalid, with a
+         *         message saying why
+         */
+        T parse(String[] row);
+    }
+
+    /**
+     * This interface saves the records of one chunk. It is called from one
+     * thread, with the chunks in file order.
+     */
+    public interface Sink<T> {
+        /**
+         * Queues the records of a chunk to be saved.
+         * @param records The valid records of the chunk, in file order
+         * @return One future per record, completing when it is saved or
+         *         exceptionally if it is refused
+         */
+        List<CompletableFuture<?>> write(List<T> records);
+    }
+
+    /**
+     * This class holds the outcome of an import.
+     */
+    public static final class Report {
+        // Only the first problems are kept, so a wrong file cannot fill the memory
+        public static final int MAX_PROBLEMS = 100;
+
+        private long rows;
+        private long imported;
+        private long rejected;
+        private final List<String> problems = new ArrayList<>();
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Returns the first {@link #MAX_PROBLEMS} rejected rows, each as
+         * "line n: reason".
+         */
+        public List<String> getProblems() {
+            return Collections.unmodifiableList(problems);
+        }
+
+        private void reject(long line, String reason) {
+            rejected++;
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add("line " + line + ": " + reason);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + imported + " of " + rows + " rows, rejected " + rejected;
+        }
+    }
+
+    /**
+     * This class holds one chunk on its way through the stages.
+     */
+    private static final class Chunk<T> {
+        final List<String[]> rows;
+        final long[] lines;
+        final List<T> records = new ArrayList<>();
+        final List<Long> recordLines = new ArrayList<>();
+        final List<Long> invalidLines = new ArrayList<>();
+        final List<String> invalidReasons = new ArrayList<>();
+        List<CompletableFuture<?>> written;
+
+        Chunk(List<String[]> rows, long[] lines) {
+            this.rows = rows;
+            this.lines = lines;
+        }
+    }
+
+    private final RecordSchema<T> schema;
+    private final Parser<T> parser;
+    private final Sink<T> sink;
+
+    /**
+     * Constructor to create an importer.
+     * @param schema The schema whose field names the CSV columns must have
+     * @param parser Turns each row into a record
+     * @param sink Saves the records
+     */
+    public BulkImporter(RecordSchema<T> schema, Parser<T> parser, Sink<T> sink) {
+        this.schema = schema;
+        this.parser = parser;
+        this.sink = sink;
+    }
+
+    /**
+     * Imports every row of a CSV file.
+     * @param csv The file, positioned before its header row
+     * @return What was imported
+     * @throws IOException If the file cannot be read, or its header lacks
+     *         one of the schema's fields
+     */
+    public Report run(CsvReader csv) throws IOException {
+        int[] columns = columns(csv.next());
+        Report report = new Report();
+        Deque<CompletableFuture<Chunk<T>>> parsing = new ArrayDeque<>();
+        int maxParsing = ForkJoinPool.getCommonPoolParallelism() + 1;
+        Chunk<T> writing = null;
+        boolean more = true;
+        while (true) {
+            while (more && parsing.size() < maxParsing) {
+                List<String[]> rows = new ArrayList<>(CHUNK_ROWS);
+                long[] lines = new long[CHUNK_ROWS];
+                for (String[] row; rows.size() < CHUNK_ROWS && (row = csv.next()) != null; ) {
+                    lines[rows.size()] = csv.getLine();
+                    rows.add(row);
+                }
+                more = rows.size() == CHUNK_ROWS;
+                if (!rows.isEmpty()) {
+                    Chunk<T> chunk = new Chunk<>(rows, lines);
+                    parsing.add(CompletableFuture.supplyAsync(() -> parse(chunk, columns)));
+                }
+            }
+            if (parsing.isEmpty()) {
+                break;
+            }
+            Chunk<T> parsed = parsing.poll().join();
+            parsed.written = parsed.records.isEmpty() ? Collections.emptyList() : sink.write(parsed.records);
+            // The previous chunk is waited for only once this one is queued, so the writer never idles
+            if (writing != null) {
+                finish(writing, report);
+            }
+            writing = parsed;
+        }
+        if (writing != null) {
+            finish(writing, report);
+        }
+        return report;
+    }
+
+    // Maps each of the schema's fields to its column in the file
+    private int[] columns(String[] header) throws IOException {
+        String[] names = schema.getFieldNames();
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = -1;
+            for (int column = 0; header != null && column < header.length; column++) {
+                if (header[column].trim().toLowerCase(Locale.ROOT).equals(names[i].toLowerCase(Locale.ROOT))) {
+                    columns[i] = column;
+                    break;
+                }
+            }
+            if (columns[i] < 0) {
+                throw new IOException("The first row must name the columns " + String.join(",", names));
+            }
+        }
+        return columns;
+    }
+
+    private Chunk<T> parse(Chunk<T> chunk, int[] columns) {
+        String[] fields = new String[columns.length];
+        for (int i = 0; i < chunk.rows.size(); i++) {
+            String[] row = chunk.rows.get(i);
+            try {
+                for (int field = 0; field < columns.length; field++) {
+                    if (columns[field] >= row.length) {
+                        throw new IllegalArgumentException("Expected " + columns.length + " fields");
+                    }
+                    fields[field] = row[columns[field]];
+                }
+                chunk.records.add(parser.parse(fields.clone()));
+                chunk.recordLines.add(chunk.lines[i]);
+            } catch (IllegalArgumentException ex) {
+                chunk.invalidLines.add(chunk.lines[i]);
+                chunk.invalidReasons.add(ex.getMessage());
+            }
+        }
+        return chunk;
+    }
+
+    // Waits for a chunk's records to be saved and tallies the outcome
+    private static <T> void finish(Chunk<T> chunk, Report report) {
+        report.rows += chunk.rows.size();
+        for (int i = 0; i < chunk.invalidLines.size(); i++) {
+            report.reject(chunk.invalidLines.get(i), chunk.invalidReasons.get(i));
+        }
+        for (int i = 0; i < chunk.written.size(); i++) {
+            try {
+                chunk.written.get(i).get();
+                report.imported++;
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+                report.reject(chunk.recordLines.get(i), cause.getMessage() != null ? cause.getMessage() : cause.toString());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.mycompany.chessmasterske;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * This class exposes the club's registration, login and form handlers over
+ * HTTP, so members can use the club without the desktop window. Requests
+ * are POSTs with form-encoded bodies, handled on the service's executor;
+ * a handler hands its future to the service and returns, and the response
+ * is sent once the future completes, so no thread waits on disk I/O.
+ * Responses are plain text with the same messages the desktop forms show.
+ * <p>
+ * A successful login replies with a session token ("token=..."); the form
+ * endpoints need it, either as a token field or as an
+ * "Authorization: Bearer ..." header, and act as the session's member: a
+ * game must be one the member played, and a coaching request must name
+ * the member as its coach, getting 403 otherwise.
+ * Logins are rate limited per username and per client address; a refused
+ * attempt gets 429 with a Retry-After header. Registering a username or
+ * email that is already taken gets 409.
+ * <pre>
+ * POST /api/register  username, email, password, eloRating
+ * POST /api/login     username, password
+ * POST /api/logout    token
+ * POST /api/lessons   token, id, fideId, coach, description
+ * POST /api/puzzles   token, id, difficulty
+ * POST /api/games     token, yourId, whitePlayer, blackPlayer, result
+ * POST /api/coaching  token, id, name, bio, student
+ * GET  /api/puzzles/next?token=...&amp;difficulty=...
+ * GET  /api/search?token=...&amp;q=...[&amp;limit=...]   one "KIND name - detail" per line
+ * GET  /metrics       every operation's counts and latencies, as plain text
+ * </pre>
+ */
+public class ClubHttpServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final String MISSING_FIELDS = "Please fill in all fields.";
+    private static final String BEARER = "Bearer ";
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    private final ClubService service;
+    private final HttpServer server;
+
+    /**
+     * This class is the outcome of a request: a status code and a message.
+     */
+    private static final class Reply {
+        final int status;
+        final String message;
+        // Sent as Retry-After when positive
+        long retryAfterSeconds;
+
+        Reply(int status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    /**
+     * This class is one parsed request: its form fields, the client address
+     * and the session token, if any.
+     */
+    private static final class Request {
+        final Map<String, String> form;
+        final String source;
+        final String token;
+
+        Request(Map<String, String> form, String source, String token) {
+            this.form = form;
+            this.source = source;
+            this.token = token;
+        }
+
+        /**
+         * Returns a form field with line breaks removed, since every record
+         * is stored on one line, or "" if the field is missing.
+         */
+        String field(String name) {
+            return form.getOrDefault(name, "").replace('\r', ' ').replace('\n', ' ');
+        }
+    }
+
+    /**
+     * Constructor to create and start the server.
+     * @param service The service that handles the requests
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public ClubHttpServer(ClubService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        post("/api/register", this::register);
+        post("/api/login", this::login);
+        post("/api/logout", this::logout);
+        post("/api/lessons", request -> withSession(request, session -> saveLesson(request, session)));
+        post("/api/puzzles", request -> withSession(request, session -> savePuzzle(request, session)));
+        post("/api/games", request -> withSession(request, session -> saveGame(request, session)));
+        post("/api/coaching", request -> withSession(request, session -> saveCoaching(request, session)));
+        route("/api/puzzles/next", "GET", request -> withSession(request, session -> nextPuzzle(request, session)));
+        route("/api/search", "GET", request -> withSession(request, session -> search(request)));
+        route("/metrics", "GET", request -> CompletableFuture.completedFuture(new Reply(200, service.getMetrics().dump())));
+        server.setExecutor(service.getExecutor());
+        server.start();
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void post(String path, Function<Request, CompletableFuture<Reply>> handler) {
+        route(path, "POST", handler);
+    }
+
+    private void route(String path, String method, Function<Request, CompletableFuture<Reply>> handler) {
+        // Server errors count as failures; refused requests are the client's doing
+        Metrics.Operation operation = service.getMetrics().operation("http " + method + " " + path);
+        server.createContext(path, exchange -> {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                send(exchange, new Reply(404, "Not found."));
+                return;
+            }
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                send(exchange, new Reply(405, "Use " + method + "."));
+                return;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<Reply> reply;
+            try {
+                String query = method.equals("GET") ? exchange.getRequestURI().getRawQuery() : readBody(exchange);
+                Map<String, String> form = parseForm(query);
+                reply = handler.apply(new Request(form, exchange.getRemoteAddress().getAddress().getHostAddress(),
+                        token(exchange, form)));
+            } catch (IOException | IllegalArgumentException ex) {
+                reply = CompletableFuture.completedFuture(new Reply(400, "Bad request."));
+            }
+            reply.whenComplete((result, ex) -> {
+                Throwable failure = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (failure instanceof RateLimitedException) {
+                    result = new Reply(429, "Too many attempts. Please try again later.");
+                    result.retryAfterSeconds = ((RateLimitedException) failure).getRetryAfterSeconds();
+                    failure = null;
+                } else if (failure instanceof DuplicateRegistrationException) {
+                    result = new Reply(409, failure.getMessage());
+                    failure = null;
+                } else if (failure instanceof NotAuthorizedException) {
+                    result = new Reply(403, failure.getMessage());
+                    failure = null;
+                } else if (failure != null) {
+                    failure.printStackTrace();
+                    result = new Reply(500, "Internal error.");
+                }
+                operation.record(System.nanoTime() - start, failure);
+                send(exchange, result);
+            });
+        });
+    }
+
+    private CompletableFuture<Reply> register(Request request) {
+        String username = request.field("username");
+        String email = request.field("email");
+        String password = request.field("password");
+        String eloRating = request.field("eloRating");
+        if (!ClubService.validateRegistration(username, email, password, eloRating)) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        UserRecord user = new UserRecord(username, email, password, Integer.parseInt(eloRating.trim()));
+        return service.registerUser(user).thenApply(registered -> new Reply(201, "User registered successfully!"));
+    }
+
+    private CompletableFuture<Reply> login(Request request) {
+        return service.login(request.field("username"), request.field("password"), request.source)
+                .thenApply(session -> session == null ? new Reply(401, "Invalid username or password.")
+                        : new Reply(200, "Login successful.\ntoken=" + session.getToken()));
+    }
+
+    private CompletableFuture<Reply> logout(Request request) {
+        return CompletableFuture.completedFuture(service.logout(request.token)
+                ? new Reply(200, "Logged out.") : new Reply(401, "Not logged in."));
+    }
+
+    /**
+     * Runs a handler as the request's logged-in member, or replies 401 if
+     * the request has no live session.
+     */
+    private CompletableFuture<Reply> withSession(Request request, Function<SessionStore.Session, CompletableFuture<Reply>> handler) {
+        SessionStore.Session session = service.session(request.token);
+        if (session == null) {
+            return CompletableFuture.completedFuture(new Reply(401, "Please log in."));
+        }
+        return handler.apply(session);
+    }
+
+    private CompletableFuture<Reply> saveLesson(Request request, SessionStore.Session session) {
+        String id = request.field("id");
+        String username = session.getUsername();
+        String fideId = request.field("fideId");
+        String coach = request.field("coach");
+        String description = request.field("description");
+        if (!ClubService.validateLesson(id, username, fideId, coach, description)) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        return booked(service.saveLesson(id, username, fideId, coach, description), "Credentials saved successfully!");
+    }
+
+    private CompletableFuture<Reply> savePuzzle(Request request, SessionStore.Session session) {
+        String id = request.field("id");
+        String username = session.getUsername();
+        String difficulty = request.field("difficulty");
+        if (!ClubService.validatePuzzle(id, username) || !isDifficulty(difficulty)) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        return saved(service.savePuzzle(id, username, difficulty), "Puzzle credentials saved successfully!");
+    }
+
+    private CompletableFuture<Reply> saveGame(Request request, SessionStore.Session session) {
+        String yourId = request.field("yourId");
+        String whitePlayer = request.field("whitePlayer");
+        String blackPlayer = request.field("blackPlayer");
+        String result = request.field("result");
+        if (!ClubService.validateGame(yourId, whitePlayer, blackPlayer)
+                || !(result.equals(GameResult.WHITE) || result.equals(GameResult.BLACK) || result.equals(GameResult.DRAW))) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        return saved(service.saveGame(session.getUsername(), new GameResult(yourId, whitePlayer, blackPlayer, result)),
+                "Game credentials saved successfully!");
+    }
+
+    private CompletableFuture<Reply> saveCoaching(Request request, SessionStore.Session session) {
+        String id = request.field("id");
+        String name = request.field("name");
+        String bio = request.field("bio");
+        String student = request.field("student");
+        if (!ClubService.validateCoaching(id, name, bio, student)) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        return booked(service.saveCoaching(session.getUsername(), id, name, bio, student),
+                "Coaching credentials saved successfully!");
+    }
+
+    private CompletableFuture<Reply> nextPuzzle(Request request, SessionStore.Session session) {
+        String username = session.getUsername();
+        String difficulty = request.field("difficulty");
+        if (!isDifficulty(difficulty)) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        return service.nextPuzzle(username, difficulty).thenApply(puzzle -> puzzle == null
+                ? new Reply(404, "No new " + difficulty + " puzzles available.")
+                : new Reply(200, "id=" + puzzle.getId() + "\nrating=" + puzzle.getRating()
+                        + "\nfen=" + puzzle.getFen() + "\nsolution=" + puzzle.getSolutionUci()));
+    }
+
+    private CompletableFuture<Reply> search(Request request) {
+        String query = request.field("q");
+        String limit = request.field("limit");
+        if (query.isEmpty()) {
+            return CompletableFuture.completedFuture(new Reply(400, MISSING_FIELDS));
+        }
+        // Throws IllegalArgumentException, i.e. 400, for a limit that is not a number
+        int most = limit.isEmpty() ? DEFAULT_SEARCH_LIMIT : Math.min(MAX_SEARCH_LIMIT, Integer.parseInt(limit));
+        // Members see who plays in the club, not their emails
+        return service.searchMembers(query, most).thenApply(hits -> {
+            StringBuilder body = new StringBuilder();
+            for (SearchIndex.Hit hit : hits) {
+                if (body.length() > 0) {
+                    body.append('\n');
+                }
+                body.append(hit.getKind()).append(' ').append(hit.getName());
+                if (!hit.getDetail().isEmpty()) {
+                    body.append(" - ").append(hit.getDetail());
+                }
+            }
+            return new Reply(200, body.toString());
+        });
+    }
+
+    private static CompletableFuture<Reply> saved(CompletableFuture<Long> save, String message) {
+        return save.thenApply(recordNumber -> new Reply(201, message));
+    }
+
+    private static CompletableFuture<Reply> booked(CompletableFuture<LessonScheduler.Assignment> save, String message) {
+        return save.thenApply(lesson -> new Reply(201, message + "\n" + ClubService.describeBooking(lesson)));
+    }
+
+    private static boolean isDifficulty(String difficulty) {
+        for (String known : PuzzleCatalog.DIFFICULTIES) {
+            if (known.equals(difficulty)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the session token from the Authorization header or the token
+     * field, or null if there is none.
+     */
+    private static String token(HttpExchange exchange, Map<String, String> form) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith(BEARER)) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        return form.get("token");
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body too large");
+                }
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a form-encoded string such as "a=1&amp;b=2".
+     * @throws IllegalArgumentException if the encoding is malformed
+     */
+    static Map<String, String> parseForm(String encoded) {
+        Map<String, String> form = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return form;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            form.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return form;
+    }
+
+    private static void send(HttpExchange exchange, Reply reply) {
+        byte[] body = (reply.message + "\n").getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            if (reply.retryAfterSeconds > 0) {
+                exchange.getResponseHeaders().set("Retry-After", Long.toString(reply.retryAfterSeconds));
+            }
+            exchange.sendResponseHeaders(reply.status, body.length);
+            out.write(body);
+        } catch (IOException ex) {
+            // The client has gone away
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for open ones.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+    }
+
+    /**
+     * Runs the club as a headless server, without any window. The port is
+     * the first argument, or the chessmasters.http.port system property,
+     * or 8080.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("chessmasters.http.port", DEFAULT_PORT);
+        ClubHttpServer server = new ClubHttpServer(new ClubService(), port);
+        System.out.println("Chess club API listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,980 @@
+package com.mycompany.chessmasterske;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This class is the service layer behind the User screens. Every operation
+ * that touches the user store or the log files runs on a worker executor and
+ * returns a future, so the Swing listeners never block on disk I/O. Results
+ * can be handed back to the Event Dispatch Thread with
+ * {@link #onEdt(CompletableFuture, BiConsumer)}.
+ */
+public class ClubService {
+    public static final String USERS_FILE = "users.txt";
+    public static final String GAMES_FILE = "game_credentials.txt";
+    public static final String LESSONS_FILE = "lesson_credentials.txt";
+    public static final String PUZZLES_FILE = "puzzle_credentials.txt";
+    public static final String COACHING_FILE = "coaching_credentials.txt";
+    public static final long COMPACTION_DELAY_MINUTES = 1;
+    public static final long COMPACTION_PERIOD_HOURS = 6;
+    // A snapshot is rewritten once this many records have been appended after it
+    public static final long SNAPSHOT_AFTER_RECORDS = 10_000;
+    // Above 1 the users are split into shard files that several app instances can share
+    public static final int USER_SHARDS = Integer.getInteger("chessmasters.users.shards", 1);
+
+    private final String usersFile;
+    private final ExecutorService executor;
+    private final GroupCommitWriter writer;
+    // Completes once every record log is in its schema's format
+    private final CompletableFuture<Void> migrated;
+    private final CompletableFuture<UserStore> users;
+    private final CompletableFuture<EloEngine> ratings;
+    private final CompletableFuture<Leaderboard> leaderboard;
+    private final CompletableFuture<PuzzleServer> puzzles;
+    private final CompletableFuture<GameStore> games;
+    // Opened on first use, since most sessions never book a lesson
+    private CompletableFuture<LessonScheduler> scheduler;
+    // Built on first use and rebuilt after an import
+    private CompletableFuture<OpeningExplorer> explorer;
+    // Built the first time a search needs it
+    private CompletableFuture<SearchIndex> search;
+    // The latest compaction, which a scheduler opened meanwhile waits for
+    private CompletableFuture<?> compaction = CompletableFuture.completedFuture(null);
+    // Compactions read whole logs, so they run one at a time off the I/O executor
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LogCompactor logCompactor = new LogCompactor();
+    private final Matchmaker matchmaker = new Matchmaker();
+    private final SessionStore sessions = new SessionStore();
+    private final Metrics metrics = Metrics.shared();
+    // A member's password can be guessed 5 times at once, then once every 12 seconds;
+    // usernames beyond the 100,000 tracked are held to the per-source limit alone
+    private final RateLimiter loginsPerUser = new RateLimiter(5, 12_000, 100_000);
+    // One client may try 20 logins at once, then one a second, across all usernames
+    private final RateLimiter loginsPerSource = new RateLimiter(20, 1_000, 100_000);
+
+    /**
+     * Constructor to create the service over the default files and start
+     * loading the user store in the background. The logs are compacted a
+     * minute after start and every few hours from then on, and the user and
+     * rating snapshots are rewritten after each compaction if they have
+     * fallen behind.
+     */
+    public ClubService() {
+        this(USERS_FILE, createExecutor(), GroupCommitWriter.shared());
+    }
+
+    /**
+     * Constructor to create the service with its own executor and writer.
+     * @param usersFile The users file, e.g. "users.txt"
+     * @param executor The executor that runs file operations
+     * @param writer The writer that commits new records
+     */
+    public ClubService(String usersFile, ExecutorService executor, GroupCommitWriter writer) {
+        this.usersFile = usersFile;
+        this.executor = executor;
+        this.writer = writer;
+        this.migrated = CompletableFuture.runAsync(() -> {
+            try {
+                if (USER_SHARDS == 1 || Files.exists(Paths.get(usersFile))) {
+                    // Once split into shards, users.txt is gone for good
+                    RecordMigration.migrate(usersFile, RecordSchema.USERS);
+                }
+                RecordMigration.migrate(GAMES_FILE, RecordSchema.GAMES);
+                RecordMigration.migrate(LESSONS_FILE, RecordSchema.LESSONS);
+                RecordMigration.migrate(PUZZLES_FILE, RecordSchema.PUZZLES);
+                RecordMigration.migrate(COACHING_FILE, RecordSchema.COACHING);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+        this.users = migrated.thenApplyAsync(done -> {
+            try {
+                return USER_SHARDS > 1 ? UserStore.openSharded(usersFile, USER_SHARDS)
+                        : UserStore.open(usersFile, writer);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+        this.ratings = users.thenApplyAsync(store -> {
+            try {
+                return EloEngine.open(EloEngine.JOURNAL_FILE, store, writer);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+        this.leaderboard = ratings.thenCombineAsync(users, (engine, store) -> Leaderboard.build(store, engine), executor);
+        this.games = CompletableFuture.supplyAsync(() -> {
+            try {
+                return GameStore.open(GameStore.STORE_FILE);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+        this.puzzles = CompletableFuture.supplyAsync(() -> {
+            try {
+                PuzzleCatalog catalog = PuzzleCatalog.open(PuzzleCatalog.CSV_FILE, PuzzleCatalog.BINARY_FILE);
+                return PuzzleServer.open(catalog, PuzzleServer.PROGRESS_FILE, writer, executor);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+        // The compaction and snapshots are queued behind this task on the same thread
+        compactor.scheduleWithFixedDelay(() -> compactLogs().handle((results, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+            }
+            return null;
+        }).thenCompose(done -> writeSnapshots()).exceptionally(ex -> {
+            ex.printStackTrace();
+            return null;
+        }), TimeUnit.MINUTES.toMillis(COMPACTION_DELAY_MINUTES), TimeUnit.HOURS.toMillis(COMPACTION_PERIOD_HOURS),
+                TimeUnit.MILLISECONDS);
+        // Without a snapshot the next start would parse every record again
+        writeSnapshots().exceptionally(ex -> {
+            ex.printStackTrace();
+            return null;
+        });
+    }
+
+    /**
+     * Creates the executor for file operations: one virtual thread per task
+     * when the runtime has them (Java 21+), otherwise a bounded pool of
+     * daemon threads that rejects work instead of queueing without limit.
+     * @return The executor
+     */
+    public static ExecutorService createExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            // Java 11-20: fall back to a fixed pool of platform threads
+        }
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "club-io-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(10_000), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the metrics of the service's operations.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the user store once it has finished loading.
+     * @return A future of the loaded user store
+     */
+    public CompletableFuture<UserStore> users() {
+        return users;
+    }
+
+    /**
+     * Returns the rating engine once it has replayed its journal.
+     * @return A future of the rating engine
+     */
+    public CompletableFuture<EloEngine> ratings() {
+        return ratings;
+    }
+
+    /**
+     * Returns the rating-ordered leaderboard once it has been built.
+     * @return A future of the leaderboard
+     */
+    public CompletableFuture<Leaderboard> leaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * Validates the registration fields.
+     * @param username The entered username
+     * @param email The entered email
+     * @param password The entered password
+     * @param eloRating The entered Elo rating
+     * @return true if all fields are filled and the rating is a number
+     */
+    public static boolean validateRegistration(String username, String email, String password, String eloRating) {
+        if (username.isEmpty() || email.isEmpty() || password.isEmpty() || eloRating.isEmpty()) {
+            return false;
+        }
+        try {
+            Integer.parseInt(eloRating.trim());
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates the lesson training form fields.
+     * @return true if all fields are filled
+     */
+    public static boolean validateLesson(String id, String username, String fideId, String coach, String description) {
+        return !id.isEmpty() && !username.isEmpty() && !fideId.isEmpty() && !coach.isEmpty() && !description.isEmpty();
+    }
+
+    /**
+     * Validates the puzzle form fields.
+     * @return true if both ID and username are filled
+     */
+    public static boolean validatePuzzle(String id, String username) {
+        return !id.isEmpty() && !username.isEmpty();
+    }
+
+    /**
+     * Validates the game form fields.
+     * @return true if all fields are filled
+     */
+    public static boolean validateGame(String yourId, String whitePlayer, String blackPlayer) {
+        return !yourId.isEmpty() && !whitePlayer.isEmpty() && !blackPlayer.isEmpty();
+    }
+
+    /**
+     * Validates the coaching form fields.
+     * @return true if all fields are filled
+     */
+    public static boolean validateCoaching(String id, String name, String bio, String student) {
+        return !id.isEmpty() && !name.isEmpty() && !bio.isEmpty() && !student.isEmpty();
+    }
+
+    /**
+     * Returns the binary game archive once it has been indexed.
+     * @return A future of the game store
+     */
+    public CompletableFuture<GameStore> games() {
+        return games;
+    }
+
+    /**
+     * Returns the opening explorer, building it from the game archive the
+     * first time it is needed.
+     * @return A future of the opening explorer
+     */
+    public synchronized CompletableFuture<OpeningExplorer> openingExplorer() {
+        if (explorer == null) {
+            explorer = games.thenApplyAsync(store -> {
+                try {
+                    return OpeningExplorer.build(store, executor);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, executor);
+        }
+        return explorer;
+    }
+
+    /**
+     * Looks up the moves club games continued with from a position.
+     * @param position The position
+     * @return A future of the continuations, most played first
+     */
+    public CompletableFuture<List<OpeningExplorer.Continuation>> explore(Position position) {
+        return metrics.track("explore", () -> openingExplorer().thenApply(built -> built.continuations(position)));
+    }
+
+    /**
+     * Checks a username and password against the registered users.
+     * @param username The entered username
+     * @param password The entered password
+     * @return A future that completes with true if the credentials are valid
+     */
+    public CompletableFuture<Boolean> checkCredentials(String username, String password) {
+        return metrics.track("checkCredentials",
+                () -> users.thenApplyAsync(store -> store.checkCredentials(username, password), executor));
+    }
+
+    /**
+     * Logs a member in and starts a session. Attempts are rate limited per
+     * username and per source before the password is hashed, so a flood of
+     * guesses is turned away without costing a hash each.
+     * @param username The entered username
+     * @param password The entered password
+     * @param source Where the attempt comes from, e.g. a client address
+     * @return A future that completes with the new session, with null if
+     *         the credentials are invalid, or exceptionally with a
+     *         {@link RateLimitedException} if there were too many attempts
+     */
+    public CompletableFuture<SessionStore.Session> login(String username, String password, String source) {
+        long retryAfter = loginsPerSource.tryAcquire(source);
+        if (retryAfter == 0) {
+            retryAfter = loginsPerUser.tryAcquire(username);
+        }
+        if (retryAfter > 0) {
+            metrics.counter("login.rateLimited").increment();
+            return CompletableFuture.failedFuture(new RateLimitedException(retryAfter));
+        }
+        return metrics.track("login", () -> checkCredentials(username, password).thenApply(valid -> {
+            if (!valid) {
+                metrics.counter("login.invalid").increment();
+                return null;
+            }
+            return sessions.create(username);
+        }));
+    }
+
+    /**
+     * Looks up a live session and extends it.
+     * @param token The session token
+     * @return The session, or null if it is unknown or has expired
+     */
+    public SessionStore.Session session(String token) {
+        return sessions.find(token);
+    }
+
+    /**
+     * Ends a session.
+     * @param token The session token
+     * @return true if the session was live
+     */
+    public boolean logout(String token) {
+        return sessions.invalidate(token);
+    }
+
+    /**
+     * Registers a new user.
+     * @param user The user to register
+     * @return A future that completes once the user has been saved
+     */
+    public CompletableFuture<Void> registerUser(UserRecord user) {
+        return metrics.track("registerUser", () -> users.thenComposeAsync(store -> store.register(user), executor)
+                .thenCompose(registered -> leaderboard.thenCombine(ratings, (board, engine) -> {
+                    joinLeaderboard(board, engine, user.getUsername());
+                    return null;
+                })));
+    }
+
+    /**
+     * Puts a new player on the leaderboard at their current rating. The
+     * rating is read and posted under the engine's lock, the lock games are
+     * rated and posted under, so a game rated in between cannot be
+     * overwritten with the rating from before it.
+     */
+    private static void joinLeaderboard(Leaderboard board, EloEngine engine, String username) {
+        synchronized (engine) {
+            board.ratingChanged(username, engine.rating(username));
+        }
+    }
+
+    /**
+     * Appends a record to one of the log files.
+     * @param fileName The log file, e.g. "game_credentials.txt"
+     * @param record The record to append, encoded with the log's {@link RecordSchema}
+     * @return A future that completes with the record number once saved
+     */
+    public CompletableFuture<Long> saveRecord(String fileName, String record) {
+        return migrated.thenApplyAsync(done -> {
+            try {
+                return RecordFile.open(fileName);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor).thenCompose(file -> writer.submit(file, record));
+    }
+
+    /**
+     * Opens a table model over one of the logs, for showing the saved
+     * records without reading the whole log (see {@link LogTableModel}).
+     * @param fileName The log file, e.g. "game_credentials.txt"
+     * @param schema The log's schema
+     * @return A future of the model
+     */
+    public CompletableFuture<LogTableModel> history(String fileName, RecordSchema<?> schema) {
+        return migrated.thenApplyAsync(done -> {
+            try {
+                return new LogTableModel(RecordFile.open(fileName), schema, executor);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Compacts the user, lesson, puzzle and coaching logs: each is rewritten
+     * without the records a later one replaces and without rows that have
+     * an empty field, while new records keep being appended (see
+     * {@link LogCompactor}). The game log is left alone, since every line is
+     * a separate game and the ratings are replayed from all of them, and so
+     * are users split into shards (see {@link #USER_SHARDS}).
+     * @return A future of what each compaction did
+     */
+    public CompletableFuture<List<LogCompactor.Result>> compactLogs() {
+        return metrics.track("compactLogs", () -> {
+            synchronized (this) {
+                // Wait until the user store, and the scheduler and search index if open, have read the logs
+                CompletableFuture<?> replayed = CompletableFuture.allOf(users, scheduler != null ? scheduler : users,
+                        search != null ? search : users);
+                CompletableFuture<List<LogCompactor.Result>> run = replayed.thenApplyAsync(opened -> compact(), compactor);
+                compaction = run;
+                return run;
+            }
+        });
+    }
+
+    private List<LogCompactor.Result> compact() {
+        List<LogCompactor.Result> results = new ArrayList<>();
+        try {
+            if (!users.join().isSharded()) {
+                // Shard files may be open in other processes, so they are never rewritten
+                results.add(logCompactor.compact(usersFile, RecordSchema.USERS));
+            }
+            results.add(logCompactor.compact(LESSONS_FILE, RecordSchema.LESSONS));
+            results.add(logCompactor.compact(PUZZLES_FILE, RecordSchema.PUZZLES));
+            results.add(logCompactor.compact(COACHING_FILE, RecordSchema.COACHING));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        for (LogCompactor.Result result : results) {
+            metrics.counter("compaction.duplicates").add(result.getDuplicates());
+            metrics.counter("compaction.rejected").add(result.getRejected());
+        }
+        return results;
+    }
+
+    /**
+     * Rewrites the user and rating snapshots that have fallen more than
+     * {@link #SNAPSHOT_AFTER_RECORDS} records behind their logs, or no longer
+     * match them after a compaction, so the next start reads the snapshot
+     * and replays only a short tail. Runs on the compaction thread.
+     * @return A future that completes once the snapshots are written
+     */
+    public CompletableFuture<Void> writeSnapshots() {
+        return metrics.track("writeSnapshots", () -> users.thenAcceptBothAsync(ratings, (store, engine) -> {
+            try {
+                if (store.recordsSinceSnapshot() > SNAPSHOT_AFTER_RECORDS) {
+                    store.writeSnapshot();
+                }
+                if (engine.recordsSinceSnapshot() > SNAPSHOT_AFTER_RECORDS) {
+                    engine.writeSnapshot();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, compactor));
+    }
+
+    /**
+     * Describes a booked lesson, or says that the request is waiting.
+     * @param lesson The booked lesson, or null if the request is waiting
+     * @return The description shown to the member
+     */
+    public static String describeBooking(LessonScheduler.Assignment lesson) {
+        return lesson == null ? "No coach has a free slot this week; the request is on the waiting list."
+                : "Lesson booked with " + lesson.getCoach() + ", " + lesson.getSlot() + ".";
+    }
+
+    /**
+     * Returns the lesson scheduler once it has booked the logged requests,
+     * opening it the first time it is needed. The lesson and coaching logs
+     * are only read then, after any compaction that is rewriting them.
+     * @return A future of the scheduler
+     */
+    public synchronized CompletableFuture<LessonScheduler> scheduler() {
+        if (scheduler == null) {
+            scheduler = compaction.handle((results, ex) -> null).thenCombine(ratings, (done, engine) -> engine)
+                    .thenApplyAsync(engine -> {
+                        try {
+                            LessonScheduler opened = LessonScheduler.open(LessonScheduler.AVAILABILITY_FILE,
+                                    RecordFile.open(LessonScheduler.BOOKINGS_FILE), RecordFile.open(LESSONS_FILE),
+                                    RecordFile.open(COACHING_FILE), engine::rating, writer);
+                            engine.addListener(opened);
+                            return opened;
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }, executor);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Records a lesson request in the lesson log and books it a slot.
+     * @return A future that completes with the booked lesson once saved,
+     *         or with null if the coach is not one of the club's or no
+     *         coach has a free slot this week
+     */
+    public CompletableFuture<LessonScheduler.Assignment> saveLesson(String id, String username, String fideId,
+                                                                    String coach, String description) {
+        // Wait for the scheduler's replay first, so the new record is booked exactly once
+        LessonRecord lesson = new LessonRecord(id, username, fideId, coach, description);
+        return metrics.track("saveLesson", () -> scheduler().thenCompose(opened -> saveRecord(LESSONS_FILE,
+                        RecordSchema.LESSONS.encode(lesson))
+                .thenApply(recordNumber -> {
+                    index(index -> index.addLesson(lesson));
+                    return opened.book(new LessonRequest(id, username, coach));
+                })));
+    }
+
+    /**
+     * Records a puzzle attempt in the puzzle log.
+     * @return A future that completes with the record number once saved
+     */
+    public CompletableFuture<Long> savePuzzle(String id, String username, String difficulty) {
+        return metrics.track("savePuzzle",
+                () -> saveRecord(PUZZLES_FILE, RecordSchema.PUZZLES.encode(new PuzzleRecord(id, username, difficulty))));
+    }
+
+    /**
+     * Records a coaching request in the coaching log, adds its coach to
+     * the scheduler and books it a slot. The request is filled in by the coach, so only the coach it names may
+     * submit it.
+     * @param username The member submitting the request
+     * @return A future that completes with the booked lesson once saved,
+     *         or with null if no coach has a free slot this week, or
+     *         exceptionally with a {@link NotAuthorizedException} if the
+     *         member is not the coach
+     */
+    public CompletableFuture<LessonScheduler.Assignment> saveCoaching(String username, String id, String name, String bio,
+            String student) {
+        if (!username.equals(name)) {
+            return CompletableFuture.failedFuture(new NotAuthorizedException("You can only offer coaching as yourself."));
+        }
+        return metrics.track("saveCoaching", () -> scheduler().thenCompose(opened -> saveRecord(COACHING_FILE,
+                        RecordSchema.COACHING.encode(new CoachingRecord(id, name, bio, student)))
+                .thenApply(recordNumber -> {
+                    index(index -> index.addCoach(name, bio));
+                    opened.addCoach(name);
+                    return opened.book(new LessonRequest(id, student, name));
+                })));
+    }
+
+    /**
+     * Returns the search index over players, coaches and lesson requests,
+     * building it the first time it is needed, after any compaction that is
+     * rewriting the logs. From then on it is kept up to date as users are
+     * registered and lesson and coaching requests are saved.
+     * @return A future of the index
+     */
+    public synchronized CompletableFuture<SearchIndex> searchIndex() {
+        if (search == null) {
+            search = compaction.handle((results, ex) -> null).thenCombine(users, (done, store) -> store)
+                    .thenApplyAsync(store -> {
+                        SearchIndex index = new SearchIndex();
+                        // Listen first, so a user registered during the scan is not missed
+                        store.addListener(index::addUser);
+                        store.forEach(index::addUser);
+                        try {
+                            RecordFile.open(LESSONS_FILE).forEach(line -> {
+                                LessonRecord lesson = RecordSchema.LESSONS.decode(line);
+                                if (lesson != null) {
+                                    index.addLesson(lesson);
+                                }
+                            });
+                            RecordFile.open(COACHING_FILE).forEach(line -> {
+                                CoachingRecord coaching = RecordSchema.COACHING.decode(line);
+                                if (coaching != null) {
+                                    index.addCoach(coaching.getName(), coaching.getBio());
+                                }
+                            });
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                        return index;
+                    }, executor);
+        }
+        return search;
+    }
+
+    /**
+     * Finds players, coaches and lesson requests by the start of a username,
+     * email, name or word of a lesson description (see {@link SearchIndex}).
+     * @param query What the user typed
+     * @param limit The most results to return
+     * @return A future of the results
+     */
+    public CompletableFuture<List<SearchIndex.Hit>> search(String query, int limit) {
+        return metrics.track("search", () -> searchIndex().thenApply(index -> index.search(query, limit)));
+    }
+
+    /**
+     * Finds players, coaches and lesson requests for a member, as
+     * {@link #search(String, int)} does but without matching or showing
+     * players' emails.
+     * @param query What the member typed
+     * @param limit The most results to return
+     * @return A future of the results
+     */
+    public CompletableFuture<List<SearchIndex.Hit>> searchMembers(String query, int limit) {
+        return metrics.track("searchMembers", () -> searchIndex().thenApply(index -> index.search(query, limit, false)));
+    }
+
+    /**
+     * Adds a saved record to the search index if it has been built or is
+     * being built; otherwise the build will read the record from its log.
+     */
+    private void index(Consumer<SearchIndex> addition) {
+        CompletableFuture<SearchIndex> index;
+        synchronized (this) {
+            index = search;
+        }
+        if (index != null) {
+            index.thenAccept(addition);
+        }
+    }
+
+    /**
+     * Records a game in the game log and, once it is saved, applies the
+     * result to both players' ratings. A game moves both ratings, so only
+     * one of its players may record it.
+     * @param username The member recording the game
+     * @param game The game result
+     * @return A future that completes with the game's record number once
+     *         the game is saved and the rating change journaled, or
+     *         exceptionally with a {@link NotAuthorizedException} if the
+     *         member did not play it
+     */
+    public CompletableFuture<Long> saveGame(String username, GameResult game) {
+        if (!username.equals(game.getWhitePlayer()) && !username.equals(game.getBlackPlayer())) {
+            return CompletableFuture.failedFuture(new NotAuthorizedException("You can only record games you played."));
+        }
+        return metrics.track("saveGame", () -> saveRecord(GAMES_FILE, game.toLine()).thenCompose(recordNumber -> ratings
+                .thenCompose(engine -> applyLogged(engine, game, recordNumber))
+                .thenCompose(journaled -> archiveGame(game))
+                .thenApply(archived -> recordNumber)));
+    }
+
+    private static CompletableFuture<Long> applyLogged(EloEngine engine, GameResult game, long recordNumber) {
+        try {
+            return engine.apply(game, RecordFile.open(GAMES_FILE), recordNumber);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Recomputes every player's rating from the whole game log, e.g. after
+     * the rating rules change. Games saved meanwhile are counted once.
+     * @return A future that completes once the new ratings are journaled
+     */
+    public CompletableFuture<Void> recomputeRatings() {
+        return metrics.track("recomputeRatings", () -> migrated.thenCombine(ratings, (done, engine) -> engine)
+                .thenComposeAsync(engine -> {
+                    try {
+                        return engine.recompute(RecordFile.open(GAMES_FILE));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, executor));
+    }
+
+    /**
+     * Adds a game played in the club to the game archive, dated today. Club
+     * games are entered without their moves.
+     */
+    private CompletableFuture<Void> archiveGame(GameResult game) {
+        return games.thenAcceptAsync(store -> {
+            try {
+                store.append(Collections.singletonList(new StoredGame(-1, game.getWhitePlayer(), game.getBlackPlayer(),
+                        LocalDate.now(), game.getResult(), new short[0])));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Imports the games in a PGN file into the game archive.
+     * @param pgnFile The PGN file
+     * @return A future that completes with the number of games imported
+     */
+    public CompletableFuture<Integer> importPgn(Path pgnFile) {
+        return metrics.track("importPgn", () -> games.thenApplyAsync(store -> {
+            // Most PGN is UTF-8 nowadays; InputStreamReader replaces anything that is not
+            try (Reader reader = new InputStreamReader(Files.newInputStream(pgnFile), StandardCharsets.UTF_8)) {
+                return store.importPgn(reader);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor).thenApply(imported -> {
+            synchronized (this) {
+                // The explorer no longer covers every game
+                explorer = null;
+            }
+            return imported;
+        }));
+    }
+
+    /**
+     * Registers the users in a CSV file, e.g. a federation's members, with
+     * the columns username, email, password and eloRating. Rows are
+     * validated as the registration form validates them, and plaintext
+     * passwords are hashed in parallel; a password that is already hashed,
+     * as in a file written by {@link #exportUsers(Path)}, is kept as it is.
+     * A row whose username or email is taken, including by an earlier row,
+     * is rejected and reported, and the rest are imported.
+     * @param csvFile The CSV file
+     * @return A future of what was imported
+     */
+    public CompletableFuture<BulkImporter.Report> importUsers(Path csvFile) {
+        return metrics.track("importUsers", () -> CompletableFuture.allOf(users, ratings, leaderboard)
+                .thenApplyAsync(ready -> {
+                    UserStore store = users.join();
+                    EloEngine engine = ratings.join();
+                    Leaderboard board = leaderboard.join();
+                    return importCsv(csvFile, new BulkImporter<>(RecordSchema.USERS, ClubService::importedUser,
+                            records -> {
+                                List<CompletableFuture<?>> registered = new ArrayList<>(records.size());
+                                for (UserRecord user : records) {
+                                    registered.add(store.registerHashed(user).thenRun(
+                                            () -> joinLeaderboard(board, engine, user.getUsername())));
+                                }
+                                return registered;
+                            }));
+                }, executor));
+    }
+
+    // Validates an imported user and hashes its password unless it already is
+    private static UserRecord importedUser(String[] row) {
+        if (!validateRegistration(row[0], row[1], row[2], row[3])) {
+            throw new IllegalArgumentException("A field is empty or the Elo rating is not a number");
+        }
+        String password = row[2];
+        if (PasswordHasher.iterationsOf(password) == 0) {
+            password = PasswordHasher.hash(password);
+        }
+        return new UserRecord(row[0], row[1], password, Integer.parseInt(row[3].trim()));
+    }
+
+    /**
+     * Saves the game results in a CSV file, with the columns id,
+     * whitePlayer, blackPlayer and result ("White", "Black" or "Draw"). Each
+     * game is saved, rated and archived as by {@link #saveGame(String, GameResult)},
+     * in the order of the file; the archive takes a whole chunk of games at
+     * a time.
+     * @param csvFile The CSV file
+     * @return A future of what was imported
+     */
+    public CompletableFuture<BulkImporter.Report> importGames(Path csvFile) {
+        return metrics.track("importGames", () -> CompletableFuture.allOf(migrated, ratings, games)
+                .thenApplyAsync(ready -> {
+                    EloEngine engine = ratings.join();
+                    GameStore store = games.join();
+                    RecordFile log;
+                    try {
+                        log = RecordFile.open(GAMES_FILE);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    BulkImporter.Report report = importCsv(csvFile, new BulkImporter<>(RecordSchema.GAMES,
+                            ClubService::importedGame, records -> {
+                                List<CompletableFuture<?>> journaled = new ArrayList<>(records.size());
+                                for (GameResult game : records) {
+                                    // The writer completes in order, so the ratings change in file order
+                                    journaled.add(writer.submit(log, game.toLine())
+                                            .thenCompose(recordNumber -> engine.apply(game, log, recordNumber)));
+                                }
+                                CompletableFuture<Void> archived = CompletableFuture
+                                        .allOf(journaled.toArray(new CompletableFuture<?>[0]))
+                                        .handleAsync((done, ex) -> {
+                                            archive(store, records, journaled);
+                                            return null;
+                                        }, executor);
+                                List<CompletableFuture<?>> saved = new ArrayList<>(records.size());
+                                for (CompletableFuture<?> each : journaled) {
+                                    saved.add(each.thenCombine(archived, (journal, archive) -> null));
+                                }
+                                return saved;
+                            }));
+                    synchronized (this) {
+                        // The explorer no longer covers every game
+                        explorer = null;
+                    }
+                    return report;
+                }, executor));
+    }
+
+    private static GameResult importedGame(String[] row) {
+        if (!validateGame(row[0], row[1], row[2])) {
+            throw new IllegalArgumentException("A field is empty");
+        }
+        if (!GameResult.WHITE.equals(row[3]) && !GameResult.BLACK.equals(row[3]) && !GameResult.DRAW.equals(row[3])) {
+            throw new IllegalArgumentException("The result must be White, Black or Draw");
+        }
+        return new GameResult(row[0], row[1], row[2], row[3]);
+    }
+
+    // Archives the games of a chunk that were saved, dated today like games entered in the form
+    private static void archive(GameStore store, List<GameResult> records, List<CompletableFuture<?>> journaled) {
+        List<StoredGame> saved = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (!journaled.get(i).isCompletedExceptionally()) {
+                GameResult game = records.get(i);
+                saved.add(new StoredGame(-1, game.getWhitePlayer(), game.getBlackPlayer(), LocalDate.now(),
+                        game.getResult(), new short[0]));
+            }
+        }
+        try {
+            store.append(saved);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static <T> BulkImporter.Report importCsv(Path csvFile, BulkImporter<T> importer) {
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(csvFile, StandardCharsets.UTF_8))) {
+            return importer.run(csv);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes every registered user to a CSV file that
+     * {@link #importUsers(Path)} reads back, streaming them from the user
+     * store. Passwords are written as stored: hashed, except for legacy
+     * users who have not logged in since passwords were hashed.
+     * @param csvFile The CSV file, replaced if it exists
+     * @return A future of the number of users written
+     */
+    public CompletableFuture<Long> exportUsers(Path csvFile) {
+        return metrics.track("exportUsers", () -> users.thenApplyAsync(store -> {
+            try (CsvWriter csv = new CsvWriter(Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8))) {
+                csv.writeRow(RecordSchema.USERS.getFieldNames());
+                long[] written = new long[1];
+                store.forEach(user -> {
+                    try {
+                        csv.writeRow(RecordSchema.USERS.fields(user));
+                        written[0]++;
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                return written[0];
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor));
+    }
+
+    /**
+     * Writes every game result to a CSV file that
+     * {@link #importGames(Path)} reads back, streaming the game log.
+     * @param csvFile The CSV file, replaced if it exists
+     * @return A future of the number of games written
+     */
+    public CompletableFuture<Long> exportGames(Path csvFile) {
+        return metrics.track("exportGames", () -> exportLog(GAMES_FILE, RecordSchema.GAMES, csvFile));
+    }
+
+    /**
+     * Writes every lesson request to a CSV file, streaming the lesson log.
+     * @param csvFile The CSV file, replaced if it exists
+     * @return A future of the number of lesson requests written
+     */
+    public CompletableFuture<Long> exportLessons(Path csvFile) {
+        return metrics.track("exportLessons", () -> exportLog(LESSONS_FILE, RecordSchema.LESSONS, csvFile));
+    }
+
+    // Copies a log to CSV a line at a time, without decoding its records into objects
+    private CompletableFuture<Long> exportLog(String fileName, RecordSchema<?> schema, Path csvFile) {
+        return migrated.thenApplyAsync(done -> {
+            try (CsvWriter csv = new CsvWriter(Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8))) {
+                RecordFile log = RecordFile.open(fileName);
+                csv.writeRow(schema.getFieldNames());
+                String[] fields = new String[schema.getFieldCount()];
+                long[] written = new long[1];
+                log.forEach(line -> {
+                    // Skips the header and any malformed line, as replaying the log does
+                    if (RecordSchema.decodeFields(line, fields) == fields.length) {
+                        try {
+                            csv.writeRow(fields);
+                            written[0]++;
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }
+                });
+                return written[0];
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Serves a player the next puzzle they have not seen, starting near
+     * their own rating.
+     * @param username The player
+     * @param difficulty "Easy", "Hard" or "Extremely Hard"
+     * @return A future of the puzzle, or of null if none are left
+     */
+    public CompletableFuture<Puzzle> nextPuzzle(String username, String difficulty) {
+        return metrics.track("nextPuzzle", () -> puzzles
+                .thenCombine(ratings, (server, engine) -> server.nextAsync(username, difficulty, engine.rating(username)))
+                .thenCompose(next -> next));
+    }
+
+    /**
+     * Queues a player for a game against an opponent of similar rating.
+     * @param username The player
+     * @return A future that completes when an opponent has been found
+     */
+    public CompletableFuture<Matchmaker.Match> findMatch(String username) {
+        return ratings.thenCompose(engine -> matchmaker.join(username, engine.rating(username)));
+    }
+
+    /**
+     * Takes a player out of the matchmaking queue.
+     * @param username The player
+     * @return true if the player was still waiting
+     */
+    public boolean cancelMatch(String username) {
+        return matchmaker.leave(username);
+    }
+
+    public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+
+    /**
+     * Delivers the outcome of a future to a callback on the Event Dispatch
+     * Thread. The failure passed to the callback is unwrapped from any
+     * CompletionException.
+     * @param future The future to wait for
+     * @param callback The callback that receives the result or failure
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, BiConsumer<? super T, Throwable> callback) {
+        future.whenComplete((result, ex) -> {
+            Throwable failure = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            SwingUtilities.invokeLater(() -> callback.accept(result, failure));
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents one coaching request as stored in coaching_credentials.txt.
+ */
+public final class CoachingRecord {
+    private final String id;
+    private final String name;
+    private final String bio;
+    private final String student;
+
+    /**
+     * Constructor to create a coaching record.
+     * @param id The ID entered in the coaching form
+     * @param name The name of the coach
+     * @param bio The coach bio entered in the coaching form
+     * @param student The username of the student to coach
+     */
+    public CoachingRecord(String id, String name, String bio, String student) {
+        this.id = id;
+        this.name = name;
+        this.bio = bio;
+        this.student = student;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBio() {
+        return bio;
+    }
+
+    public String getStudent() {
+        return student;
+    }
+}
@@ -0,0 +1,129 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads comma-separated values as spreadsheets write them (RFC
+ * 4180): a field may be enclosed in double quotes, inside which commas and
+ * line breaks are part of the field and a doubled quote stands for one
+ * quote. Lines may end with "\r\n" or "\n", a byte order mark before the
+ * first record is skipped, and so are blank lines. Records are read one at
+ * a time through a fixed buffer, so a file of any size is read in constant
+ * memory.
+ */
+public final class CsvReader implements AutoCloseable {
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader in;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+    private boolean started;
+    // The line the next character is on, and the line the last record started on
+    private long line = 1;
+    private long recordLine;
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * Constructor to create a reader over a stream of CSV text.
+     * @param in The text; it is read through this reader's own buffer
+     */
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next record.
+     * @return The record's fields, or null at the end of the stream
+     * @throws IOException If the stream cannot be read, or ends inside a
+     *         quoted field
+     */
+    public String[] next() throws IOException {
+        if (!started) {
+            started = true;
+            if (fill() && buffer[position] == BYTE_ORDER_MARK) {
+                position++;
+            }
+        }
+        while (fill()) {
+            recordLine = line;
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            while (true) {
+                if (!fill()) {
+                    if (quoted) {
+                        throw new IOException("Unclosed quote in the record starting on line " + recordLine);
+                    }
+                    break;
+                }
+                char c = buffer[position++];
+                if (quoted) {
+                    if (c != QUOTE) {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append(c);
+                    } else if (fill() && buffer[position] == QUOTE) {
+                        field.append(QUOTE);
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == QUOTE && field.length() == 0 && !wasQuoted) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == SEPARATOR) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r' && fill() && buffer[position] == '\n') {
+                        position++;
+                    }
+                    line++;
+                    break;
+                } else {
+                    field.append(c);
+                }
+            }
+            if (!fields.isEmpty() || field.length() > 0 || wasQuoted) {
+                fields.add(field.toString());
+                return fields.toArray(new String[0]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the line the last record read started on, counting from 1.
+     */
+    public long getLine() {
+        return recordLine;
+    }
+
+    // Makes sure a character is buffered; returns false at the end of the stream
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,79 @@
+package com.mycompany.chessmasterske;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class writes comma-separated values that {@link CsvReader} and
+ * spreadsheets read back unchanged: a field holding a comma, a double
+ * quote or a line break is enclosed in quotes, with its quotes doubled,
+ * and every record ends with "\r\n" (RFC 4180). Other fields are written
+ * as they are.
+ */
+public final class CsvWriter implements AutoCloseable, Flushable {
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String LINE_END = "\r\n";
+
+    private final Writer out;
+
+    /**
+     * Constructor to create a writer of CSV text.
+     * @param out The destination, which should be buffered
+     */
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes one record.
+     * @param fields The record's fields
+     * @throws IOException If the record cannot be written
+     */
+    public void writeRow(String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(SEPARATOR);
+            }
+            writeField(fields[i]);
+        }
+        out.write(LINE_END);
+    }
+
+    private void writeField(String field) throws IOException {
+        if (!needsQuotes(field)) {
+            out.write(field);
+            return;
+        }
+        out.write(QUOTE);
+        int start = 0;
+        for (int quote = field.indexOf(QUOTE); quote >= 0; quote = field.indexOf(QUOTE, start)) {
+            out.write(field, start, quote + 1 - start);
+            out.write(QUOTE);
+            start = quote + 1;
+        }
+        out.write(field, start, field.length() - start);
+        out.write(QUOTE);
+    }
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This exception is thrown when a registration is refused because its
+ * username or email already belongs to a registered user.
+ */
+public class DuplicateRegistrationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public static final String USERNAME = "username";
+    public static final String EMAIL = "email";
+
+    private final String field;
+
+    /**
+     * Constructor to create the exception.
+     * @param field Which field is taken, {@link #USERNAME} or {@link #EMAIL}
+     */
+    public DuplicateRegistrationException(String field) {
+        super(USERNAME.equals(field) ? "That username is already taken." : "That email is already registered.");
+        this.field = field;
+    }
+
+    public String getField() {
+        return field;
+    }
+}
@@ -0,0 +1,92 @@
+package com.mycompany.chessmasterske;
+
+import javax.swing.AbstractButton;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InvocationEvent;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * This class watches the Event Dispatch Thread and logs every event whose
+ * handling blocks it for longer than a threshold. Time spent in nested event
+ * loops, such as a modal JOptionPane opened by a listener, is not counted
+ * against the listener that opened it: neither the events the nested loop
+ * dispatches nor the time it waits for them, e.g. while the user reads the
+ * dialog.
+ */
+public class EdtStallDetector extends EventQueue {
+    private static final Logger LOGGER = Logger.getLogger(EdtStallDetector.class.getName());
+
+    private final long thresholdNanos;
+    // Nested time per dispatch depth; only touched on the EDT
+    private final long[] nestedNanos = new long[64];
+    private int depth;
+
+    private EdtStallDetector(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Installs the detector on the system event queue. The threshold can be
+     * set with the chessmasters.edt.stallMs system property.
+     * @param defaultThresholdMillis The threshold used if the property is unset
+     */
+    public static void install(long defaultThresholdMillis) {
+        long thresholdMillis = Long.getLong("chessmasters.edt.stallMs", defaultThresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EdtStallDetector(thresholdMillis));
+    }
+
+    @Override
+    public AWTEvent getNextEvent() throws InterruptedException {
+        int level = depth;
+        if (level == 0 || !isDispatchThread()) {
+            return super.getNextEvent();
+        }
+        // A nested event loop is waiting inside the dispatch at level - 1
+        long start = System.nanoTime();
+        try {
+            return super.getNextEvent();
+        } finally {
+            if (level - 1 < nestedNanos.length) {
+                nestedNanos[level - 1] += System.nanoTime() - start;
+            }
+        }
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        int level = depth++;
+        if (level < nestedNanos.length) {
+            nestedNanos[level] = 0;
+        }
+        long start = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long total = System.nanoTime() - start;
+            depth--;
+            long own = level < nestedNanos.length ? total - nestedNanos[level] : total;
+            if (level > 0 && level - 1 < nestedNanos.length) {
+                nestedNanos[level - 1] += total;
+            }
+            if (own > thresholdNanos) {
+                LOGGER.warning(String.format("EDT blocked for %d ms by %s",
+                        TimeUnit.NANOSECONDS.toMillis(own), describe(event)));
+            }
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        Object source = event.getSource();
+        if (source instanceof AbstractButton) {
+            // Clicks reach ActionListeners through the button's mouse/key events
+            return "listener of button \"" + ((AbstractButton) source).getText() + "\" (" + event.paramString() + ")";
+        }
+        if (event instanceof InvocationEvent) {
+            return "InvocationEvent " + event.paramString();
+        }
+        return event.getClass().getSimpleName() + " on " + source.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,474 @@
+package com.mycompany.chessmasterske;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class keeps every player's Elo rating up to date as game results are
+ * recorded. A player starts from the rating entered at registration (or
+ * {@link #DEFAULT_RATING} for names that never registered) and each result
+ * moves both players' ratings at once. Changes are not written back to
+ * users.txt; they are appended to a journal (rating_journal.txt) that is
+ * replayed when the engine is opened. Journal lines are
+ * "g,white,black,result,whiteDelta,blackDelta" for one game, or, after a
+ * full recomputation, "c,players" followed by that many
+ * "r,username,rating,games" lines holding every player's absolute rating.
+ * A complete reset replaces everything replayed before it, so the games
+ * behind it are not counted again; one cut short by a crash is ignored.
+ * Fields are escaped as in the other logs (see {@link RecordSchema}) so a
+ * username may contain a comma.
+ * <p>
+ * The ratings can be saved to a snapshot next to the journal
+ * (rating_journal.txt.snap) with {@link #writeSnapshot()}; the engine then
+ * opens by reading the snapshot and replaying only the journal lines
+ * written after it.
+ */
+public class EloEngine {
+    public static final int DEFAULT_RATING = 1200;
+    public static final String JOURNAL_FILE = "rating_journal.txt";
+
+    private static final int SNAPSHOT_MAGIC = 0x43525331;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_BUFFER = 1 << 16;
+    // Games below this size are parsed by one fork-join task
+    private static final int PARSE_CHUNK = 4096;
+
+    private final UserStore users;
+    private final List<RatingListener> listeners = new CopyOnWriteArrayList<>();
+    private final RecordFile journal;
+    private final GroupCommitWriter writer;
+    private RatingTable table;
+    // Journal lines submitted so far and the future of the last one, guarded by this
+    private long journaled;
+    private CompletableFuture<Long> lastJournaled = CompletableFuture.completedFuture(0L);
+    // What the snapshot on disk covers, or null if there is none
+    private volatile LogPosition saved;
+    // The game log records the last recomputation counted, guarded by this
+    private RecordFile recomputedLog;
+    private long recomputedGeneration;
+    private long recomputedThrough;
+    // A reset being replayed and how many of its lines are still to come
+    private RatingTable resetting;
+    private int resetLeft;
+
+    /**
+     * This interface is notified whenever a player's rating changes.
+     */
+    public interface RatingListener {
+        /**
+         * Called with a player's new rating.
+         * @param username The player
+         * @param rating The player's new rating
+         */
+        void ratingChanged(String username, int rating);
+    }
+
+    private EloEngine(UserStore users, RecordFile journal, GroupCommitWriter writer) {
+        this.users = users;
+        this.journal = journal;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the engine and replays its journal.
+     * @param journalFile The journal file, e.g. "rating_journal.txt"
+     * @param users The registered users, for starting ratings
+     * @param writer The writer that commits journal lines
+     * @return The engine with all journaled changes applied
+     * @throws IOException if the journal cannot be read
+     */
+    public static EloEngine open(String journalFile, UserStore users, GroupCommitWriter writer) throws IOException {
+        EloEngine engine = new EloEngine(users, RecordFile.open(journalFile), writer);
+        long from = engine.loadSnapshot();
+        engine.journal.forEach(from, engine::replay);
+        engine.journaled = engine.journal.count();
+        return engine;
+    }
+
+    private Path snapshotPath() {
+        return journal.getPath().resolveSibling(journal.getPath().getFileName() + ".snap");
+    }
+
+    /**
+     * Loads the ratings from the snapshot if it still matches the journal.
+     * @return The number of journal lines the snapshot covers
+     */
+    private long loadSnapshot() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(snapshotPath()), SNAPSHOT_BUFFER))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException(snapshotPath() + " is not a rating snapshot");
+            }
+            LogPosition position = LogPosition.read(in);
+            if (position.matches(journal)) {
+                int players = in.readInt();
+                RatingTable loaded = new RatingTable(players);
+                for (int i = 0; i < players; i++) {
+                    int slot = loaded.slotOrAdd(in.readUTF(), in.readInt());
+                    loaded.setGames(slot, in.readInt());
+                }
+                table = loaded;
+                saved = position;
+                return position.getRecords();
+            }
+        } catch (NoSuchFileException ex) {
+            // No snapshot yet
+        } catch (IOException ex) {
+            // Fall back to replaying the whole journal
+            ex.printStackTrace();
+        }
+        table = new RatingTable(users.size());
+        return 0;
+    }
+
+    /**
+     * Returns how many journal lines the snapshot on disk does not cover,
+     * i.e. how many the next open would replay.
+     */
+    public long recordsSinceSnapshot() throws IOException {
+        LogPosition position = saved;
+        return position != null && position.matches(journal) ? journal.count() - position.getRecords() : journal.count();
+    }
+
+    /**
+     * Saves every player's rating and game count to the snapshot, replacing
+     * the previous one. The table is copied under the lock and written out
+     * after it, so rating changes wait only for the copy.
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot() throws IOException {
+        String[] names;
+        int[] ratings;
+        int[] games;
+        long covered;
+        CompletableFuture<Long> last;
+        synchronized (this) {
+            names = new String[table.size()];
+            ratings = new int[names.length];
+            games = new int[names.length];
+            int player = 0;
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.username(slot) != null) {
+                    names[player] = table.username(slot);
+                    ratings[player] = table.rating(slot);
+                    games[player++] = table.games(slot);
+                }
+            }
+            covered = journaled;
+            last = lastJournaled;
+        }
+        try {
+            // The snapshot may only cover lines that are already in the journal
+            last.join();
+        } catch (CompletionException ex) {
+            throw new IOException("the journal could not be written", ex.getCause());
+        }
+        if (journal.count() < covered) {
+            throw new IOException("the journal is missing lines that were submitted");
+        }
+        LogPosition position = LogPosition.of(journal, covered);
+        Path path = snapshotPath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp), SNAPSHOT_BUFFER))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            position.write(out);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+                out.writeInt(ratings[i]);
+                out.writeInt(games[i]);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        saved = position;
+    }
+
+    /**
+     * Submits a journal line. Called under the lock, so lines reach the
+     * journal in the order the changes were made.
+     */
+    private CompletableFuture<Long> journal(String line) {
+        lastJournaled = writer.submit(journal, line);
+        journaled++;
+        return lastJournaled;
+    }
+
+    private void replay(String line) {
+        String[] data = new String[6];
+        int fields = RecordSchema.decodeFields(line, data);
+        try {
+            if (fields == 4 && data[0].equals("r") && resetting != null) {
+                resetting.setGames(resetting.slotOrAdd(data[1], Integer.parseInt(data[2])), Integer.parseInt(data[3]));
+                if (--resetLeft == 0) {
+                    table = resetting;
+                    resetting = null;
+                }
+                return;
+            }
+            // Anything else ends a reset that a crash cut short
+            resetting = null;
+            if (fields == 6 && data[0].equals("g")) {
+                adjust(slot(data[1]), Integer.parseInt(data[4]));
+                adjust(slot(data[2]), Integer.parseInt(data[5]));
+            } else if (fields == 2 && data[0].equals("c")) {
+                int players = Integer.parseInt(data[1]);
+                if (players == 0) {
+                    table = new RatingTable(users.size());
+                } else {
+                    resetting = new RatingTable(players);
+                    resetLeft = players;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            // Skip a damaged journal line
+        }
+    }
+
+    private void adjust(int slot, int delta) {
+        table.setRating(slot, table.rating(slot) + delta);
+        table.addGame(slot);
+    }
+
+    private int slot(String username) {
+        return table.slotOrAdd(username, startingRating(username));
+    }
+
+    private int startingRating(String username) {
+        UserRecord user = users.find(username);
+        return user == null ? DEFAULT_RATING : user.getEloRating();
+    }
+
+    /**
+     * Returns a player's current rating.
+     * @param username The player
+     * @return The rating, or the starting rating if the player has no games
+     */
+    public synchronized int rating(String username) {
+        int slot = table.slotOf(username);
+        return slot < 0 ? startingRating(username) : table.rating(slot);
+    }
+
+    /**
+     * Returns the number of rated games a player has played.
+     * @param username The player
+     * @return The number of games applied for this player
+     */
+    public synchronized int games(String username) {
+        int slot = table.slotOf(username);
+        return slot < 0 ? 0 : table.games(slot);
+    }
+
+    /**
+     * Registers a listener for rating changes.
+     * @param listener The listener to add
+     */
+    public void addListener(RatingListener listener) {
+        listeners.add(listener);
+    }
+
+    private void fireRatingChanged(String username) {
+        fireRatingChanged(username, table.rating(table.slotOf(username)));
+    }
+
+    private void fireRatingChanged(String username, int rating) {
+        for (RatingListener listener : listeners) {
+            listener.ratingChanged(username, rating);
+        }
+    }
+
+    /**
+     * Passes every rated player and their current rating to a callback.
+     * @param callback The callback to receive each player
+     */
+    public synchronized void forEachRating(RatingListener callback) {
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            String username = table.username(slot);
+            if (username != null) {
+                callback.ratingChanged(username, table.rating(slot));
+            }
+        }
+    }
+
+    /**
+     * Applies a game result to both players' ratings and journals the change.
+     * The in-memory ratings change at once; the future completes when the
+     * journal line is durable.
+     * @param game The game result
+     * @return A future that completes once the change is journaled
+     */
+    public synchronized CompletableFuture<Long> apply(GameResult game) {
+        String line = applyTo(table, game);
+        // Notify under the lock so listeners see changes in order
+        fireRatingChanged(game.getWhitePlayer());
+        fireRatingChanged(game.getBlackPlayer());
+        return journal(line);
+    }
+
+    /**
+     * Applies a game that was saved to the game log, unless a recomputation
+     * already counted it, i.e. read it from the log before this call.
+     * @param game The game result
+     * @param gameLog The game log it was saved to
+     * @param recordNumber The game's record number in the log
+     * @return A future that completes once the change is journaled
+     */
+    public synchronized CompletableFuture<Long> apply(GameResult game, RecordFile gameLog, long recordNumber) {
+        if (gameLog == recomputedLog && gameLog.generation() == recomputedGeneration && recordNumber < recomputedThrough) {
+            return lastJournaled;
+        }
+        return apply(game);
+    }
+
+    /**
+     * Computes a rating change with the FIDE development coefficients: K is
+     * 40 for a player's first 30 games, 10 from 2400 upwards and 20 otherwise.
+     * @param rating The player's rating
+     * @param opponent The opponent's rating
+     * @param games The player's number of rated games
+     * @param score The player's score in this game
+     * @return The rounded rating change
+     */
+    static int delta(int rating, int opponent, int games, double score) {
+        int k = games < 30 ? 40 : rating >= 2400 ? 10 : 20;
+        double expected = 1.0 / (1.0 + Math.pow(10.0, (opponent - rating) / 400.0));
+        return (int) Math.round(k * (score - expected));
+    }
+
+    /**
+     * Recomputes every rating from scratch by replaying the whole game log.
+     * The log is parsed in parallel on the common fork-join pool; the results
+     * are then applied in log order, because each Elo update depends on the
+     * ratings left by the games before it. Every player's new rating and
+     * game count is journaled as one reset, which replaces the journal lines
+     * before it when the engine is next opened.
+     * @param gameLog The game log, i.e. game_credentials.txt
+     * @return A future that completes once the reset is journaled
+     * @throws IOException if the game log cannot be read, or was compacted
+     *         while it was parsed
+     */
+    public CompletableFuture<Void> recompute(RecordFile gameLog) throws IOException {
+        long generation = gameLog.generation();
+        int count = (int) gameLog.count();
+        GameResult[] games = new GameResult[count];
+        ParseTask task = new ParseTask(gameLog, games, 0, count);
+        ForkJoinPool.commonPool().invoke(task);
+        if (task.failure != null) {
+            throw task.failure;
+        }
+
+        synchronized (this) {
+            if (gameLog.generation() != generation) {
+                throw new IOException(gameLog.getPath() + " was compacted while the ratings were recomputed");
+            }
+            // Results logged while the parse ran are picked up here
+            int logged = (int) gameLog.count();
+            RatingTable fresh = new RatingTable(Math.max(table.size(), users.size()));
+            for (int i = 0; i < logged; i++) {
+                GameResult game = i < count ? games[i] : GameResult.parse(gameLog.read(i));
+                if (game != null) {
+                    applyTo(fresh, game);
+                }
+            }
+
+            List<CompletableFuture<Long>> reset = new ArrayList<>();
+            reset.add(journal(RecordSchema.encodeFields(new String[] {"c", Integer.toString(fresh.size())})));
+            for (int slot = 0; slot < fresh.capacity(); slot++) {
+                String username = fresh.username(slot);
+                if (username != null) {
+                    reset.add(journal(RecordSchema.encodeFields(new String[] {"r", username,
+                            Integer.toString(fresh.rating(slot)), Integer.toString(fresh.games(slot))})));
+                }
+            }
+            RatingTable old = table;
+            table = fresh;
+            // Games that were logged but not yet applied are skipped when they are
+            recomputedLog = gameLog;
+            recomputedGeneration = generation;
+            recomputedThrough = logged;
+            for (int slot = 0; slot < old.capacity(); slot++) {
+                String username = old.username(slot);
+                if (username != null && fresh.slotOf(username) < 0) {
+                    // No game of theirs is left in the log
+                    fireRatingChanged(username, startingRating(username));
+                }
+            }
+            forEachRating(this::fireRatingChanged);
+            return CompletableFuture.allOf(reset.toArray(new CompletableFuture<?>[0]));
+        }
+    }
+
+    /**
+     * Applies one result to a rating table.
+     * @return The journal line describing the change
+     */
+    private String applyTo(RatingTable ratings, GameResult game) {
+        ratings.slotOrAdd(game.getWhitePlayer(), startingRating(game.getWhitePlayer()));
+        int black = ratings.slotOrAdd(game.getBlackPlayer(), startingRating(game.getBlackPlayer()));
+        // Adding black may have grown the table, so look white up again
+        int white = ratings.slotOf(game.getWhitePlayer());
+        int whiteDelta = delta(ratings.rating(white), ratings.rating(black), ratings.games(white), game.whiteScore());
+        int blackDelta = delta(ratings.rating(black), ratings.rating(white), ratings.games(black), 1.0 - game.whiteScore());
+        ratings.setRating(white, ratings.rating(white) + whiteDelta);
+        ratings.addGame(white);
+        ratings.setRating(black, ratings.rating(black) + blackDelta);
+        ratings.addGame(black);
+        return RecordSchema.encodeFields(new String[] {"g", game.getWhitePlayer(), game.getBlackPlayer(),
+                game.getResult(), Integer.toString(whiteDelta), Integer.toString(blackDelta)});
+    }
+
+    /**
+     * This class parses a range of the game log, splitting it in halves
+     * until each piece is small enough.
+     */
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RecordFile gameLog;
+        private final GameResult[] games;
+        private final int from;
+        private final int to;
+        private IOException failure;
+
+        ParseTask(RecordFile gameLog, GameResult[] games, int from, int to) {
+            this.gameLog = gameLog;
+            this.games = games;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARSE_CHUNK) {
+                try {
+                    for (int i = from; i < to; i++) {
+                        games[i] = GameResult.parse(gameLog.read(i));
+                    }
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ParseTask left = new ParseTask(gameLog, games, from, middle);
+            ParseTask right = new ParseTask(gameLog, games, middle, to);
+            invokeAll(left, right);
+            failure = left.failure != null ? left.failure : right.failure;
+        }
+    }
+}
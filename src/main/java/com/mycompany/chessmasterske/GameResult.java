@@ -0,0 +1,76 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents one game result as recorded by the game form in
+ * game_credentials.txt.
+ */
+public final class GameResult {
+    public static final String WHITE = "White";
+    public static final String BLACK = "Black";
+    public static final String DRAW = "Draw";
+
+    private final String id;
+    private final String whitePlayer;
+    private final String blackPlayer;
+    private final String result;
+
+    /**
+     * Constructor to create a game result.
+     * @param id The ID entered in the game form
+     * @param whitePlayer The username of the white player
+     * @param blackPlayer The username of the black player
+     * @param result "White", "Black" or "Draw"
+     */
+    public GameResult(String id, String whitePlayer, String blackPlayer, String result) {
+        this.id = id;
+        this.whitePlayer = whitePlayer;
+        this.blackPlayer = blackPlayer;
+        this.result = result;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getWhitePlayer() {
+        return whitePlayer;
+    }
+
+    public String getBlackPlayer() {
+        return blackPlayer;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Returns white's score: 1 for a white win, 0 for a black win and 0.5
+     * for a draw.
+     * @return The score of the white player
+     */
+    public double whiteScore() {
+        if (WHITE.equals(result)) {
+            return 1.0;
+        }
+        return BLACK.equals(result) ? 0.0 : 0.5;
+    }
+
+    /**
+     * Parses one line of game_credentials.txt.
+     * @param line The line in the {@link RecordSchema#GAMES} format
+     * @return The parsed result, or null for the header, or if a player or
+     *         the result is missing
+     */
+    public static GameResult parse(String line) {
+        return RecordSchema.GAMES.decode(line);
+    }
+
+    /**
+     * Formats this result as one line of game_credentials.txt.
+     * @return The record in the {@link RecordSchema#GAMES} format
+     */
+    public String toLine() {
+        return RecordSchema.GAMES.encode(this);
+    }
+}
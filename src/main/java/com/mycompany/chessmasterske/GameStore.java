@@ -0,0 +1,565 @@
+package com.mycompany.chessmasterske;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only archive of games in a compact binary file.
+ * Each record holds the players, the date, the result and the moves at 16
+ * bits each, behind a length and a CRC32 so that a record torn by a crash
+ * is found and cut off when the file is opened. Opening the store scans it
+ * once to build an in-memory index of game offsets by player and by date;
+ * games are then read back one at a time, straight from the file, so even
+ * millions of games never have to be held in memory together.
+ */
+public class GameStore implements AutoCloseable {
+    public static final String STORE_FILE = "games.bin";
+
+    private static final Logger LOG = Logger.getLogger(GameStore.class.getName());
+    private static final int MAGIC = 0x434D4753;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Length and CRC32 in front of every record
+    private static final int RECORD_HEADER_SIZE = 8;
+    // Date, result, two name lengths and the move count
+    private static final int MIN_BODY_SIZE = 4 + 1 + 1 + 1 + 2;
+    private static final int UNKNOWN_DATE = Integer.MIN_VALUE;
+    private static final String[] RESULTS = {GameResult.WHITE, GameResult.BLACK, GameResult.DRAW, "*"};
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+    private static final int IMPORT_BATCH_SIZE = 1024;
+
+    /**
+     * This class is the store's end with the number of games and moves
+     * before it, for reading a store that may be appended to meanwhile.
+     */
+    public static final class Extent {
+        private final long end;
+        private final int games;
+        private final long plies;
+
+        Extent(long end, int games, long plies) {
+            this.end = end;
+            this.games = games;
+            this.plies = plies;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public long getPlies() {
+            return plies;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Offsets> byPlayer = new HashMap<>();
+    private final TreeMap<Integer, Offsets> byDate = new TreeMap<>();
+    // Only complete records lie below the end, so readers never see a partial one
+    private volatile long end;
+    private int count;
+    private long plies;
+
+    /**
+     * This class is a growable list of record offsets.
+     */
+    private static final class Offsets {
+        long[] offsets = new long[4];
+        int size;
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+
+    /**
+     * Reads one record during a scan.
+     */
+    private interface RecordVisitor {
+        void visit(long offset, ByteBuffer body);
+    }
+
+    private GameStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the game store, creating it if needed, and indexes every game.
+     * A record left incomplete by a crash is removed.
+     * @param fileName The store, e.g. "games.bin"
+     * @return The game store
+     * @throws IOException if the file cannot be read or is not a game store
+     */
+    public static GameStore open(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        GameStore store = new GameStore(channel);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                channel.force(true);
+                size = HEADER_SIZE;
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException(path + " is not a game store");
+                }
+            }
+            long valid = store.scan(HEADER_SIZE, size, store::index);
+            if (valid < size) {
+                LOG.warning("Removing " + (size - valid) + " bytes of incomplete games from " + path);
+                channel.truncate(valid);
+            }
+            store.end = valid;
+            return store;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds a record found by the opening scan to the indexes.
+     */
+    private void index(long offset, ByteBuffer body) {
+        int date = body.getInt();
+        body.get();
+        String white = readName(body);
+        String black = readName(body);
+        addToIndex(offset, white, black, date, body.getShort() & 0xFFFF);
+    }
+
+    private void addToIndex(long offset, String white, String black, int date, int moves) {
+        byPlayer.computeIfAbsent(white, name -> new Offsets()).add(offset);
+        if (!black.equals(white)) {
+            byPlayer.computeIfAbsent(black, name -> new Offsets()).add(offset);
+        }
+        if (date != UNKNOWN_DATE) {
+            byDate.computeIfAbsent(date, day -> new Offsets()).add(offset);
+        }
+        count++;
+        plies += moves;
+    }
+
+    /**
+     * Appends games to the store and forces them to disk.
+     * @param games The games to append
+     * @return The offsets the games were stored at
+     * @throws IOException if the games cannot be written
+     */
+    public synchronized long[] append(List<StoredGame> games) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(games.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        long[] offsets = new long[games.size()];
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < games.size(); i++) {
+            offsets[i] = end + bytes.size();
+            byte[] body = encode(games.get(i));
+            crc.reset();
+            crc.update(body);
+            out.writeInt(body.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+        }
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), end);
+        channel.force(false);
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < games.size(); i++) {
+                StoredGame game = games.get(i);
+                addToIndex(offsets[i], truncate(game.getWhitePlayer()), truncate(game.getBlackPlayer()), dayOf(game.getDate()),
+                        game.getMoveCount());
+            }
+            // Moved with the counts, so an extent always matches them
+            end += bytes.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return offsets;
+    }
+
+    /**
+     * Imports every game from PGN text. Games that start from a set-up
+     * position or contain a move that cannot be resolved are skipped.
+     * @param pgn The PGN text
+     * @return The number of games imported
+     * @throws IOException if the text cannot be read or the games written
+     */
+    public int importPgn(Reader pgn) throws IOException {
+        int imported = 0;
+        int skipped = 0;
+        List<StoredGame> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        try (PgnReader reader = new PgnReader(pgn)) {
+            PgnReader.PgnGame game;
+            while ((game = reader.next()) != null) {
+                StoredGame stored = convert(game);
+                if (stored == null) {
+                    skipped++;
+                    continue;
+                }
+                batch.add(stored);
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    append(batch);
+                    imported += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            append(batch);
+            imported += batch.size();
+        }
+        if (skipped > 0) {
+            LOG.info("Skipped " + skipped + " PGN games that could not be replayed");
+        }
+        return imported;
+    }
+
+    /**
+     * Replays a PGN game from the starting position to pack its moves.
+     * @return The game, or null if it cannot be replayed
+     */
+    private static StoredGame convert(PgnReader.PgnGame game) {
+        if (!game.tag("FEN").isEmpty() || game.getMoves().size() > 0xFFFF) {
+            return null;
+        }
+        Position position = Position.start();
+        short[] moves = new short[game.getMoves().size()];
+        try {
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = position.parseSan(game.getMoves().get(i));
+                position.play(moves[i]);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            return null;
+        }
+        String result;
+        switch (game.getResult()) {
+            case "1-0":
+                result = GameResult.WHITE;
+                break;
+            case "0-1":
+                result = GameResult.BLACK;
+                break;
+            case "1/2-1/2":
+                result = GameResult.DRAW;
+                break;
+            default:
+                result = "*";
+        }
+        return new StoredGame(-1, game.tag("White"), game.tag("Black"), parseDate(game.tag("Date")), result, moves);
+    }
+
+    /**
+     * Parses a PGN date such as "2024.03.17"; unknown months and days, as
+     * in "2024.??.??", are taken as the first.
+     * @return The date, or null if even the year is unknown
+     */
+    static LocalDate parseDate(String date) {
+        String[] parts = date.split("\\.");
+        try {
+            int year = Integer.parseInt(parts[0]);
+            int month = parts.length > 1 && !parts[1].contains("?") ? Integer.parseInt(parts[1]) : 1;
+            int day = parts.length > 2 && !parts[2].contains("?") ? Integer.parseInt(parts[2]) : 1;
+            return LocalDate.of(year, month, day);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the game stored at an offset.
+     * @param offset The game's offset, as returned by append or an index
+     * @return The game
+     * @throws IOException if the game cannot be read
+     */
+    public StoredGame read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, offset);
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+        readFully(body, offset + RECORD_HEADER_SIZE);
+        body.flip();
+        return decode(offset, body);
+    }
+
+    /**
+     * Streams every game to a consumer in the order they were stored,
+     * reading the file sequentially in large blocks.
+     * @param consumer The consumer to receive each game
+     * @throws IOException if the file cannot be read
+     */
+    public void forEach(Consumer<StoredGame> consumer) throws IOException {
+        scan(HEADER_SIZE, end, (offset, body) -> consumer.accept(decode(offset, body)));
+    }
+
+    /**
+     * Streams the games that were stored when an extent was taken, in the
+     * order they were stored, leaving out any appended since.
+     * @param extent The extent, from {@link #extent()}
+     * @param consumer The consumer to receive each game
+     * @throws IOException if the file cannot be read
+     */
+    public void forEach(Extent extent, Consumer<StoredGame> consumer) throws IOException {
+        scan(HEADER_SIZE, extent.end, (offset, body) -> consumer.accept(decode(offset, body)));
+    }
+
+    /**
+     * Returns how far the store reaches now: its end, number of games and
+     * number of moves, all taken at the same moment.
+     */
+    public Extent extent() {
+        lock.readLock().lock();
+        try {
+            return new Extent(end, count, plies);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams the games a player played, as white or black, in the order
+     * they were stored.
+     * @param player The player's name
+     * @param consumer The consumer to receive each game
+     * @throws IOException if the file cannot be read
+     */
+    public void forEachByPlayer(String player, Consumer<StoredGame> consumer) throws IOException {
+        long[] offsets;
+        lock.readLock().lock();
+        try {
+            Offsets found = byPlayer.get(player);
+            offsets = found == null ? new long[0] : Arrays.copyOf(found.offsets, found.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (long offset : offsets) {
+            consumer.accept(read(offset));
+        }
+    }
+
+    /**
+     * Streams the games played between two dates, oldest first.
+     * @param from The first day, inclusive
+     * @param to The last day, inclusive
+     * @param consumer The consumer to receive each game
+     * @throws IOException if the file cannot be read
+     */
+    public void forEachBetween(LocalDate from, LocalDate to, Consumer<StoredGame> consumer) throws IOException {
+        Offsets offsets = new Offsets();
+        lock.readLock().lock();
+        try {
+            for (Offsets day : byDate.subMap(dayOf(from), true, dayOf(to), true).values()) {
+                for (int i = 0; i < day.size; i++) {
+                    offsets.add(day.offsets[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int i = 0; i < offsets.size; i++) {
+            consumer.accept(read(offsets.offsets[i]));
+        }
+    }
+
+    /**
+     * Returns the number of games in the store.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the total number of moves in all stored games.
+     */
+    public long plyCount() {
+        lock.readLock().lock();
+        try {
+            return plies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the store file in bytes.
+     */
+    public long byteSize() {
+        return end;
+    }
+
+    /**
+     * Reads records sequentially from one offset to another.
+     * @return The offset after the last complete, undamaged record
+     */
+    private long scan(long from, long to, RecordVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        buffer.limit(0);
+        long filePosition = from;
+        long offset = from;
+        CRC32 crc = new CRC32();
+        while (offset < to) {
+            if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                filePosition = refill(buffer, filePosition, to);
+                if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                    break;
+                }
+            }
+            int length = buffer.getInt(buffer.position());
+            int checksum = buffer.getInt(buffer.position() + 4);
+            int recordSize = RECORD_HEADER_SIZE + length;
+            if (length < MIN_BODY_SIZE || offset + recordSize > to) {
+                break;
+            }
+            if (buffer.remaining() < recordSize) {
+                if (recordSize > buffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(recordSize);
+                    larger.put(buffer);
+                    larger.flip();
+                    buffer = larger;
+                }
+                filePosition = refill(buffer, filePosition, to);
+                if (buffer.remaining() < recordSize) {
+                    break;
+                }
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.position(buffer.position() + RECORD_HEADER_SIZE);
+            body.limit(buffer.position() + recordSize);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            visitor.visit(offset, body);
+            buffer.position(buffer.position() + recordSize);
+            offset += recordSize;
+        }
+        return offset;
+    }
+
+    private long refill(ByteBuffer buffer, long filePosition, long to) throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining() && filePosition < to) {
+            int read = channel.read(buffer, filePosition);
+            if (read < 0) {
+                break;
+            }
+            filePosition += read;
+        }
+        buffer.flip();
+        return filePosition;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of game store at " + position);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static byte[] encode(StoredGame game) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(MIN_BODY_SIZE + 32 + game.getMoveCount() * 2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(dayOf(game.getDate()));
+        int result = Arrays.asList(RESULTS).indexOf(game.getResult());
+        out.writeByte(result < 0 ? RESULTS.length - 1 : result);
+        writeName(out, game.getWhitePlayer());
+        writeName(out, game.getBlackPlayer());
+        out.writeShort(game.getMoveCount());
+        for (int ply = 0; ply < game.getMoveCount(); ply++) {
+            out.writeShort(game.getMove(ply));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static StoredGame decode(long offset, ByteBuffer body) {
+        int day = body.getInt();
+        String result = RESULTS[Math.min(body.get() & 0xFF, RESULTS.length - 1)];
+        String white = readName(body);
+        String black = readName(body);
+        short[] moves = new short[body.getShort() & 0xFFFF];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = body.getShort();
+        }
+        return new StoredGame(offset, white, black, day == UNKNOWN_DATE ? null : LocalDate.ofEpochDay(day), result, moves);
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = truncate(name).getBytes(StandardCharsets.UTF_8);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readName(ByteBuffer body) {
+        byte[] bytes = new byte[body.get() & 0xFF];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Shortens a name to fit in 255 bytes of UTF-8.
+     */
+    private static String truncate(String name) {
+        while (name.getBytes(StandardCharsets.UTF_8).length > 255) {
+            int cut = name.length() - 1;
+            // Never split a surrogate pair
+            if (cut > 0 && Character.isHighSurrogate(name.charAt(cut - 1))) {
+                cut--;
+            }
+            name = name.substring(0, cut);
+        }
+        return name;
+    }
+
+    private static int dayOf(LocalDate date) {
+        return date == null ? UNKNOWN_DATE : (int) date.toEpochDay();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,277 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class writes records on a background thread and commits them in
+ * groups. Callers queue a record and get a future back straight away; the
+ * writer collects records until the batch is full or the oldest record has
+ * waited for the maximum latency, appends the whole batch, forces each
+ * touched file to disk once and only then completes the futures.
+ * <p>
+ * A record can carry a {@link Guard} that checks it on the writer thread
+ * right before it is appended. While a batch is appended, the shared files
+ * it writes to and the files its guards name are locked against other
+ * processes (see {@link RecordFile#openShared(String)}), always in path
+ * order so that writers in different processes cannot deadlock.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 5;
+
+    private static GroupCommitWriter shared;
+
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * This interface checks a record on the writer thread right before it
+     * is appended, once the files it depends on are locked, e.g. that a
+     * username is still free after other processes' records have been read.
+     */
+    public interface Guard {
+        /**
+         * Returns further files that must stay locked while the record is
+         * checked and appended; the file it is appended to is always locked
+         * if it is shared.
+         */
+        Collection<RecordFile> locks();
+
+        /**
+         * Checks the record; throws to refuse it, and the exception then
+         * completes the record's future.
+         * @throws IOException if a file cannot be read
+         */
+        void check() throws IOException;
+    }
+
+    /**
+     * This class holds one queued record and the future of its caller.
+     */
+    private static final class PendingRecord {
+        final RecordFile file;
+        final String record;
+        final Guard guard;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        long recordNumber;
+        Throwable failure;
+
+        PendingRecord(RecordFile file, String record, Guard guard) {
+            this.file = file;
+            this.record = record;
+            this.guard = guard;
+        }
+    }
+
+    /**
+     * Constructor to start a writer thread.
+     * @param maxBatchSize The largest number of records committed together
+     * @param maxLatencyMillis The longest a record waits for its batch to fill
+     */
+    public GroupCommitWriter(int maxBatchSize, long maxLatencyMillis) {
+        if (maxBatchSize < 1 || maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and latency not negative");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        thread = new Thread(this::run, "group-commit-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the writer shared by the application. Its limits can be set
+     * with the chessmasters.commit.batchSize and
+     * chessmasters.commit.maxLatencyMs system properties.
+     * @return The shared writer
+     */
+    public static synchronized GroupCommitWriter shared() {
+        if (shared == null) {
+            shared = create();
+        }
+        return shared;
+    }
+
+    /**
+     * Starts a writer of its own with the limits of the shared one, e.g. for
+     * one shard of a file. It is closed together with the record files.
+     * @return The new writer
+     */
+    public static GroupCommitWriter create() {
+        GroupCommitWriter writer = new GroupCommitWriter(
+                Integer.getInteger("chessmasters.commit.batchSize", DEFAULT_MAX_BATCH_SIZE),
+                Long.getLong("chessmasters.commit.maxLatencyMs", DEFAULT_MAX_LATENCY_MILLIS));
+        // Commit whatever is still queued before the record files are closed
+        RecordFile.beforeClose(writer::close);
+        return writer;
+    }
+
+    /**
+     * Queues a record to be appended to a file.
+     * @param file The file to append to
+     * @param record The record text
+     * @return A future that completes with the record number once the
+     *         record is durable, or exceptionally if it could not be written
+     */
+    public CompletableFuture<Long> submit(RecordFile file, String record) {
+        return submit(file, record, null);
+    }
+
+    /**
+     * Queues a record to be appended to a file if a guard still allows it.
+     * @param file The file to append to
+     * @param record The record text
+     * @param guard Checks the record right before it is appended, or null
+     * @return A future that completes with the record number once the
+     *         record is durable, or exceptionally with whatever the guard
+     *         threw if it refused the record
+     */
+    public CompletableFuture<Long> submit(RecordFile file, String record, Guard guard) {
+        PendingRecord pending = new PendingRecord(file, record, guard);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("Writer is closed"));
+        } else {
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    private void run() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingRecord next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                // Nobody interrupts this thread; commit what we have and carry on
+            }
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Appends a batch, forces each file once and completes the futures.
+     */
+    private void commit(List<PendingRecord> batch) {
+        Set<RecordFile> touched = new LinkedHashSet<>();
+        List<RecordFile> locked = new ArrayList<>();
+        try {
+            for (RecordFile file : locksFor(batch)) {
+                file.lockShared();
+                locked.add(file);
+            }
+            for (PendingRecord pending : batch) {
+                try {
+                    if (pending.guard != null) {
+                        pending.guard.check();
+                    }
+                    pending.recordNumber = pending.file.append(pending.record);
+                    touched.add(pending.file);
+                } catch (Exception ex) {
+                    pending.failure = ex;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // A lock could not be taken, so nothing was appended
+            for (PendingRecord pending : batch) {
+                pending.failure = ex;
+            }
+        } finally {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                try {
+                    locked.get(i).unlockShared();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+        Set<RecordFile> failed = new LinkedHashSet<>();
+        for (RecordFile file : touched) {
+            try {
+                file.force();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                failed.add(file);
+            }
+        }
+        for (PendingRecord pending : batch) {
+            if (pending.failure != null) {
+                pending.future.completeExceptionally(pending.failure);
+            } else if (failed.contains(pending.file)) {
+                pending.future.completeExceptionally(new IllegalStateException("Could not sync " + pending.file.getPath()));
+            } else {
+                pending.future.complete(pending.recordNumber);
+            }
+        }
+    }
+
+    /**
+     * Returns the shared files a batch must lock, in path order.
+     */
+    private static Collection<RecordFile> locksFor(List<PendingRecord> batch) {
+        Map<Path, RecordFile> locks = new TreeMap<>();
+        for (PendingRecord pending : batch) {
+            if (pending.file.isShared()) {
+                locks.put(pending.file.getPath(), pending.file);
+            }
+            if (pending.guard != null) {
+                for (RecordFile file : pending.guard.locks()) {
+                    if (file.isShared()) {
+                        locks.put(file.getPath(), file);
+                    }
+                }
+            }
+        }
+        return locks.values();
+    }
+
+    /**
+     * Stops accepting records, commits everything already queued and waits
+     * for the writer thread to finish.
+     */
+    @Override
+    public void close() {
+        // Not interrupted: that would close the FileChannels mid-append
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        PendingRecord late;
+        while ((late = queue.poll()) != null) {
+            late.future.completeExceptionally(new IllegalStateException("Writer is closed"));
+        }
+    }
+}
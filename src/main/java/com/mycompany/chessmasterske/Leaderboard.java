@@ -0,0 +1,288 @@
+package com.mycompany.chessmasterske;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps all players ordered by Elo rating so the dashboard can
+ * show a player's global rank and the top of the table without sorting.
+ * Players are held in a treap (a randomly balanced binary search tree)
+ * ordered by rating, highest first, with ties broken by username; every node
+ * knows the size of its subtree, which makes rank, top-K and rating-range
+ * queries logarithmic. Ratings are updated in place as EloEngine reports
+ * changes.
+ */
+public class Leaderboard implements EloEngine.RatingListener {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ratings = new HashMap<>();
+    private final Random random = new Random();
+    private Node root;
+
+    /**
+     * This class represents one row of the leaderboard.
+     */
+    public static final class Entry {
+        private final String username;
+        private final int rating;
+
+        Entry(String username, int rating) {
+            this.username = username;
+            this.rating = rating;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public int getRating() {
+            return rating;
+        }
+    }
+
+    private static final class Node {
+        final String username;
+        final int rating;
+        final int priority;
+        Node left, right;
+        int size = 1;
+
+        Node(String username, int rating, int priority) {
+            this.username = username;
+            this.rating = rating;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Builds a leaderboard over every registered user and every player the
+     * rating engine knows, and subscribes it to rating changes.
+     * @param users The registered users
+     * @param engine The rating engine
+     * @return The filled leaderboard
+     */
+    public static Leaderboard build(UserStore users, EloEngine engine) {
+        Leaderboard leaderboard = new Leaderboard();
+        // The engine changes ratings and notifies its listeners under its own
+        // lock, so holding it here means no change falls between the fill and
+        // the subscription, nor lands before a stale rating from the fill
+        synchronized (engine) {
+            engine.addListener(leaderboard);
+            users.forEach(user -> leaderboard.ratingChanged(user.getUsername(), engine.rating(user.getUsername())));
+            engine.forEachRating(leaderboard::ratingChanged);
+        }
+        return leaderboard;
+    }
+
+    /**
+     * Adds a player or moves an existing player to a new rating.
+     * @param username The player
+     * @param rating The player's current rating
+     */
+    @Override
+    public void ratingChanged(String username, int rating) {
+        lock.writeLock().lock();
+        try {
+            Integer old = ratings.put(username, rating);
+            if (old != null) {
+                if (old == rating) {
+                    return;
+                }
+                root = remove(root, username, old);
+            }
+            root = insert(root, new Node(username, rating, random.nextInt()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a player's position, where 1 is the highest rated player.
+     * @param username The player
+     * @return The rank, or -1 if the player is not on the leaderboard
+     */
+    public int rank(String username) {
+        lock.readLock().lock();
+        try {
+            Integer rating = ratings.get(username);
+            if (rating == null) {
+                return -1;
+            }
+            int ahead = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = compare(username, rating, node);
+                if (cmp < 0) {
+                    node = node.left;
+                } else {
+                    ahead += size(node.left);
+                    if (cmp == 0) {
+                        return ahead + 1;
+                    }
+                    ahead++;
+                    node = node.right;
+                }
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the highest rated players.
+     * @param k The number of players to return
+     * @return Up to k entries, highest rating first
+     */
+    public List<Entry> top(int k) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>(Math.min(k, size(root)));
+            collectTop(root, k, entries);
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every player rated within a range.
+     * @param minRating The lowest rating to include
+     * @param maxRating The highest rating to include
+     * @return The matching entries, highest rating first
+     */
+    public List<Entry> range(int minRating, int maxRating) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>();
+            collectRange(root, minRating, maxRating, entries);
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of players on the leaderboard.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size(root);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void collectTop(Node node, int k, List<Entry> entries) {
+        if (node == null || entries.size() >= k) {
+            return;
+        }
+        collectTop(node.left, k, entries);
+        if (entries.size() < k) {
+            entries.add(new Entry(node.username, node.rating));
+            collectTop(node.right, k, entries);
+        }
+    }
+
+    private static void collectRange(Node node, int minRating, int maxRating, List<Entry> entries) {
+        if (node == null) {
+            return;
+        }
+        // Higher ratings are on the left
+        if (node.rating <= maxRating) {
+            collectRange(node.left, minRating, maxRating, entries);
+        }
+        if (node.rating >= minRating && node.rating <= maxRating) {
+            entries.add(new Entry(node.username, node.rating));
+        }
+        if (node.rating >= minRating) {
+            collectRange(node.right, minRating, maxRating, entries);
+        }
+    }
+
+    /**
+     * Orders by rating, highest first, then by username.
+     */
+    private static int compare(String username, int rating, Node node) {
+        if (rating != node.rating) {
+            return rating > node.rating ? -1 : 1;
+        }
+        return username.compareTo(node.username);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.username, added.rating, node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                return rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                return rotateLeft(node);
+            }
+        }
+        return update(node);
+    }
+
+    private static Node remove(Node node, String username, int rating) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(username, rating, node);
+        if (cmp < 0) {
+            node.left = remove(node.left, username, rating);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, username, rating);
+        } else {
+            return merge(node.left, node.right);
+        }
+        return update(node);
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = update(node);
+        return update(pivot);
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = update(node);
+        return update(pivot);
+    }
+}
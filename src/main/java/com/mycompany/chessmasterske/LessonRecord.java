@@ -0,0 +1,48 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents one lesson request as stored in lesson_credentials.txt.
+ */
+public final class LessonRecord {
+    private final String id;
+    private final String username;
+    private final String fideId;
+    private final String coach;
+    private final String description;
+
+    /**
+     * Constructor to create a lesson record.
+     * @param id The ID entered in the lesson form
+     * @param username The username of the student
+     * @param fideId The FIDE ID of the student
+     * @param coach The coach the student asked for
+     * @param description What the student wants to work on
+     */
+    public LessonRecord(String id, String username, String fideId, String coach, String description) {
+        this.id = id;
+        this.username = username;
+        this.fideId = fideId;
+        this.coach = coach;
+        this.description = description;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFideId() {
+        return fideId;
+    }
+
+    public String getCoach() {
+        return coach;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
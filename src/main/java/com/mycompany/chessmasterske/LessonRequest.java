@@ -0,0 +1,59 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents a request for a lesson with a coach, made through
+ * either the lesson form or the coaching form.
+ */
+public final class LessonRequest {
+    private final String id;
+    private final String student;
+    private final String coach;
+
+    /**
+     * Constructor to create a lesson request.
+     * @param id The ID entered on the form
+     * @param student The student's username
+     * @param coach The coach the student asked for
+     */
+    public LessonRequest(String id, String student, String coach) {
+        this.id = id;
+        this.student = student;
+        this.coach = coach;
+    }
+
+    /**
+     * Returns the request a record of the lesson log makes.
+     * @param lesson The record
+     * @return The request, or null if the student or coach is missing
+     */
+    public static LessonRequest fromLesson(LessonRecord lesson) {
+        if (lesson.getUsername().isEmpty() || lesson.getCoach().isEmpty()) {
+            return null;
+        }
+        return new LessonRequest(lesson.getId(), lesson.getUsername(), lesson.getCoach());
+    }
+
+    /**
+     * Returns the request a record of the coaching log makes.
+     * @param coaching The record
+     * @return The request, or null if the student or coach is missing
+     */
+    public static LessonRequest fromCoaching(CoachingRecord coaching) {
+        if (coaching.getStudent().isEmpty() || coaching.getName().isEmpty()) {
+            return null;
+        }
+        return new LessonRequest(coaching.getId(), coaching.getStudent(), coaching.getName());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getStudent() {
+        return student;
+    }
+
+    public String getCoach() {
+        return coach;
+    }
+}
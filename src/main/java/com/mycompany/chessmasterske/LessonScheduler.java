@@ -0,0 +1,579 @@
+package com.mycompany.chessmasterske;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class books a weekly lesson slot for every lesson and coaching
+ * request. Each coach's free time is kept as an interval index, a sorted
+ * map of free interval start to end, and each student's booked lessons in
+ * another, so finding the earliest slot that suits both is a few map
+ * lookups. A request goes to the coach the student asked for when that
+ * coach has a slot; otherwise it goes to the coach whose rating best suits
+ * the student, favouring coaches with fewer lessons booked. Requests are
+ * booked one at a time as they arrive; those that cannot be booked wait,
+ * and are booked again when a new coach joins.
+ * <p>
+ * Every booking is appended to lesson_bookings.txt as
+ * "id,student,requested coach,coach,start", the start in minutes from
+ * Monday 00:00. On opening, those bookings are restored as they were and
+ * only the requests without one are booked again, so a restart does not
+ * move anyone's lesson to another coach or slot. Bookings whose request
+ * has left the logs are dropped, and the file rewritten without them.
+ * <p>
+ * The club's coaches are those with hours in coach_availability.txt and
+ * those who have offered coaching; a lesson request naming anyone else
+ * waits. Coach hours are read from that file, one interval per line as
+ * "coach,day,start,end", e.g. "Magnus,Tue,17:00,21:00". Coaches without
+ * any lines there are available on weekday evenings and Saturday morning.
+ */
+public class LessonScheduler implements EloEngine.RatingListener {
+    public static final String AVAILABILITY_FILE = "coach_availability.txt";
+    public static final String BOOKINGS_FILE = "lesson_bookings.txt";
+    public static final int LESSON_MINUTES = 60;
+
+    private static final String[] DAYS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    // Day, start hour, end hour
+    private static final int[][] DEFAULT_HOURS = {{0, 16, 20}, {1, 16, 20}, {2, 16, 20}, {3, 16, 20}, {4, 16, 20}, {5, 10, 14}};
+    // Students learn most from a coach about this far above them
+    private static final int TARGET_RATING_GAP = 200;
+    // How many rating points of fit one booked lesson is worth when comparing coaches
+    private static final int POINTS_PER_LESSON = 25;
+
+    // Concurrent so rating updates can reach a coach without the scheduler's lock
+    private final Map<String, Coach> coaches = new ConcurrentHashMap<>();
+    private final Map<String, TreeMap<Integer, Integer>> bookingsByStudent = new HashMap<>();
+    private final Map<String, List<int[]>> configuredHours;
+    private final List<Assignment> assignments = new ArrayList<>();
+    private final List<LessonRequest> waiting = new ArrayList<>();
+    private final ToIntFunction<String> ratings;
+    private final RecordFile bookings;
+    private final GroupCommitWriter writer;
+
+    /**
+     * This class is a booked lesson.
+     */
+    public static final class Assignment {
+        private final LessonRequest request;
+        private final String coach;
+        private final int start;
+
+        Assignment(LessonRequest request, String coach, int start) {
+            this.request = request;
+            this.coach = coach;
+            this.start = start;
+        }
+
+        public LessonRequest getRequest() {
+            return request;
+        }
+
+        public String getCoach() {
+            return coach;
+        }
+
+        /**
+         * Returns when the lesson starts, in minutes from Monday 00:00.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return start + LESSON_MINUTES;
+        }
+
+        /**
+         * Returns the slot as text, e.g. "Tue 17:00-18:00".
+         */
+        public String getSlot() {
+            return formatTime(start) + "-" + formatTime(getEnd()).substring(4);
+        }
+    }
+
+    /**
+     * This class holds one coach's free time and booked lesson count.
+     */
+    private static final class Coach {
+        final String name;
+        final TreeMap<Integer, Integer> free = new TreeMap<>();
+        volatile int rating;
+        int lessons;
+
+        Coach(String name, int rating) {
+            this.name = name;
+            this.rating = rating;
+        }
+    }
+
+    private LessonScheduler(Map<String, List<int[]>> configuredHours, ToIntFunction<String> ratings,
+                            RecordFile bookings, GroupCommitWriter writer) {
+        this.configuredHours = configuredHours;
+        this.ratings = ratings;
+        this.bookings = bookings;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the scheduler, restores the bookings already made and books
+     * every request in the logs that has none. A booking whose slot the
+     * coach's hours no longer include, or whose request is no longer in the
+     * logs, is dropped and its slot freed; the booking log is then rewritten
+     * without it.
+     * @param availabilityFile The coach hours, e.g. "coach_availability.txt";
+     *                         it need not exist
+     * @param bookings The booking log, e.g. "lesson_bookings.txt"
+     * @param lessons The lesson log
+     * @param coaching The coaching log
+     * @param ratings Looks up a player's current rating
+     * @param writer The writer that commits new bookings
+     * @return The scheduler
+     * @throws IOException if a file cannot be read, or the booking log
+     *         cannot be rewritten
+     */
+    public static LessonScheduler open(String availabilityFile, RecordFile bookings, RecordFile lessons,
+                                       RecordFile coaching, ToIntFunction<String> ratings,
+                                       GroupCommitWriter writer) throws IOException {
+        LessonScheduler scheduler = new LessonScheduler(readHours(Paths.get(availabilityFile)), ratings, bookings, writer);
+        for (String coach : scheduler.configuredHours.keySet()) {
+            scheduler.coachNamed(coach, ratings.applyAsInt(coach));
+        }
+        // Coaches come only from the hours file and the coaching log, never from a lesson request
+        List<LessonRequest> requests = new ArrayList<>();
+        lessons.forEach(line -> {
+            LessonRecord lesson = RecordSchema.LESSONS.decode(line);
+            LessonRequest request = lesson == null ? null : LessonRequest.fromLesson(lesson);
+            if (request != null) {
+                requests.add(request);
+            }
+        });
+        coaching.forEach(line -> {
+            CoachingRecord record = RecordSchema.COACHING.decode(line);
+            if (record != null && !record.getName().isEmpty()) {
+                scheduler.coachNamed(record.getName(), ratings.applyAsInt(record.getName()));
+                LessonRequest request = LessonRequest.fromCoaching(record);
+                if (request != null) {
+                    requests.add(request);
+                }
+            }
+        });
+        // Restored bookings by request, a list so a repeated request keeps each of its bookings
+        Map<String, List<Assignment>> restored = new HashMap<>();
+        String[] fields = new String[5];
+        boolean[] dropped = new boolean[1];
+        bookings.forEach(line -> {
+            Assignment assignment = null;
+            if (RecordSchema.decodeFields(line, fields) == fields.length) {
+                LessonRequest request = new LessonRequest(fields[0], fields[1], fields[2]);
+                try {
+                    assignment = scheduler.restore(request, fields[3], Integer.parseInt(fields[4]));
+                } catch (NumberFormatException ex) {
+                    // Skip a damaged booking; its request is booked again below
+                }
+            }
+            if (assignment != null) {
+                restored.computeIfAbsent(key(assignment.getRequest()), request -> new ArrayList<>()).add(assignment);
+            } else {
+                dropped[0] = true;
+            }
+        });
+        List<LessonRequest> unbooked = new ArrayList<>();
+        for (LessonRequest request : requests) {
+            List<Assignment> booked = restored.get(key(request));
+            if (booked == null || booked.isEmpty()) {
+                unbooked.add(request);
+            } else {
+                booked.remove(booked.size() - 1);
+            }
+        }
+        // Free the slots of bookings whose request has gone, e.g. replaced by a later
+        // one in compaction, before the requests without a booking are placed
+        for (List<Assignment> gone : restored.values()) {
+            for (Assignment assignment : gone) {
+                scheduler.release(assignment);
+                dropped[0] = true;
+            }
+        }
+        List<Assignment> placed = new ArrayList<>();
+        for (LessonRequest request : unbooked) {
+            Assignment assignment = scheduler.place(request, ratings.applyAsInt(request.getStudent()));
+            if (assignment != null) {
+                placed.add(assignment);
+            }
+        }
+        if (dropped[0]) {
+            rewrite(bookings, scheduler.assignments);
+        } else {
+            for (Assignment assignment : placed) {
+                scheduler.log(assignment);
+            }
+        }
+        return scheduler;
+    }
+
+    private static String key(LessonRequest request) {
+        return RecordSchema.encodeFields(new String[] {request.getId(), request.getStudent(), request.getCoach()});
+    }
+
+    private static String line(Assignment assignment) {
+        LessonRequest request = assignment.getRequest();
+        return RecordSchema.encodeFields(new String[] {request.getId(), request.getStudent(), request.getCoach(),
+                assignment.getCoach(), Integer.toString(assignment.getStart())});
+    }
+
+    /**
+     * Writes the booking log afresh with only the given bookings and swaps
+     * it in, as {@link LogCompactor} does for the record logs.
+     */
+    private static void rewrite(RecordFile bookings, List<Assignment> kept) throws IOException {
+        Path path = bookings.getPath();
+        RecordFile rewritten = RecordFile.create(path.resolveSibling(path.getFileName() + ".compacting"));
+        boolean swapped = false;
+        try {
+            for (Assignment assignment : kept) {
+                rewritten.append(line(assignment));
+            }
+            bookings.replaceWith(rewritten, bookings.count());
+            swapped = true;
+        } finally {
+            if (!swapped) {
+                rewritten.close();
+                Files.deleteIfExists(rewritten.getPath());
+                Files.deleteIfExists(RecordFile.indexPath(rewritten.getPath()));
+            }
+        }
+    }
+
+    /**
+     * Reads coach hours as "coach,day,start,end" lines; blank lines, lines
+     * starting with '#' and malformed lines are ignored.
+     */
+    private static Map<String, List<int[]>> readHours(Path file) throws IOException {
+        Map<String, List<int[]>> hours = new HashMap<>();
+        if (!Files.exists(file)) {
+            return hours;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String[] fields = new String[4];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Same escaping as the record logs, so a coach's name may contain a comma
+                if (RecordSchema.decodeFields(line, fields) != fields.length) {
+                    continue;
+                }
+                int day = Arrays.asList(DAYS).indexOf(fields[1].trim());
+                int start = parseTime(fields[2].trim());
+                int end = parseTime(fields[3].trim());
+                if (day >= 0 && start >= 0 && end > start) {
+                    hours.computeIfAbsent(fields[0].trim(), coach -> new ArrayList<>())
+                            .add(new int[] {day * MINUTES_PER_DAY + start, day * MINUTES_PER_DAY + end});
+                }
+            }
+        }
+        return hours;
+    }
+
+    /**
+     * Parses a time such as "17:30" into minutes after midnight.
+     * @return The minutes, or -1 if the time is malformed
+     */
+    private static int parseTime(String time) {
+        int colon = time.indexOf(':');
+        try {
+            int hours = Integer.parseInt(colon < 0 ? time : time.substring(0, colon));
+            int minutes = colon < 0 ? 0 : Integer.parseInt(time.substring(colon + 1));
+            return hours >= 0 && hours <= 24 && minutes >= 0 && minutes < 60 ? hours * 60 + minutes : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String formatTime(int minute) {
+        int inDay = minute % MINUTES_PER_DAY;
+        return DAYS[minute / MINUTES_PER_DAY % DAYS.length] + String.format(" %02d:%02d", inDay / 60, inDay % 60);
+    }
+
+    /**
+     * Returns a coach, adding them with their configured or default hours
+     * the first time they are named.
+     */
+    private synchronized Coach coachNamed(String name, int rating) {
+        Coach coach = coaches.get(name);
+        if (coach == null) {
+            coach = new Coach(name, rating);
+            List<int[]> hours = configuredHours.get(name);
+            if (hours != null) {
+                for (int[] interval : hours) {
+                    addFree(coach.free, interval[0], interval[1]);
+                }
+            } else {
+                for (int[] interval : DEFAULT_HOURS) {
+                    int day = interval[0] * MINUTES_PER_DAY;
+                    addFree(coach.free, day + interval[1] * 60, day + interval[2] * 60);
+                }
+            }
+            coaches.put(name, coach);
+        }
+        return coach;
+    }
+
+    /**
+     * Adds a coach who has offered coaching, with their configured or
+     * default hours, and books the waiting requests again now that there
+     * may be room for them.
+     * @param name The coach
+     */
+    public void addCoach(String name) {
+        int rating = ratings.applyAsInt(name);
+        synchronized (this) {
+            if (coaches.containsKey(name)) {
+                return;
+            }
+            coachNamed(name, rating);
+        }
+        retryWaiting();
+    }
+
+    /**
+     * Books the waiting requests again, in the order they arrived; those
+     * that still cannot be booked wait again.
+     */
+    private void retryWaiting() {
+        List<LessonRequest> retry;
+        synchronized (this) {
+            retry = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        for (LessonRequest request : retry) {
+            book(request);
+        }
+    }
+
+    /**
+     * Adds an interval to a free-time index, merging it with any interval
+     * it overlaps or touches.
+     */
+    private static void addFree(TreeMap<Integer, Integer> free, int start, int end) {
+        Map.Entry<Integer, Integer> before = free.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+            free.remove(before.getKey());
+        }
+        Map.Entry<Integer, Integer> after = free.ceilingEntry(start);
+        while (after != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            free.remove(after.getKey());
+            after = free.ceilingEntry(start);
+        }
+        free.put(start, end);
+    }
+
+    /**
+     * Books a lesson for a new request.
+     * @param request The request
+     * @return The booked lesson, or null if the coach asked for is not one
+     *         of the club's, or no coach has a free slot that suits the
+     *         student; the request then waits
+     */
+    public Assignment book(LessonRequest request) {
+        // Look the rating up before taking our lock: the rating engine calls
+        // ratingChanged while holding its own
+        return book(request, ratings.applyAsInt(request.getStudent()));
+    }
+
+    private synchronized Assignment book(LessonRequest request, int studentRating) {
+        Assignment assignment = place(request, studentRating);
+        if (assignment != null) {
+            log(assignment);
+        }
+        return assignment;
+    }
+
+    /**
+     * Books a request a slot without logging it.
+     * @return The booked lesson, or null if the request waits
+     */
+    private synchronized Assignment place(LessonRequest request, int studentRating) {
+        String student = request.getStudent();
+        Coach preferred = coaches.get(request.getCoach());
+        if (preferred == null) {
+            // Not a coach yet; the request is booked again once they offer coaching
+            waiting.add(request);
+            return null;
+        }
+        TreeMap<Integer, Integer> booked = bookingsByStudent.computeIfAbsent(student, name -> new TreeMap<>());
+        Coach chosen = null;
+        int start = preferred.name.equals(student) ? -1 : earliestSlot(preferred, booked);
+        if (start >= 0) {
+            chosen = preferred;
+        } else {
+            // Fall back to the best-suited coach who still has room
+            int target = studentRating + TARGET_RATING_GAP;
+            long bestCost = Long.MAX_VALUE;
+            for (Coach coach : coaches.values()) {
+                long cost = Math.abs(coach.rating - target) + (long) coach.lessons * POINTS_PER_LESSON;
+                if (coach == preferred || coach.free.isEmpty() || coach.name.equals(student) || cost >= bestCost) {
+                    continue;
+                }
+                int slot = earliestSlot(coach, booked);
+                if (slot >= 0) {
+                    chosen = coach;
+                    start = slot;
+                    bestCost = cost;
+                }
+            }
+        }
+        if (chosen == null) {
+            waiting.add(request);
+            return null;
+        }
+        return assign(request, chosen, start, booked);
+    }
+
+    // Called under the lock, so the bookings are logged in the order they were made
+    private void log(Assignment assignment) {
+        writer.submit(bookings, line(assignment)).whenComplete((recordNumber, ex) -> {
+            if (ex != null) {
+                // The request is booked again on the next start
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Restores a logged booking, if the coach is one of the club's, is
+     * still free then and the student has no other lesson.
+     * @return The restored booking, or null if it was not restored
+     */
+    private synchronized Assignment restore(LessonRequest request, String coachName, int start) {
+        Coach coach = coaches.get(coachName);
+        if (coach == null) {
+            return null;
+        }
+        TreeMap<Integer, Integer> booked = bookingsByStudent.computeIfAbsent(request.getStudent(), name -> new TreeMap<>());
+        Map.Entry<Integer, Integer> free = coach.free.floorEntry(start);
+        Map.Entry<Integer, Integer> clash = booked.lowerEntry(start + LESSON_MINUTES);
+        if (free == null || free.getValue() < start + LESSON_MINUTES || (clash != null && clash.getValue() > start)) {
+            return null;
+        }
+        return assign(request, coach, start, booked);
+    }
+
+    private Assignment assign(LessonRequest request, Coach coach, int start, TreeMap<Integer, Integer> booked) {
+        takeFree(coach.free, start, start + LESSON_MINUTES);
+        booked.put(start, start + LESSON_MINUTES);
+        coach.lessons++;
+        Assignment assignment = new Assignment(request, coach.name, start);
+        assignments.add(assignment);
+        return assignment;
+    }
+
+    /**
+     * Cancels a booking, giving the slot back to the coach and the student.
+     */
+    private synchronized void release(Assignment assignment) {
+        Coach coach = coaches.get(assignment.getCoach());
+        addFree(coach.free, assignment.getStart(), assignment.getEnd());
+        coach.lessons--;
+        bookingsByStudent.get(assignment.getRequest().getStudent()).remove(assignment.getStart());
+        assignments.remove(assignment);
+    }
+
+    /**
+     * Finds the earliest start in a coach's free time at which the student
+     * has no other lesson.
+     * @return The start, or -1 if there is none
+     */
+    private static int earliestSlot(Coach coach, TreeMap<Integer, Integer> booked) {
+        for (Map.Entry<Integer, Integer> interval : coach.free.entrySet()) {
+            int start = interval.getKey();
+            while (start + LESSON_MINUTES <= interval.getValue()) {
+                // The student's last lesson starting before this one would end
+                Map.Entry<Integer, Integer> clash = booked.lowerEntry(start + LESSON_MINUTES);
+                if (clash == null || clash.getValue() <= start) {
+                    return start;
+                }
+                start = clash.getValue();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a booked interval from a free-time index.
+     */
+    private static void takeFree(TreeMap<Integer, Integer> free, int start, int end) {
+        Map.Entry<Integer, Integer> interval = free.floorEntry(start);
+        free.remove(interval.getKey());
+        if (interval.getKey() < start) {
+            free.put(interval.getKey(), start);
+        }
+        if (interval.getValue() > end) {
+            free.put(end, interval.getValue());
+        }
+    }
+
+    /**
+     * Keeps coach ratings current for pairing.
+     */
+    @Override
+    public void ratingChanged(String username, int rating) {
+        Coach coach = coaches.get(username);
+        if (coach != null) {
+            coach.rating = rating;
+        }
+    }
+
+    /**
+     * Returns the lessons a user takes or gives, in weekly order.
+     * @param username The student or coach
+     * @return The booked lessons
+     */
+    public synchronized List<Assignment> lessonsOf(String username) {
+        List<Assignment> lessons = new ArrayList<>();
+        for (Assignment assignment : assignments) {
+            if (assignment.getCoach().equals(username) || assignment.getRequest().getStudent().equals(username)) {
+                lessons.add(assignment);
+            }
+        }
+        lessons.sort(Comparator.comparingInt(Assignment::getStart));
+        return lessons;
+    }
+
+    /**
+     * Returns the number of lessons booked with a coach.
+     */
+    public synchronized int load(String coach) {
+        Coach found = coaches.get(coach);
+        return found == null ? 0 : found.lessons;
+    }
+
+    /**
+     * Returns the number of lessons booked.
+     */
+    public synchronized int bookedCount() {
+        return assignments.size();
+    }
+
+    /**
+     * Returns the number of requests still waiting for a slot.
+     */
+    public synchronized int waitingCount() {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,298 @@
+package com.mycompany.chessmasterske;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class rewrites a record log into a snapshot that keeps only the
+ * latest record for each key of its {@link RecordSchema}, e.g. the last
+ * registration of each username, and drops rows with an empty field. The
+ * snapshot is written to a new file next to the log while the log stays
+ * open for appends; records appended in the meantime are copied over and
+ * the snapshot then takes the log's place in one rename (see
+ * {@link RecordFile#replaceWith(RecordFile, long)}), so writers wait only
+ * for that last step. The records kept stay in their original order.
+ * <p>
+ * Memory stays flat however large the log is: the keys are spread by hash
+ * over partition files on disk, each small enough to deduplicate in a hash
+ * map on its own, and the only thing kept for the whole log is one bit per
+ * record saying whether it survives. Rows dropped for an empty or malformed
+ * field are kept in the log's ".rejected" file, like
+ * {@link RecordMigration} does.
+ */
+public final class LogCompactor {
+    // Key bytes deduplicated in memory at once
+    public static final long DEFAULT_PARTITION_BYTES = 16L << 20;
+
+    private static final int MAX_PARTITIONS = 1024;
+    private static final int PARTITION_BUFFER = 8192;
+    // Records appended during compaction are copied without the log's lock
+    // until no more than this many are left for the swap
+    private static final int SWAP_TAIL = 1024;
+    private static final Set<Path> COMPACTING = ConcurrentHashMap.newKeySet();
+
+    private final long partitionBytes;
+
+    /**
+     * This class is what one compaction did.
+     */
+    public static final class Result {
+        private final String fileName;
+        private final long records;
+        private final long duplicates;
+        private final long rejected;
+
+        Result(String fileName, long records, long duplicates, long rejected) {
+            this.fileName = fileName;
+            this.records = records;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * Returns the number of records looked at, not counting the header.
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Returns the number of records dropped because a later record had
+         * the same key.
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Returns the number of records dropped for an empty or malformed
+         * field.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Returns whether the log was rewritten; it is left alone when
+         * there is nothing to drop.
+         */
+        public boolean isRewritten() {
+            return duplicates + rejected > 0;
+        }
+
+        @Override
+        public String toString() {
+            return fileName + ": " + records + " records, " + duplicates + " duplicates and " + rejected
+                    + " rejected removed";
+        }
+    }
+
+    /**
+     * Constructor to create a compactor with the default partition size.
+     */
+    public LogCompactor() {
+        this(DEFAULT_PARTITION_BYTES);
+    }
+
+    /**
+     * Constructor to create a compactor.
+     * @param partitionBytes Roughly how many bytes of keys are deduplicated
+     *                       in memory at once
+     */
+    public LogCompactor(long partitionBytes) {
+        this.partitionBytes = partitionBytes;
+    }
+
+    /**
+     * Compacts a log. The log must already be in its schema's format (see
+     * {@link RecordMigration}).
+     * @param fileName The log file, e.g. "users.txt"
+     * @param schema The schema of the log
+     * @return What was dropped
+     * @throws IOException if the log cannot be read or replaced, or does
+     *         not start with the schema's header
+     * @throws IllegalStateException if the log is already being compacted,
+     *         or is shared with other processes
+     */
+    public <T> Result compact(String fileName, RecordSchema<T> schema) throws IOException {
+        RecordFile file = RecordFile.open(fileName);
+        if (file.isShared()) {
+            throw new IllegalStateException(fileName + " is shared with other processes and cannot be compacted");
+        }
+        Path path = file.getPath();
+        if (!COMPACTING.add(path)) {
+            throw new IllegalStateException(fileName + " is already being compacted");
+        }
+        try {
+            return compact(fileName, file, schema);
+        } finally {
+            COMPACTING.remove(path);
+        }
+    }
+
+    private <T> Result compact(String fileName, RecordFile file, RecordSchema<T> schema) throws IOException {
+        // Everything before 'snapshot' is deduplicated; later records are copied as they are
+        int snapshot = (int) file.count();
+        if (snapshot == 0 || !file.read(0).equals(schema.header())) {
+            throw new IOException(fileName + " does not start with " + schema.header());
+        }
+        BitSet keep = new BitSet(snapshot);
+        BitSet rejected = new BitSet(snapshot);
+        findLatest(file, schema, snapshot, keep, rejected);
+        long records = snapshot - 1;
+        long rejectedCount = rejected.cardinality();
+        long duplicates = records - rejectedCount - keep.cardinality();
+        Result result = new Result(fileName, records, duplicates, rejectedCount);
+        if (result.isRewritten()) {
+            rewrite(file, schema, snapshot, keep, rejected);
+        }
+        return result;
+    }
+
+    /**
+     * Marks the latest record of each key in 'keep' and the records with an
+     * empty or malformed field in 'rejected'.
+     */
+    private <T> void findLatest(RecordFile file, RecordSchema<T> schema, int snapshot, BitSet keep, BitSet rejected)
+            throws IOException {
+        int partitions = (int) Math.min(MAX_PARTITIONS, file.byteSize() / partitionBytes + 1);
+        if (partitions == 1) {
+            Map<String, Integer> latest = new HashMap<>();
+            scan(file, schema, snapshot, rejected, (record, key) -> latest.put(key, record));
+            latest.values().forEach(keep::set);
+            return;
+        }
+        Path directory = file.getPath().resolveSibling(file.getPath().getFileName() + ".partitions");
+        Files.createDirectories(directory);
+        DataOutputStream[] outs = new DataOutputStream[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                outs[p] = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(directory.resolve(Integer.toString(p))), PARTITION_BUFFER));
+            }
+            scan(file, schema, snapshot, rejected, (record, key) -> {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                DataOutputStream out = outs[(key.hashCode() & Integer.MAX_VALUE) % partitions];
+                out.writeInt(record);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            });
+            for (DataOutputStream out : outs) {
+                out.close();
+            }
+            Map<String, Integer> latest = new HashMap<>();
+            for (int p = 0; p < partitions; p++) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(directory.resolve(Integer.toString(p))), PARTITION_BUFFER))) {
+                    while (true) {
+                        int record;
+                        try {
+                            record = in.readInt();
+                        } catch (EOFException end) {
+                            break;
+                        }
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        // Records are in file order, so the last put is the latest
+                        latest.put(new String(bytes, StandardCharsets.UTF_8), record);
+                    }
+                }
+                latest.values().forEach(keep::set);
+                latest.clear();
+            }
+        } finally {
+            for (int p = 0; p < partitions; p++) {
+                if (outs[p] != null) {
+                    outs[p].close();
+                }
+                Files.deleteIfExists(directory.resolve(Integer.toString(p)));
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private interface KeyConsumer {
+        void accept(int record, String key) throws IOException;
+    }
+
+    private static <T> void scan(RecordFile file, RecordSchema<T> schema, int snapshot, BitSet rejected,
+                                 KeyConsumer consumer) throws IOException {
+        String[] fields = new String[schema.getFieldCount()];
+        for (int i = 1; i < snapshot; i++) {
+            String line = file.read(i);
+            if (RecordSchema.decodeFields(line, fields) != fields.length || hasEmptyField(fields)) {
+                rejected.set(i);
+            } else {
+                consumer.accept(i, schema.key(line, fields));
+            }
+        }
+    }
+
+    private static boolean hasEmptyField(String[] fields) {
+        for (String field : fields) {
+            if (field.trim().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the kept records to a new file and swaps it in for the log.
+     */
+    private static <T> void rewrite(RecordFile file, RecordSchema<T> schema, int snapshot, BitSet keep,
+                                    BitSet rejected) throws IOException {
+        Path path = file.getPath();
+        Path rejectedPath = path.resolveSibling(path.getFileName() + ".rejected");
+        RecordFile compacted = RecordFile.create(path.resolveSibling(path.getFileName() + ".compacting"));
+        boolean swapped = false;
+        try {
+            compacted.append(schema.header());
+            for (int i = keep.nextSetBit(0); i >= 0; i = keep.nextSetBit(i + 1)) {
+                compacted.append(file.read(i));
+            }
+            long copied = snapshot;
+            while (file.count() - copied > SWAP_TAIL) {
+                compacted.append(file.read(copied++));
+            }
+            // Sync the bulk of the copy now, so the swap only syncs its tail
+            compacted.force();
+            // Keep the rejected rows before they leave the log
+            if (!rejected.isEmpty()) {
+                try (BufferedWriter out = Files.newBufferedWriter(rejectedPath, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (int i = rejected.nextSetBit(0); i >= 0; i = rejected.nextSetBit(i + 1)) {
+                        out.write(file.read(i));
+                        out.write('\n');
+                    }
+                }
+            }
+            file.replaceWith(compacted, copied);
+            swapped = true;
+        } finally {
+            if (!swapped) {
+                compacted.close();
+                Files.deleteIfExists(compacted.getPath());
+                Files.deleteIfExists(RecordFile.indexPath(compacted.getPath()));
+            }
+        }
+    }
+}
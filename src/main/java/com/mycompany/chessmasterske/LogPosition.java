@@ -0,0 +1,75 @@
+package com.mycompany.chessmasterske;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * This class pins a snapshot to the part of a record log it covers: how
+ * many records, how many bytes they take and a checksum of the last of
+ * them. The log still matches if it holds at least that many records and
+ * the last one is unchanged, so only the records after it need replaying;
+ * a log that has since been compacted, migrated or replaced does not.
+ */
+final class LogPosition {
+    static final int BYTES = 2 * Long.BYTES + Integer.BYTES;
+
+    private final long records;
+    private final long bytes;
+    private final int checksum;
+
+    private LogPosition(long records, long bytes, int checksum) {
+        this.records = records;
+        this.bytes = bytes;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Returns the position after the first records of a log.
+     * @param file The log
+     * @param records How many records are covered, at most the log's count
+     * @return The position
+     * @throws IOException if the last covered record cannot be read
+     */
+    static LogPosition of(RecordFile file, long records) throws IOException {
+        if (records == 0) {
+            return new LogPosition(0, 0, 0);
+        }
+        return new LogPosition(records, file.endOf(records - 1), checksum(file.read(records - 1)));
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns whether a log still starts with the records this position
+     * covers.
+     * @param file The log
+     */
+    boolean matches(RecordFile file) throws IOException {
+        if (records == 0) {
+            return true;
+        }
+        return file.count() >= records && file.endOf(records - 1) == bytes
+                && checksum(file.read(records - 1)) == checksum;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(records);
+        out.writeLong(bytes);
+        out.writeInt(checksum);
+    }
+
+    static LogPosition read(DataInput in) throws IOException {
+        return new LogPosition(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    private static int checksum(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+}
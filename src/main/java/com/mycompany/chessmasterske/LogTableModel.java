@@ -0,0 +1,173 @@
+package com.mycompany.chessmasterske;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * This class shows the records of a log in a JTable, newest first, without
+ * reading the whole log. Rows are read in pages of {@link #PAGE_SIZE}
+ * records, by record number through the log's offset index, and only when
+ * the table asks for a row on screen: until its page has been read on the
+ * executor a row shows as loading. At most {@link #MAX_PAGES} pages are
+ * kept, the least recently shown dropped first, so scrolling through a
+ * log of any length takes the same memory.
+ * <p>
+ * New records show up on {@link #refresh()}. A log that has been compacted
+ * since its pages were read is read again. Apart from the constructor, the
+ * methods must be called on the Event Dispatch Thread, as Swing does.
+ */
+public final class LogTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    public static final int PAGE_SIZE = 256;
+    public static final int MAX_PAGES = 64;
+    public static final String LOADING = "...";
+
+    private final RecordFile file;
+    private final String[] columnNames;
+    private final Executor executor;
+    // Pages by number, in the order they were last shown
+    private final Map<Long, String[][]> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String[][]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Long> loading = new HashSet<>();
+    private long generation;
+    // The first record shown, past the header, and the number shown
+    private long first;
+    private int rows;
+
+    /**
+     * Constructor to create the model over a log.
+     * @param file The log
+     * @param schema The log's schema, whose fields become the columns
+     * @param executor The executor that reads the pages
+     * @throws IOException if the first record cannot be read
+     */
+    public LogTableModel(RecordFile file, RecordSchema<?> schema, Executor executor) throws IOException {
+        this.file = file;
+        this.columnNames = schema.getFieldNames();
+        this.executor = executor;
+        recount();
+    }
+
+    // Finds the records to show, skipping the header line
+    private void recount() throws IOException {
+        generation = file.generation();
+        long count = file.count();
+        first = count > 0 && file.read(0).startsWith("#") ? 1 : 0;
+        rows = (int) Math.min(Integer.MAX_VALUE, Math.max(0, count - first));
+    }
+
+    /**
+     * Shows the records appended since the last call, and reads the log
+     * again if it has been compacted since.
+     */
+    public void refresh() {
+        if (file.generation() != generation) {
+            pages.clear();
+            try {
+                recount();
+            } catch (IOException | IndexOutOfBoundsException ex) {
+                // Compacted again meanwhile; the next refresh tries again
+                return;
+            }
+            fireTableDataChanged();
+            return;
+        }
+        int before = rows;
+        rows = (int) Math.min(Integer.MAX_VALUE, Math.max(0, file.count() - first));
+        if (rows > before) {
+            // Newest first, so the new records are the top rows
+            fireTableRowsInserted(0, rows - before - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        long record = first + rows - 1 - row;
+        long page = record / PAGE_SIZE;
+        String[][] records = pages.get(page);
+        int offset = (int) (record - page * PAGE_SIZE);
+        if (records == null || offset >= records.length) {
+            load(page);
+            return LOADING;
+        }
+        String[] fields = records[offset];
+        return column < fields.length ? fields[column] : "";
+    }
+
+    // Reads a page on the executor, unless it is already being read
+    private void load(long page) {
+        if (!loading.add(page)) {
+            return;
+        }
+        long readGeneration = generation;
+        long from = Math.max(first, page * PAGE_SIZE);
+        long to = Math.min(first + rows, (page + 1) * PAGE_SIZE);
+        executor.execute(() -> {
+            String[][] records = null;
+            try {
+                records = read(page, from, to);
+            } catch (IOException | IndexOutOfBoundsException ex) {
+                // Compacted while reading; refresh() starts over
+            } catch (RuntimeException ex) {
+                // Still clear the page below, or it would show as loading for good
+                ex.printStackTrace();
+            }
+            String[][] read = records;
+            SwingUtilities.invokeLater(() -> {
+                loading.remove(page);
+                if (read == null || readGeneration != generation) {
+                    return;
+                }
+                pages.put(page, read);
+                int top = Math.max(0, (int) (first + rows - to));
+                int bottom = Math.min(rows - 1, (int) (first + rows - 1 - from));
+                if (top <= bottom) {
+                    fireTableRowsUpdated(top, bottom);
+                }
+            });
+        });
+    }
+
+    // Reads records [from, to) of a page; the page's records before from stay empty
+    private String[][] read(long page, long from, long to) throws IOException {
+        String[][] records = new String[(int) (to - page * PAGE_SIZE)][];
+        String[] fields = new String[columnNames.length];
+        for (long record = page * PAGE_SIZE; record < to; record++) {
+            if (record < from) {
+                records[(int) (record - page * PAGE_SIZE)] = new String[0];
+                continue;
+            }
+            String line = file.read(record);
+            int count = RecordSchema.decodeFields(line, fields);
+            // A malformed line is shown as it is, in the first column
+            records[(int) (record - page * PAGE_SIZE)] = count == fields.length ? fields.clone() : new String[] {line};
+        }
+        return records;
+    }
+}
@@ -0,0 +1,254 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class gives byte-level access to a file through fixed-size memory
+ * mapped segments. Segments are mapped on first use, so writing past the end
+ * of the file grows it one segment at a time; the caller is responsible for
+ * remembering how much of the mapped space actually holds data and for
+ * truncating the file back to that size when it is closed.
+ * <p>
+ * Closing or truncating the file unmaps its segments at once where the JVM
+ * allows it, rather than when they are garbage collected, because Windows
+ * refuses to truncate, replace or delete a file that is still mapped.
+ */
+class MappedFile {
+    static final int SEGMENT_SIZE = 1 << 20;
+
+    // sun.misc.Unsafe and its invokeCleaner method, or null where unavailable
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // The mappings are then released by the garbage collector
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Opens (creating if needed) a file for mapped access.
+     * @param path The file to open
+     * @throws IOException if the file cannot be opened
+     */
+    MappedFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the current size of the file on disk, including any mapped
+     * space that has not been written yet.
+     */
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    private synchronized MappedByteBuffer segment(int index) throws IOException {
+        while (segments.size() <= index) {
+            segments.add(null);
+        }
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * SEGMENT_SIZE, SEGMENT_SIZE);
+            segments.set(index, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Copies bytes into the file at the given position.
+     * @param position The file offset to write at
+     * @param src The bytes to write
+     * @param offset The first byte of src to write
+     * @param length The number of bytes to write
+     */
+    void put(long position, byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            int index = (int) (position / SEGMENT_SIZE);
+            int within = (int) (position % SEGMENT_SIZE);
+            int chunk = Math.min(length, SEGMENT_SIZE - within);
+            ByteBuffer view = segment(index).duplicate();
+            view.position(within);
+            view.put(src, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Copies bytes out of the file at the given position.
+     * @param position The file offset to read from
+     * @param dst The array to fill
+     * @param offset The first byte of dst to fill
+     * @param length The number of bytes to read
+     */
+    void get(long position, byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            int index = (int) (position / SEGMENT_SIZE);
+            int within = (int) (position % SEGMENT_SIZE);
+            int chunk = Math.min(length, SEGMENT_SIZE - within);
+            ByteBuffer view = segment(index).duplicate();
+            view.position(within);
+            view.get(dst, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    byte get(long position) throws IOException {
+        return segment((int) (position / SEGMENT_SIZE)).get((int) (position % SEGMENT_SIZE));
+    }
+
+    void putLong(long position, long value) throws IOException {
+        int within = (int) (position % SEGMENT_SIZE);
+        if (within + Long.BYTES <= SEGMENT_SIZE) {
+            segment((int) (position / SEGMENT_SIZE)).putLong(within, value);
+        } else {
+            byte[] bytes = new byte[Long.BYTES];
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                bytes[i] = (byte) value;
+                value >>>= 8;
+            }
+            put(position, bytes, 0, bytes.length);
+        }
+    }
+
+    long getLong(long position) throws IOException {
+        int within = (int) (position % SEGMENT_SIZE);
+        if (within + Long.BYTES <= SEGMENT_SIZE) {
+            return segment((int) (position / SEGMENT_SIZE)).getLong(within);
+        }
+        byte[] bytes = new byte[Long.BYTES];
+        get(position, bytes, 0, bytes.length);
+        long value = 0;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Flushes every mapped segment to the storage device.
+     */
+    synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * Forces the segments that cover the given byte range.
+     * @param from The first dirty byte
+     * @param to The byte after the last dirty byte
+     */
+    synchronized void force(long from, long to) {
+        if (to <= from) {
+            return;
+        }
+        int first = (int) (from / SEGMENT_SIZE);
+        int last = (int) ((to - 1) / SEGMENT_SIZE);
+        for (int i = first; i <= last && i < segments.size(); i++) {
+            MappedByteBuffer segment = segments.get(i);
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * Flushes the mappings, cuts the file back to its logical size and
+     * closes it. The mappings must not be touched afterwards.
+     * @param logicalSize The number of bytes that hold real data
+     */
+    synchronized void close(long logicalSize) throws IOException {
+        force();
+        unmap();
+        try {
+            channel.truncate(logicalSize);
+        } catch (IOException ex) {
+            // Some platforms refuse to truncate a mapped file; the zero
+            // padding is skipped again on the next open
+        }
+        channel.close();
+    }
+
+    /**
+     * Flushes the mappings and closes the file, leaving its size alone, for
+     * a file that other processes may still have mapped.
+     */
+    synchronized void close() throws IOException {
+        force();
+        unmap();
+        channel.close();
+    }
+
+    /**
+     * Drops all mappings and truncates the file. Only safe before any
+     * segment has been handed out to readers.
+     * @param size The new size of the file
+     * @return Whether the file was truncated; if the platform refused
+     *         because a mapping is still alive, the file keeps its size
+     */
+    synchronized boolean truncate(long size) {
+        unmap();
+        try {
+            channel.truncate(size);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Releases every mapped segment. A segment must not be used afterwards:
+     * the next access maps it again.
+     */
+    private void unmap() {
+        if (INVOKE_CLEANER != null) {
+            for (MappedByteBuffer segment : segments) {
+                if (segment != null) {
+                    try {
+                        INVOKE_CLEANER.invoke(UNSAFE, segment);
+                    } catch (ReflectiveOperationException | RuntimeException ex) {
+                        // Left to the garbage collector
+                    }
+                }
+            }
+        }
+        segments.clear();
+    }
+}
@@ -0,0 +1,267 @@
+package com.mycompany.chessmasterske;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class pairs players who are waiting for a game with the opponent
+ * whose Elo rating is closest to theirs. Waiting players are kept in one
+ * lock-free queue per 50-point rating band, so joins in different bands
+ * never contend. A new player is matched straight away if someone suitable
+ * is already waiting; otherwise a background sweep retries every waiting
+ * player, widening the acceptable rating gap the longer they wait. The time
+ * from joining to being matched is recorded in a latency histogram.
+ */
+public class Matchmaker implements AutoCloseable {
+    public static final int BAND_WIDTH = 50;
+    public static final int MAX_RATING = 3500;
+    public static final int INITIAL_BRACKET = 50;
+    public static final int BRACKET_GROWTH_PER_SECOND = 25;
+    public static final int MAX_BRACKET = 400;
+
+    private static final long SWEEP_MILLIS = 50;
+
+    private final ConcurrentLinkedQueue<Ticket>[] bands;
+    private final Map<String, Ticket> waiting = new ConcurrentHashMap<>();
+    private final LatencyHistogram timeToMatch = new LatencyHistogram();
+    private final Thread sweeper;
+    private volatile boolean closed;
+
+    /**
+     * This class represents a pairing made by the matchmaker.
+     */
+    public static final class Match {
+        private final String whitePlayer;
+        private final String blackPlayer;
+        private final int whiteRating;
+        private final int blackRating;
+
+        Match(String whitePlayer, int whiteRating, String blackPlayer, int blackRating) {
+            this.whitePlayer = whitePlayer;
+            this.whiteRating = whiteRating;
+            this.blackPlayer = blackPlayer;
+            this.blackRating = blackRating;
+        }
+
+        public String getWhitePlayer() {
+            return whitePlayer;
+        }
+
+        public String getBlackPlayer() {
+            return blackPlayer;
+        }
+
+        public int getWhiteRating() {
+            return whiteRating;
+        }
+
+        public int getBlackRating() {
+            return blackRating;
+        }
+    }
+
+    /**
+     * This class represents one waiting player. Whoever flips the claimed
+     * flag first owns the ticket, which is what keeps two threads from
+     * pairing the same player.
+     */
+    private static final class Ticket {
+        final String username;
+        final int rating;
+        final long joinedNanos = System.nanoTime();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<Match> future = new CompletableFuture<>();
+
+        Ticket(String username, int rating) {
+            this.username = username;
+            this.rating = rating;
+        }
+    }
+
+    /**
+     * Constructor to create a matchmaker and start its background sweep.
+     */
+    @SuppressWarnings("unchecked")
+    public Matchmaker() {
+        // There is no ConcurrentLinkedQueue<Ticket>[] constructor; the cast is safe as each band is filled in below
+        bands = (ConcurrentLinkedQueue<Ticket>[]) new ConcurrentLinkedQueue<?>[MAX_RATING / BAND_WIDTH + 1];
+        for (int i = 0; i < bands.length; i++) {
+            bands[i] = new ConcurrentLinkedQueue<>();
+        }
+        sweeper = new Thread(this::sweep, "matchmaker");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * Puts a player in the queue.
+     * @param username The player
+     * @param rating The player's current rating
+     * @return A future that completes when the player has been paired, or is
+     *         cancelled if the player leaves the queue
+     */
+    public CompletableFuture<Match> join(String username, int rating) {
+        Ticket ticket = new Ticket(username, rating);
+        Ticket existing = waiting.putIfAbsent(username, ticket);
+        if (existing != null) {
+            // Already queued, e.g. from a second window
+            return existing.future;
+        }
+        // Try to pair with someone already waiting before queueing up
+        Ticket opponent = findOpponent(ticket, INITIAL_BRACKET);
+        if (opponent != null && tryPair(ticket, opponent)) {
+            return ticket.future;
+        }
+        bands[band(rating)].add(ticket);
+        return ticket.future;
+    }
+
+    /**
+     * Takes a player out of the queue if they have not been paired yet.
+     * @param username The player
+     * @return true if the player was waiting and has been removed
+     */
+    public boolean leave(String username) {
+        Ticket ticket = waiting.get(username);
+        if (ticket == null || !ticket.claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        waiting.remove(username, ticket);
+        bands[band(ticket.rating)].remove(ticket);
+        ticket.future.cancel(false);
+        return true;
+    }
+
+    /**
+     * Returns the number of players waiting to be paired.
+     */
+    public int waitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns the histogram of time from joining to being paired.
+     */
+    public LatencyHistogram getTimeToMatch() {
+        return timeToMatch;
+    }
+
+    private static int band(int rating) {
+        return Math.max(0, Math.min(MAX_RATING, rating)) / BAND_WIDTH;
+    }
+
+    /**
+     * Finds the unclaimed waiting player with the closest rating within the
+     * bracket, searching outwards from the player's own band.
+     */
+    private Ticket findOpponent(Ticket ticket, int bracket) {
+        int home = band(ticket.rating);
+        int reach = (bracket + BAND_WIDTH - 1) / BAND_WIDTH;
+        Ticket best = null;
+        int bestGap = Integer.MAX_VALUE;
+        for (int distance = 0; distance <= reach; distance++) {
+            // Anything further out is at least this far away in rating
+            if (best != null && (distance - 1) * BAND_WIDTH > bestGap) {
+                break;
+            }
+            for (int side = -1; side <= 1; side += 2) {
+                int index = home + side * distance;
+                if (index < 0 || index >= bands.length || (distance == 0 && side > 0)) {
+                    continue;
+                }
+                Iterator<Ticket> it = bands[index].iterator();
+                while (it.hasNext()) {
+                    Ticket other = it.next();
+                    if (other.claimed.get()) {
+                        // Drop it from the band once it has been paired or has left
+                        if (waiting.get(other.username) != other) {
+                            it.remove();
+                        }
+                        continue;
+                    }
+                    int gap = Math.abs(other.rating - ticket.rating);
+                    if (other != ticket && gap <= bracket && gap < bestGap) {
+                        best = other;
+                        bestGap = gap;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void pair(Ticket first, Ticket second) {
+        waiting.remove(first.username, first);
+        waiting.remove(second.username, second);
+        Match match = ThreadLocalRandom.current().nextBoolean()
+                ? new Match(first.username, first.rating, second.username, second.rating)
+                : new Match(second.username, second.rating, first.username, first.rating);
+        long now = System.nanoTime();
+        timeToMatch.record(now - first.joinedNanos);
+        timeToMatch.record(now - second.joinedNanos);
+        first.future.complete(match);
+        second.future.complete(match);
+    }
+
+    /**
+     * Periodically retries every waiting player with a bracket that has
+     * widened according to how long they have waited.
+     */
+    private void sweep() {
+        while (!closed) {
+            try {
+                Thread.sleep(SWEEP_MILLIS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Ticket ticket : waiting.values()) {
+                if (ticket.claimed.get()) {
+                    continue;
+                }
+                long waitedMillis = TimeUnit.NANOSECONDS.toMillis(now - ticket.joinedNanos);
+                int bracket = (int) Math.min(MAX_BRACKET, INITIAL_BRACKET + waitedMillis * BRACKET_GROWTH_PER_SECOND / 1000);
+                Ticket opponent = findOpponent(ticket, bracket);
+                if (opponent == null) {
+                    continue;
+                }
+                tryPair(ticket, opponent);
+            }
+        }
+    }
+
+    /**
+     * Claims both tickets and pairs them. Our own ticket is claimed first so
+     * that the sweep and a joining player can never both pair it.
+     * @return true if the pair was made
+     */
+    private boolean tryPair(Ticket ticket, Ticket opponent) {
+        if (!ticket.claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        if (!opponent.claimed.compareAndSet(false, true)) {
+            ticket.claimed.set(false);
+            return false;
+        }
+        pair(ticket, opponent);
+        return true;
+    }
+
+    /**
+     * Stops the background sweep and cancels every waiting player.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        sweeper.interrupt();
+        for (String username : waiting.keySet()) {
+            leave(username);
+        }
+    }
+}
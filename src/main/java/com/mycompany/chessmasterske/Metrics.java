@@ -0,0 +1,309 @@
+package com.mycompany.chessmasterske;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * This class collects metrics for every user-facing operation: how often it
+ * ran, how long it took, as a {@link LatencyHistogram}, and how often it
+ * failed, by exception type. It also keeps plain counters for outcomes that
+ * are not failures, such as a rejected password. Recording is a handful of
+ * striped or atomic increments and never locks, so metrics stay on in
+ * production.
+ * <p>
+ * Each operation and counter is registered with the platform MBean server
+ * under "com.mycompany.chessmasterske:type=Operation,name=..." (or
+ * type=Counter), so it can be watched from JConsole, and {@link #dump()}
+ * renders everything as plain text in the Prometheus exposition format.
+ */
+public class Metrics {
+    public static final String JMX_DOMAIN = "com.mycompany.chessmasterske";
+
+    private static final Metrics SHARED = new Metrics(true);
+
+    private final boolean registerWithJmx;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * This interface is the JMX view of one operation.
+     */
+    public interface OperationMXBean {
+        long getCount();
+
+        long getErrors();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP99Millis();
+
+        double getP999Millis();
+
+        double getMaxMillis();
+
+        /**
+         * Returns the number of failures by exception type.
+         */
+        Map<String, Long> getErrorsByType();
+
+        /**
+         * Returns the message of the most recent failure, or null.
+         */
+        String getLastError();
+    }
+
+    /**
+     * This interface is the JMX view of one counter.
+     */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /**
+     * This class holds the metrics of one operation.
+     */
+    public static final class Operation implements OperationMXBean {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, LongAdder> errorsByType = new ConcurrentHashMap<>();
+        private volatile String lastError;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Records one call.
+         * @param nanos How long the call took
+         * @param failure Why the call failed, or null if it succeeded
+         */
+        public void record(long nanos, Throwable failure) {
+            latency.record(nanos);
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure;
+                errors.increment();
+                errorsByType.computeIfAbsent(cause.getClass().getSimpleName(), type -> new LongAdder()).increment();
+                lastError = cause.toString();
+            }
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public long getCount() {
+            return latency.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return millis(latency.mean());
+        }
+
+        @Override
+        public double getP50Millis() {
+            return millis(latency.percentile(50));
+        }
+
+        @Override
+        public double getP99Millis() {
+            return millis(latency.percentile(99));
+        }
+
+        @Override
+        public double getP999Millis() {
+            return millis(latency.percentile(99.9));
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return millis(latency.max());
+        }
+
+        @Override
+        public Map<String, Long> getErrorsByType() {
+            Map<String, Long> byType = new TreeMap<>();
+            errorsByType.forEach((type, count) -> byType.put(type, count.sum()));
+            return byType;
+        }
+
+        @Override
+        public String getLastError() {
+            return lastError;
+        }
+    }
+
+    /**
+     * This class is a count of events.
+     */
+    public static final class Counter implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long events) {
+            count.add(events);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Constructor to create an empty set of metrics.
+     * @param registerWithJmx Whether operations and counters are registered
+     *                        with the platform MBean server
+     */
+    public Metrics(boolean registerWithJmx) {
+        this.registerWithJmx = registerWithJmx;
+    }
+
+    /**
+     * Returns the metrics shared by the whole process, which are the ones
+     * registered with JMX.
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns an operation's metrics, creating them on first use.
+     * @param name The operation, e.g. "login"
+     * @return The operation's metrics
+     */
+    public Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation != null) {
+            return operation;
+        }
+        return operations.computeIfAbsent(name, key -> register("Operation", key, new Operation(key)));
+    }
+
+    /**
+     * Returns a counter, creating it on first use.
+     * @param name The counter, e.g. "login.invalid"
+     * @return The counter
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter()));
+    }
+
+    private <T> T register(String type, String name, T bean) {
+        if (registerWithJmx) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(bean, objectName);
+                }
+            } catch (JMException ex) {
+                // Metrics still work without JMX
+                ex.printStackTrace();
+            }
+        }
+        return bean;
+    }
+
+    /**
+     * Runs an asynchronous operation and records how long its future took
+     * to complete and whether it failed.
+     * @param name The operation, e.g. "login"
+     * @param call Starts the operation
+     * @return The operation's future
+     */
+    public <T> CompletableFuture<T> track(String name, Supplier<CompletableFuture<T>> call) {
+        Operation operation = operation(name);
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            operation.record(System.nanoTime() - start, ex);
+            throw ex;
+        }
+        future.whenComplete((result, ex) -> operation.record(System.nanoTime() - start, ex));
+        return future;
+    }
+
+    /**
+     * Renders every metric as plain text in the Prometheus exposition
+     * format, sorted by name.
+     * @return The metrics text
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        Map<String, Operation> sortedOperations = new TreeMap<>(operations);
+        text.append("# TYPE chessmasters_operation_seconds summary\n");
+        for (Operation operation : sortedOperations.values()) {
+            String label = "operation=\"" + escape(operation.getName()) + "\"";
+            LatencyHistogram latency = operation.getLatency();
+            for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+                text.append("chessmasters_operation_seconds{").append(label).append(",quantile=\"").append(quantile)
+                        .append("\"} ").append(seconds(latency.percentile(quantile * 100))).append('\n');
+            }
+            text.append("chessmasters_operation_seconds_sum{").append(label).append("} ")
+                    .append(seconds(latency.sum())).append('\n');
+            text.append("chessmasters_operation_seconds_count{").append(label).append("} ")
+                    .append(latency.count()).append('\n');
+        }
+        text.append("# TYPE chessmasters_operation_errors_total counter\n");
+        for (Operation operation : sortedOperations.values()) {
+            text.append("chessmasters_operation_errors_total{operation=\"").append(escape(operation.getName()))
+                    .append("\"} ").append(operation.getErrors()).append('\n');
+        }
+        text.append("# TYPE chessmasters_operation_errors_by_type_total counter\n");
+        for (Operation operation : sortedOperations.values()) {
+            String label = "operation=\"" + escape(operation.getName()) + "\"";
+            operation.getErrorsByType().forEach((type, count) -> text.append("chessmasters_operation_errors_by_type_total{")
+                    .append(label).append(",type=\"").append(escape(type)).append("\"} ").append(count).append('\n'));
+        }
+        text.append("# TYPE chessmasters_events_total counter\n");
+        new TreeMap<>(counters).forEach((name, counter) -> text.append("chessmasters_events_total{name=\"")
+                .append(escape(name)).append("\"} ").append(counter.getCount()).append('\n'));
+        return text.toString();
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class packs a chess move into 16 bits: the from square in bits 0-5,
+ * the to square in bits 6-11 and the promotion piece in bits 12-14
+ * (0 none, 1 knight, 2 bishop, 3 rook, 4 queen). Squares count from a1 = 0
+ * to h8 = 63, file first.
+ */
+public final class MoveCodec {
+    private static final String PROMOTIONS = " nbrq";
+
+    private MoveCodec() {
+    }
+
+    /**
+     * Packs a move.
+     * @param from The from square, 0-63
+     * @param to The to square, 0-63
+     * @param promotion The promotion piece, 0 for none
+     * @return The packed move
+     */
+    public static short encode(int from, int to, int promotion) {
+        return (short) (from | (to << 6) | (promotion << 12));
+    }
+
+    public static int from(short move) {
+        return move & 0x3F;
+    }
+
+    public static int to(short move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int promotion(short move) {
+        return (move >>> 12) & 0x7;
+    }
+
+    /**
+     * Parses a move in UCI notation, e.g. "e2e4" or "e7e8q".
+     * @param uci The move text
+     * @return The packed move
+     * @throws IllegalArgumentException if the text is not a UCI move
+     */
+    public static short fromUci(String uci) {
+        if (uci.length() < 4 || uci.length() > 5) {
+            throw new IllegalArgumentException("Not a UCI move: " + uci);
+        }
+        int promotion = 0;
+        if (uci.length() == 5) {
+            promotion = PROMOTIONS.indexOf(Character.toLowerCase(uci.charAt(4)));
+            if (promotion <= 0) {
+                throw new IllegalArgumentException("Not a UCI move: " + uci);
+            }
+        }
+        return encode(square(uci, 0), square(uci, 2), promotion);
+    }
+
+    /**
+     * Formats a packed move in UCI notation.
+     * @param move The packed move
+     * @return The move text, e.g. "e2e4"
+     */
+    public static String toUci(short move) {
+        String text = squareName(from(move)) + squareName(to(move));
+        int promotion = promotion(move);
+        return promotion == 0 ? text : text + PROMOTIONS.charAt(promotion);
+    }
+
+    /**
+     * Parses a square name such as "e4".
+     * @param text The text containing the square
+     * @param offset Where the square name starts
+     * @return The square, 0-63
+     */
+    public static int square(String text, int offset) {
+        int file = text.charAt(offset) - 'a';
+        int rank = text.charAt(offset + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            throw new IllegalArgumentException("Not a square: " + text.substring(offset, offset + 2));
+        }
+        return rank * 8 + file;
+    }
+
+    /**
+     * Formats a square as its name, e.g. 28 as "e4".
+     */
+    public static String squareName(int square) {
+        return "" + (char) ('a' + square % 8) + (char) ('1' + square / 8);
+    }
+}
@@ -0,0 +1,17 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This exception is thrown when a member submits a record they may not,
+ * e.g. a game they did not play. Its message says why, for the member.
+ */
+public class NotAuthorizedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor to create the exception.
+     * @param message Why the record was refused
+     */
+    public NotAuthorizedException(String message) {
+        super(message);
+    }
+}
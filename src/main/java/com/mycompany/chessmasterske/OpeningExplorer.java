@@ -0,0 +1,234 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class shows, for any position, every move club games continued
+ * with and how those games ended. It is an open-addressing hash table kept
+ * off the Java heap, in direct buffers. Each slot holds a position's Zobrist
+ * key, one move played from it, and win, draw and loss counts. A slot's
+ * probe starts from the position's key alone, so with linear probing all
+ * the moves from one position lie between its home slot and the next empty
+ * slot, and a lookup is one short scan. Games are replayed on several
+ * threads at once. Slots are claimed and counts updated with atomic
+ * operations on the buffers, so the build takes no locks.
+ */
+public class OpeningExplorer {
+    /** Only the first 50 moves of each game are indexed. */
+    public static final int MAX_PLIES = 100;
+
+    private static final int SLOT_SIZE = 24;
+    private static final int KEY_OFFSET = 0;
+    private static final int MOVE_OFFSET = 8;
+    private static final int COUNTS_OFFSET = 12;
+    private static final int SEGMENT_BITS = 16;
+    private static final int EMPTY = 0;
+    private static final int BUSY = -1;
+    private static final int BATCH_SIZE = 512;
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] segments;
+    private final long capacity;
+    private final long mask;
+    private final int segmentMask;
+
+    /**
+     * This class is one move played from a position, with the results of
+     * the games that continued with it.
+     */
+    public static final class Continuation {
+        private final short move;
+        private final int whiteWins;
+        private final int draws;
+        private final int blackWins;
+
+        Continuation(short move, int whiteWins, int draws, int blackWins) {
+            this.move = move;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.blackWins = blackWins;
+        }
+
+        public short getMove() {
+            return move;
+        }
+
+        public int getWhiteWins() {
+            return whiteWins;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getBlackWins() {
+            return blackWins;
+        }
+
+        public int getGames() {
+            return whiteWins + draws + blackWins;
+        }
+    }
+
+    /**
+     * Constructor to create an empty table.
+     * @param entries The most position and move pairs the table must hold
+     */
+    OpeningExplorer(long entries) {
+        // Keep the load factor at or below 3/4 so probe runs stay short
+        long capacity = Long.highestOneBit(Math.max(1024, entries * 4 / 3)) << 1;
+        int segmentSlots = (int) Math.min(capacity, 1L << SEGMENT_BITS);
+        segments = new ByteBuffer[(int) (capacity / segmentSlots)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentSlots * SLOT_SIZE);
+        }
+        this.capacity = capacity;
+        mask = capacity - 1;
+        segmentMask = segmentSlots - 1;
+    }
+
+    /**
+     * Builds the explorer from every finished game in the store, replaying
+     * batches of games on the executor in parallel. Games imported while it
+     * is built are left out, since the table is sized for those there were
+     * when it started.
+     * @param games The game store
+     * @param executor The executor that replays the games
+     * @return The explorer
+     * @throws IOException if the store cannot be read
+     */
+    public static OpeningExplorer build(GameStore games, ExecutorService executor) throws IOException {
+        GameStore.Extent extent = games.extent();
+        OpeningExplorer explorer = new OpeningExplorer(Math.min(extent.getPlies(), (long) extent.getGames() * MAX_PLIES));
+        // Cap the batches in flight so a large store is never all in memory at once
+        Semaphore inFlight = new Semaphore(Runtime.getRuntime().availableProcessors() * 2);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        List<StoredGame> batch = new ArrayList<>(BATCH_SIZE);
+        games.forEach(extent, game -> {
+            if (game.getMoveCount() > 0 && !game.getResult().equals("*")) {
+                batch.add(game);
+                if (batch.size() == BATCH_SIZE) {
+                    pending.add(explorer.addAsync(new ArrayList<>(batch), executor, inFlight));
+                    batch.clear();
+                }
+            }
+        });
+        if (!batch.isEmpty()) {
+            pending.add(explorer.addAsync(batch, executor, inFlight));
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+        return explorer;
+    }
+
+    /**
+     * Replays a batch of games on the executor once a slot is free.
+     */
+    private CompletableFuture<Void> addAsync(List<StoredGame> batch, ExecutorService executor, Semaphore inFlight) {
+        inFlight.acquireUninterruptibly();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                for (StoredGame game : batch) {
+                    add(game);
+                }
+            } finally {
+                inFlight.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Replays a game and counts its result against every position and move
+     * along the way.
+     */
+    void add(StoredGame game) {
+        int result = game.getResult().equals(GameResult.WHITE) ? 0 : game.getResult().equals(GameResult.DRAW) ? 1 : 2;
+        Position position = Position.start();
+        int plies = Math.min(game.getMoveCount(), MAX_PLIES);
+        for (int ply = 0; ply < plies; ply++) {
+            short move = game.getMove(ply);
+            count(position.zobristKey(), move, result);
+            position.play(move);
+        }
+    }
+
+    private void count(long key, short move, int result) {
+        int tag = (move & 0xFFFF) + 1;
+        long slot = home(key);
+        long probed = 0;
+        while (true) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+            int base = (int) (slot & segmentMask) * SLOT_SIZE;
+            int current = (int) INT.getVolatile(segment, base + MOVE_OFFSET);
+            if (current == EMPTY) {
+                if (!INT.compareAndSet(segment, base + MOVE_OFFSET, EMPTY, BUSY)) {
+                    continue;
+                }
+                LONG.set(segment, base + KEY_OFFSET, key);
+                // Publishes the key along with the move
+                INT.setVolatile(segment, base + MOVE_OFFSET, tag);
+                current = tag;
+            }
+            if (current == BUSY) {
+                // Another thread is filling in this slot; its key is a moment away
+                Thread.onSpinWait();
+                continue;
+            }
+            if (current == tag && (long) LONG.get(segment, base + KEY_OFFSET) == key) {
+                INT.getAndAdd(segment, base + COUNTS_OFFSET + result * 4, 1);
+                return;
+            }
+            if (++probed == capacity) {
+                throw new IllegalStateException("The opening table is full");
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long home(long key) {
+        // Zobrist keys are already uniformly random; just fold in the high bits
+        return (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the moves played from a position, most played first.
+     * @param position The position
+     * @return The continuations, empty if no indexed game reached the position
+     */
+    public List<Continuation> continuations(Position position) {
+        long key = position.zobristKey();
+        List<Continuation> found = new ArrayList<>();
+        long slot = home(key);
+        for (long probed = 0; probed < capacity; probed++, slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+            int base = (int) (slot & segmentMask) * SLOT_SIZE;
+            int tag = (int) INT.getVolatile(segment, base + MOVE_OFFSET);
+            if (tag == EMPTY) {
+                break;
+            }
+            if (tag != BUSY && (long) LONG.get(segment, base + KEY_OFFSET) == key) {
+                found.add(new Continuation((short) (tag - 1),
+                        (int) INT.getVolatile(segment, base + COUNTS_OFFSET),
+                        (int) INT.getVolatile(segment, base + COUNTS_OFFSET + 4),
+                        (int) INT.getVolatile(segment, base + COUNTS_OFFSET + 8)));
+            }
+        }
+        found.sort(Comparator.comparingInt(Continuation::getGames).reversed());
+        return found;
+    }
+}
@@ -0,0 +1,135 @@
+package com.mycompany.chessmasterske;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * This class hashes passwords with salted PBKDF2-HMAC-SHA256. A stored hash
+ * looks like "pbkdf2-sha256$iterations$salt$hash" with Base64 salt and hash,
+ * so the cost is recorded per user and can be raised without invalidating
+ * existing accounts. Stored values without the prefix are legacy plaintext
+ * passwords from before hashing was introduced.
+ */
+public final class PasswordHasher {
+    public static final String PREFIX = "pbkdf2-sha256$";
+    public static final int DEFAULT_ITERATIONS = 310_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Returns the work factor for new hashes, set with the
+     * chessmasters.pbkdf2.iterations system property.
+     * @return The number of PBKDF2 iterations
+     */
+    public static int currentIterations() {
+        return Integer.getInteger("chessmasters.pbkdf2.iterations", DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Hashes a password with a fresh salt at the current work factor.
+     * @param password The plaintext password
+     * @return The encoded hash to store
+     */
+    public static String hash(String password) {
+        return hash(password, currentIterations());
+    }
+
+    /**
+     * Hashes a password with a fresh salt.
+     * @param password The plaintext password
+     * @param iterations The PBKDF2 work factor
+     * @return The encoded hash to store
+     */
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations, HASH_BITS);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored value in constant time.
+     * @param password The entered password
+     * @param stored The stored hash, or a legacy plaintext password
+     * @return true if the password matches
+     */
+    public static boolean verify(String password, String stored) {
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            byte[] actual = pbkdf2(password, salt, iterations, expected.length * 8);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException ex) {
+            // Damaged hash; treat it as a failed login rather than an error
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a stored value should be re-hashed, because it is
+     * plaintext or was hashed with fewer iterations than the current setting.
+     * @param stored The stored hash or legacy password
+     * @return true if the value should be replaced on the next login
+     */
+    public static boolean needsUpgrade(String stored) {
+        return iterationsOf(stored) < currentIterations();
+    }
+
+    /**
+     * Returns the work factor of a stored value.
+     * @param stored The stored hash or legacy password
+     * @return The iterations, or 0 for plaintext or a damaged hash
+     */
+    public static int iterationsOf(String stored) {
+        if (!isHashed(stored)) {
+            return 0;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return Integer.parseInt(stored.substring(PREFIX.length(), end < 0 ? stored.length() : end));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Checks whether a stored value is a hash rather than plaintext.
+     * @param stored The stored value
+     * @return true if it is a PBKDF2 hash
+     */
+    public static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " is not available", ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.mycompany.chessmasterske;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads games from PGN text one at a time, so files of any size
+ * can be imported without loading them whole. Comments, variations,
+ * numeric annotation glyphs and move numbers are skipped; what remains of
+ * each game is its tag pairs, its main-line moves in SAN and its result.
+ */
+public class PgnReader implements AutoCloseable {
+    private final BufferedReader reader;
+    // Carried across lines: how deep we are inside {comments} and (variations)
+    private int commentDepth;
+    private int variationDepth;
+    private String pendingLine;
+
+    /**
+     * This class is one game as read from PGN.
+     */
+    public static final class PgnGame {
+        private final Map<String, String> tags;
+        private final List<String> moves;
+        private final String result;
+
+        PgnGame(Map<String, String> tags, List<String> moves, String result) {
+            this.tags = Collections.unmodifiableMap(tags);
+            this.moves = Collections.unmodifiableList(moves);
+            this.result = result;
+        }
+
+        /**
+         * Returns a tag, e.g. "White" or "Date", or "" if the game has none.
+         */
+        public String tag(String name) {
+            return tags.getOrDefault(name, "");
+        }
+
+        public Map<String, String> getTags() {
+            return tags;
+        }
+
+        /**
+         * Returns the main-line moves in SAN, e.g. "e4", "Nf3", "O-O".
+         */
+        public List<String> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Returns the result: "1-0", "0-1", "1/2-1/2" or "*".
+         */
+        public String getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Constructor to read games from a reader.
+     * @param reader The PGN text
+     */
+    public PgnReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+    }
+
+    /**
+     * Reads the next game.
+     * @return The game, or null at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public PgnGame next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        List<String> moves = new ArrayList<>();
+        String line;
+        while ((line = nextLine()) != null) {
+            String trimmed = line.trim();
+            if (commentDepth == 0 && variationDepth == 0 && trimmed.startsWith("[")) {
+                if (!moves.isEmpty()) {
+                    // A new game started without a result on the last one
+                    pendingLine = line;
+                    return new PgnGame(tags, moves, "*");
+                }
+                parseTag(trimmed, tags);
+                continue;
+            }
+            if (trimmed.startsWith("%")) {
+                continue;
+            }
+            String result = parseMoves(line, moves);
+            if (result != null) {
+                return new PgnGame(tags, moves, result);
+            }
+        }
+        return tags.isEmpty() && moves.isEmpty() ? null : new PgnGame(tags, moves, "*");
+    }
+
+    private String nextLine() throws IOException {
+        if (pendingLine != null) {
+            String line = pendingLine;
+            pendingLine = null;
+            return line;
+        }
+        return reader.readLine();
+    }
+
+    /**
+     * Parses a tag pair such as [White "Tal, Mikhail"].
+     */
+    private static void parseTag(String line, Map<String, String> tags) {
+        int space = line.indexOf(' ');
+        int open = line.indexOf('"');
+        int close = line.lastIndexOf('"');
+        if (space < 0 || open < 0 || close <= open) {
+            return;
+        }
+        String value = line.substring(open + 1, close).replace("\\\"", "\"").replace("\\\\", "\\");
+        tags.put(line.substring(1, space), value);
+    }
+
+    /**
+     * Adds the moves on a line of movetext to the list.
+     * @return The result if the line ends the game, otherwise null
+     */
+    private String parseMoves(String line, List<String> moves) {
+        int i = 0;
+        int length = line.length();
+        while (i < length) {
+            char c = line.charAt(i);
+            if (commentDepth > 0) {
+                if (c == '}') {
+                    commentDepth = 0;
+                }
+                i++;
+            } else if (c == '{') {
+                commentDepth = 1;
+                i++;
+            } else if (c == ';') {
+                // Comment to the end of the line
+                return null;
+            } else if (c == '(') {
+                variationDepth++;
+                i++;
+            } else if (c == ')') {
+                variationDepth = Math.max(0, variationDepth - 1);
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int start = i;
+                while (i < length && !Character.isWhitespace(line.charAt(i)) && "{}();".indexOf(line.charAt(i)) < 0) {
+                    i++;
+                }
+                if (variationDepth > 0) {
+                    continue;
+                }
+                String token = line.substring(start, i);
+                if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+                    if (i < length) {
+                        pendingLine = line.substring(i);
+                    }
+                    return token;
+                }
+                String move = stripMoveNumber(token);
+                if (!move.isEmpty() && move.charAt(0) != '$') {
+                    moves.add(move);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a leading move number such as "12." or "12..." from a token.
+     */
+    private static String stripMoveNumber(String token) {
+        int i = 0;
+        while (i < token.length() && Character.isDigit(token.charAt(i))) {
+            i++;
+        }
+        if (i == 0 || i == token.length() || token.charAt(i) != '.') {
+            // No move number, or a castling move written with zeros
+            return i == token.length() ? "" : token;
+        }
+        while (i < token.length() && token.charAt(i) == '.') {
+            i++;
+        }
+        return token.substring(i);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
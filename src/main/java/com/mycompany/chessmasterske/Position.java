@@ -0,0 +1,435 @@
+package com.mycompany.chessmasterske;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * This class is a chess position: the pieces, the side to move, castling
+ * rights and the en passant square. It knows enough of the rules to turn a
+ * move in standard algebraic notation (SAN), such as "Nbd7" or "exd8=Q+",
+ * into a packed move and to play it; it does not generate every legal move.
+ * Pieces are numbered as in the puzzle catalog: 1-6 for white P N B R Q K
+ * and 9-14 for black.
+ */
+public final class Position {
+    static final String PIECES = " PNBRQK  pnbrqk";
+    static final int PAWN = 1;
+    static final int KNIGHT = 2;
+    static final int BISHOP = 3;
+    static final int ROOK = 4;
+    static final int QUEEN = 5;
+    static final int KING = 6;
+    static final int BLACK = 8;
+
+    private static final int[] KNIGHT_STEPS = {-17, -15, -10, -6, 6, 10, 15, 17};
+    private static final int[] KING_STEPS = {-9, -8, -7, -1, 1, 7, 8, 9};
+    private static final int[] ROOK_STEPS = {-8, -1, 1, 8};
+    private static final int[] BISHOP_STEPS = {-9, -7, 7, 9};
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Zobrist keys: one per piece and square, then castling rights, en passant file and side to move
+    private static final long[] PIECE_KEYS = new long[16 * 64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        // A fixed seed keeps keys the same from run to run
+        SplittableRandom random = new SplittableRandom(0x5EED_C4E55L);
+        for (int i = 0; i < PIECE_KEYS.length; i++) {
+            PIECE_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < CASTLING_KEYS.length; i++) {
+            CASTLING_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT_KEYS.length; i++) {
+            EN_PASSANT_KEYS[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    private final byte[] board = new byte[64];
+    private boolean blackToMove;
+    // Bit 0 white short, 1 white long, 2 black short, 3 black long
+    private int castling;
+    private int enPassant = -1;
+
+    private Position() {
+    }
+
+    /**
+     * Returns the starting position.
+     */
+    public static Position start() {
+        return fromFen(START_FEN);
+    }
+
+    /**
+     * Parses a position from FEN.
+     * @param fen The position, e.g. "8/8/8/8/8/8/8/K6k w - - 0 1"
+     * @return The position
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split(" ");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+        Position position = new Position();
+        int rank = 7;
+        int file = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int piece = PIECES.indexOf(c);
+                if (piece <= 0 || file > 7 || rank < 0) {
+                    throw new IllegalArgumentException("Bad FEN: " + fen);
+                }
+                position.board[rank * 8 + file++] = (byte) piece;
+            }
+        }
+        position.blackToMove = fields[1].equals("b");
+        for (char c : fields[2].toCharArray()) {
+            int bit = "KQkq".indexOf(c);
+            if (bit >= 0) {
+                position.castling |= 1 << bit;
+            }
+        }
+        position.enPassant = fields[3].equals("-") ? -1 : MoveCodec.square(fields[3], 0);
+        return position;
+    }
+
+    /**
+     * Returns a copy of this position.
+     */
+    public Position copy() {
+        Position copy = new Position();
+        System.arraycopy(board, 0, copy.board, 0, 64);
+        copy.blackToMove = blackToMove;
+        copy.castling = castling;
+        copy.enPassant = enPassant;
+        return copy;
+    }
+
+    public int pieceAt(int square) {
+        return board[square];
+    }
+
+    public boolean isBlackToMove() {
+        return blackToMove;
+    }
+
+    public int getCastling() {
+        return castling;
+    }
+
+    public int getEnPassant() {
+        return enPassant;
+    }
+
+    /**
+     * Resolves a move in standard algebraic notation against this position.
+     * @param san The move, e.g. "e4", "Nxf7+", "O-O" or "e8=Q"
+     * @return The packed move
+     * @throws IllegalArgumentException if no piece, or more than one legal
+     *         piece, can make the move
+     */
+    public short parseSan(String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String move = san.substring(0, end);
+        int own = blackToMove ? BLACK : 0;
+        int home = blackToMove ? 56 : 0;
+        if (move.equals("O-O") || move.equals("0-0")) {
+            return castle(home + 4, home + 6, own);
+        }
+        if (move.equals("O-O-O") || move.equals("0-0-0")) {
+            return castle(home + 4, home + 2, own);
+        }
+
+        int promotion = 0;
+        int equals = move.indexOf('=');
+        if (equals >= 0 && equals == move.length() - 2) {
+            promotion = promotionOf(move.charAt(equals + 1), san);
+            move = move.substring(0, equals);
+        } else if (move.length() > 2 && "NBRQ".indexOf(move.charAt(move.length() - 1)) >= 0
+                && Character.isDigit(move.charAt(move.length() - 2))) {
+            // Promotion written without '=', e.g. "e8Q"
+            promotion = promotionOf(move.charAt(move.length() - 1), san);
+            move = move.substring(0, move.length() - 1);
+        }
+        if (move.length() < 2) {
+            throw new IllegalArgumentException("Bad move: " + san);
+        }
+        int to = MoveCodec.square(move, move.length() - 2);
+        int type = "NBRQK".indexOf(move.charAt(0)) + 2;
+        String qualifier = move.substring(type >= KNIGHT ? 1 : 0, move.length() - 2).replace("x", "");
+        int fromFile = -1;
+        int fromRank = -1;
+        for (char c : qualifier.toCharArray()) {
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else {
+                throw new IllegalArgumentException("Bad move: " + san);
+            }
+        }
+        if (type < KNIGHT) {
+            return pawnMove(to, fromFile, promotion, own, san);
+        }
+
+        int target = board[to];
+        if (target != 0 && (target & BLACK) == own) {
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        short[] candidates = new short[10];
+        int count = 0;
+        for (int from = 0; from < 64; from++) {
+            if (board[from] == own + type && (fromFile < 0 || from % 8 == fromFile)
+                    && (fromRank < 0 || from / 8 == fromRank) && reaches(from, to, type) && count < candidates.length) {
+                candidates[count++] = MoveCodec.encode(from, to, 0);
+            }
+        }
+        if (count > 1) {
+            // SAN only disambiguates between legal moves, so drop pinned pieces
+            int legal = 0;
+            for (int i = 0; i < count; i++) {
+                if (!leavesKingInCheck(candidates[i])) {
+                    candidates[legal++] = candidates[i];
+                }
+            }
+            count = legal;
+        }
+        if (count != 1) {
+            throw new IllegalArgumentException((count == 0 ? "Illegal move: " : "Ambiguous move: ") + san);
+        }
+        return candidates[0];
+    }
+
+    private static int promotionOf(char piece, String san) {
+        int promotion = "NBRQ".indexOf(piece) + 1;
+        if (promotion <= 0) {
+            throw new IllegalArgumentException("Bad promotion: " + san);
+        }
+        return promotion;
+    }
+
+    private short castle(int from, int to, int own) {
+        if (board[from] != own + KING) {
+            throw new IllegalArgumentException("Cannot castle");
+        }
+        return MoveCodec.encode(from, to, 0);
+    }
+
+    private short pawnMove(int to, int fromFile, int promotion, int own, String san) {
+        int forward = own == 0 ? 8 : -8;
+        int from;
+        if (fromFile >= 0 && fromFile != to % 8) {
+            // Capture, including en passant
+            from = to - forward + (fromFile - to % 8);
+            if (Math.abs(fromFile - to % 8) != 1 || from < 0 || from >= 64 || board[from] != own + PAWN) {
+                throw new IllegalArgumentException("Illegal move: " + san);
+            }
+        } else {
+            from = to - forward;
+            if (from >= 0 && from < 64 && board[from] == 0 && to / 8 == (own == 0 ? 3 : 4)) {
+                // Double step from the starting rank
+                from -= forward;
+            }
+            if (from < 0 || from >= 64 || board[from] != own + PAWN || board[to] != 0) {
+                throw new IllegalArgumentException("Illegal move: " + san);
+            }
+        }
+        boolean lastRank = to / 8 == (own == 0 ? 7 : 0);
+        if (lastRank != (promotion != 0)) {
+            throw new IllegalArgumentException("Bad promotion: " + san);
+        }
+        return MoveCodec.encode(from, to, promotion);
+    }
+
+    /**
+     * Returns whether a piece of the given type on one square attacks
+     * another, ignoring what stands on the target square.
+     */
+    private boolean reaches(int from, int to, int type) {
+        switch (type) {
+            case KNIGHT:
+                return steps(from, to, KNIGHT_STEPS);
+            case KING:
+                return steps(from, to, KING_STEPS);
+            case BISHOP:
+                return slides(from, to, BISHOP_STEPS);
+            case ROOK:
+                return slides(from, to, ROOK_STEPS);
+            case QUEEN:
+                return slides(from, to, BISHOP_STEPS) || slides(from, to, ROOK_STEPS);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean steps(int from, int to, int[] offsets) {
+        for (int offset : offsets) {
+            int square = from + offset;
+            // A step never moves more than two files, which rules out wrapping
+            if (square == to && Math.abs(square % 8 - from % 8) <= 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean slides(int from, int to, int[] directions) {
+        for (int direction : directions) {
+            int square = from;
+            while (true) {
+                int next = square + direction;
+                if (next < 0 || next >= 64 || Math.abs(next % 8 - square % 8) > 1) {
+                    break;
+                }
+                if (next == to) {
+                    return true;
+                }
+                if (board[next] != 0) {
+                    break;
+                }
+                square = next;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a square is attacked by the given side.
+     * @param square The square
+     * @param byBlack true to look for black attackers
+     */
+    public boolean isAttacked(int square, boolean byBlack) {
+        int side = byBlack ? BLACK : 0;
+        for (int from = 0; from < 64; from++) {
+            int piece = board[from];
+            if (piece == 0 || (piece & BLACK) != side) {
+                continue;
+            }
+            int type = piece & 7;
+            if (type == PAWN) {
+                int forward = byBlack ? -8 : 8;
+                if (Math.abs(from % 8 - square % 8) == 1 && square == from + forward + (square % 8 - from % 8)) {
+                    return true;
+                }
+            } else if (reaches(from, square, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean leavesKingInCheck(short move) {
+        Position after = copy();
+        after.play(move);
+        int king = -1;
+        int own = blackToMove ? BLACK + KING : KING;
+        for (int square = 0; square < 64; square++) {
+            if (after.board[square] == own) {
+                king = square;
+                break;
+            }
+        }
+        return king >= 0 && after.isAttacked(king, !blackToMove);
+    }
+
+    /**
+     * Plays a packed move, which is assumed to be legal.
+     * @param move The move
+     */
+    public void play(short move) {
+        int from = MoveCodec.from(move);
+        int to = MoveCodec.to(move);
+        int piece = board[from];
+        int own = piece & BLACK;
+        int type = piece & 7;
+        if (type == PAWN && to == enPassant) {
+            board[to + (own == 0 ? -8 : 8)] = 0;
+        }
+        if (type == KING && Math.abs(to - from) == 2) {
+            // Castling: bring the rook across as well
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            board[rookTo] = board[rookFrom];
+            board[rookFrom] = 0;
+        }
+        board[to] = (byte) (MoveCodec.promotion(move) != 0 ? own + MoveCodec.promotion(move) + 1 : piece);
+        board[from] = 0;
+        enPassant = type == PAWN && Math.abs(to - from) == 16 ? (from + to) / 2 : -1;
+        castling &= ~(castlingLostAt(from) | castlingLostAt(to));
+        blackToMove = !blackToMove;
+    }
+
+    private static int castlingLostAt(int square) {
+        switch (square) {
+            case 4:
+                return 0b0011;
+            case 7:
+                return 0b0001;
+            case 0:
+                return 0b0010;
+            case 60:
+                return 0b1100;
+            case 63:
+                return 0b0100;
+            case 56:
+                return 0b1000;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the Zobrist hash of the position. Positions that differ only
+     * in the move order that led to them hash the same. The en passant file
+     * only counts when a pawn could actually take en passant.
+     * @return The 64-bit hash
+     */
+    public long zobristKey() {
+        long key = CASTLING_KEYS[castling];
+        for (int square = 0; square < 64; square++) {
+            if (board[square] != 0) {
+                key ^= PIECE_KEYS[board[square] * 64 + square];
+            }
+        }
+        if (enPassant >= 0 && canTakeEnPassant()) {
+            key ^= EN_PASSANT_KEYS[enPassant % 8];
+        }
+        return blackToMove ? key ^ BLACK_TO_MOVE_KEY : key;
+    }
+
+    private boolean canTakeEnPassant() {
+        int pawn = blackToMove ? BLACK + PAWN : PAWN;
+        // The capturing pawn stands beside the pawn that just made a double step
+        int beside = enPassant + (blackToMove ? 8 : -8);
+        return (enPassant % 8 > 0 && board[beside - 1] == pawn) || (enPassant % 8 < 7 && board[beside + 1] == pawn);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Position)) {
+            return false;
+        }
+        Position position = (Position) other;
+        return Arrays.equals(board, position.board) && blackToMove == position.blackToMove
+                && castling == position.castling && enPassant == position.enPassant;
+    }
+
+    @Override
+    public int hashCode() {
+        long key = zobristKey();
+        return (int) (key ^ (key >>> 32));
+    }
+}
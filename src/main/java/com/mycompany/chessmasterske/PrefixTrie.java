@@ -0,0 +1,214 @@
+package com.mycompany.chessmasterske;
+
+import java.util.Arrays;
+
+/**
+ * This class maps terms to the ids of the documents that contain them, as
+ * a compressed trie: each edge holds a run of characters rather than one,
+ * so a node exists only where terms branch or end, and the labels are not
+ * copied but read from one of the terms that pass through the node. The
+ * terms under a node are visited in order, which answers prefix queries
+ * without looking at any other term.
+ * <p>
+ * Each term's ids are kept in the order they were added, so adding them
+ * in increasing order keeps them sorted. This class is not thread-safe.
+ */
+final class PrefixTrie {
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * This interface receives the terms and ids under a prefix.
+     */
+    interface Visitor {
+        /**
+         * Receives one id of one term.
+         * @return false to stop visiting
+         */
+        boolean visit(String term, int id);
+    }
+
+    /**
+     * This class is one node: the string term.substring(0, depth). Its edge
+     * from the parent is the characters after the parent's depth.
+     */
+    private static final class Node {
+        final String term;
+        final int depth;
+        Node[] children = NO_CHILDREN;
+        int childCount;
+        int[] ids;
+        int idCount;
+        // The ids of this node and all below it
+        int total;
+
+        Node(String term, int depth) {
+            this.term = term;
+            this.depth = depth;
+        }
+
+        // Returns the child whose edge starts with c, or -(insertion point) - 1
+        int find(char c) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char first = children[middle].term.charAt(depth);
+                if (first < c) {
+                    low = middle + 1;
+                } else if (first > c) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+
+        void insert(int at, Node child) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            children[at] = child;
+            childCount++;
+        }
+
+        // Returns true if the node did not end a term before
+        boolean add(int id) {
+            if (idCount > 0 && ids[idCount - 1] == id) {
+                return false;
+            }
+            if (ids == null || idCount == ids.length) {
+                ids = ids == null ? new int[1] : Arrays.copyOf(ids, idCount * 2);
+            }
+            ids[idCount++] = id;
+            return idCount == 1;
+        }
+    }
+
+    private final Node root = new Node("", 0);
+    private int terms;
+
+    /**
+     * Returns the number of distinct terms.
+     */
+    int size() {
+        return terms;
+    }
+
+    /**
+     * Adds a document id to a term, adding the term if it is new. The
+     * counts of {@link #count(String)} assume the id is new to the term.
+     * @param term The term
+     * @param id The id; adding the last id of the term again does nothing
+     * @return The trie's own copy of the term if it has one, else the term,
+     *         so documents can share the trie's strings
+     */
+    String add(String term, int id) {
+        Node node = root;
+        node.total++;
+        int i = 0;
+        while (i < term.length()) {
+            int at = node.find(term.charAt(i));
+            if (at < 0) {
+                node.insert(-at - 1, new Node(term, term.length()));
+                node = node.children[-at - 1];
+                node.total++;
+                break;
+            }
+            Node child = node.children[at];
+            int matched = i + 1;
+            while (matched < child.depth && matched < term.length() && child.term.charAt(matched) == term.charAt(matched)) {
+                matched++;
+            }
+            if (matched < child.depth) {
+                // The term leaves or ends inside the edge: split it where it does
+                Node split = new Node(child.term, matched);
+                split.insert(0, child);
+                split.total = child.total;
+                node.children[at] = split;
+                child = split;
+            }
+            node = child;
+            node.total++;
+            i = matched;
+        }
+        if (node.add(id)) {
+            terms++;
+        }
+        return node.term.length() == node.depth ? node.term : term;
+    }
+
+    /**
+     * Returns the ids of a term.
+     * @param term The term
+     * @return The ids, in the order they were added; empty if the term is unknown
+     */
+    int[] ids(String term) {
+        Node node = locate(term);
+        if (node == null || node.depth != term.length() || node.idCount == 0) {
+            return new int[0];
+        }
+        return Arrays.copyOf(node.ids, node.idCount);
+    }
+
+    /**
+     * Returns how many ids the terms starting with a prefix have, together,
+     * without visiting them. An id is counted once per term that has it.
+     * @param prefix The prefix
+     * @return The count
+     */
+    int count(String prefix) {
+        Node node = locate(prefix);
+        return node == null ? 0 : node.total;
+    }
+
+    /**
+     * Visits the ids of every term that starts with a prefix, term by term
+     * in order.
+     * @param prefix The prefix; the empty prefix visits every term
+     * @param visitor Receives the terms and ids
+     */
+    void forEachWithPrefix(String prefix, Visitor visitor) {
+        Node node = locate(prefix);
+        if (node != null) {
+            visit(node, visitor);
+        }
+    }
+
+    // Returns the highest node whose string starts with the key, or null if none does
+    private Node locate(String key) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int at = node.find(key.charAt(i));
+            if (at < 0) {
+                return null;
+            }
+            node = node.children[at];
+            for (i++; i < node.depth && i < key.length(); i++) {
+                if (node.term.charAt(i) != key.charAt(i)) {
+                    return null;
+                }
+            }
+        }
+        return node;
+    }
+
+    private static boolean visit(Node node, Visitor visitor) {
+        if (node.idCount > 0) {
+            String term = node.term.substring(0, node.depth);
+            for (int i = 0; i < node.idCount; i++) {
+                if (!visitor.visit(term, node.ids[i])) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            if (!visit(node.children[i], visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents one puzzle from the catalog: a starting position in
+ * FEN, the solution moves and the puzzle's rating.
+ */
+public final class Puzzle {
+    private final int index;
+    private final String id;
+    private final String fen;
+    private final short[] solution;
+    private final int rating;
+
+    /**
+     * Constructor to create a puzzle.
+     * @param index The puzzle's position in the catalog
+     * @param id The puzzle's ID in the source catalog
+     * @param fen The starting position
+     * @param solution The solution moves, packed by MoveCodec
+     * @param rating The puzzle's rating
+     */
+    public Puzzle(int index, String id, String fen, short[] solution, int rating) {
+        this.index = index;
+        this.id = id;
+        this.fen = fen;
+        this.solution = solution;
+        this.rating = rating;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFen() {
+        return fen;
+    }
+
+    public short[] getSolution() {
+        return solution.clone();
+    }
+
+    public int getRating() {
+        return rating;
+    }
+
+    /**
+     * Returns the solution in UCI notation, separated by spaces.
+     */
+    public String getSolutionUci() {
+        StringBuilder text = new StringBuilder();
+        for (short move : solution) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(MoveCodec.toUci(move));
+        }
+        return text.toString();
+    }
+}
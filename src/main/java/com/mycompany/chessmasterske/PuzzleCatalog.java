@@ -0,0 +1,362 @@
+package com.mycompany.chessmasterske;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class holds the puzzle catalog in a compact binary file
+ * (puzzles.bin) built once from a local CSV catalog (puzzles.csv, in the
+ * Lichess "PuzzleId,FEN,Moves,Rating,..." layout). Each puzzle takes about
+ * 50 bytes: the board as 64 four-bit squares, one byte of side-to-move and
+ * castling flags, the en passant square, the move counters, the rating and
+ * the solution as 16-bit moves. The binary file is memory mapped and
+ * puzzles are decoded only when they are served.
+ *
+ * Puzzles are indexed by the three difficulties offered in the puzzle form
+ * and, within each difficulty, sorted by rating.
+ */
+public class PuzzleCatalog {
+    public static final String CSV_FILE = "puzzles.csv";
+    public static final String BINARY_FILE = "puzzles.bin";
+    public static final String[] DIFFICULTIES = {"Easy", "Hard", "Extremely Hard"};
+
+    private static final int MAGIC = 0x434D505A;
+    private static final int VERSION = 1;
+    private static final int HARD_RATING = 1500;
+    private static final int EXTREMELY_HARD_RATING = 2000;
+    private static final String PIECES = " PNBRQK  pnbrqk";
+
+    private final ByteBuffer data;
+    private final int[] offsets;
+    private final short[] ratings;
+    // Puzzle indices per difficulty, sorted by rating
+    private final int[][] byDifficulty = new int[DIFFICULTIES.length][];
+    private Map<String, Integer> indexById;
+
+    private PuzzleCatalog(ByteBuffer data, int count) {
+        this.data = data;
+        this.offsets = new int[count];
+        this.ratings = new short[count];
+        indexRecords();
+    }
+
+    /**
+     * Opens the catalog, converting the CSV catalog to the binary format
+     * first if the binary file is missing or older than the CSV.
+     * @param csvFile The CSV catalog, e.g. "puzzles.csv"
+     * @param binaryFile The binary catalog, e.g. "puzzles.bin"
+     * @return The catalog; empty if neither file exists
+     * @throws IOException if a catalog file cannot be read or written
+     */
+    public static PuzzleCatalog open(String csvFile, String binaryFile) throws IOException {
+        Path csv = Paths.get(csvFile);
+        Path binary = Paths.get(binaryFile);
+        if (Files.exists(csv) && (!Files.exists(binary)
+                || Files.getLastModifiedTime(csv).compareTo(Files.getLastModifiedTime(binary)) > 0)) {
+            convert(csv, binary);
+        }
+        if (!Files.exists(binary)) {
+            return new PuzzleCatalog(ByteBuffer.allocate(0), 0);
+        }
+        try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.remaining() < 12 || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException(binary + " is not a puzzle catalog");
+            }
+            return new PuzzleCatalog(data, data.getInt(8));
+        }
+    }
+
+    /**
+     * Converts a CSV catalog to the binary format in one streaming pass.
+     * Lines that cannot be parsed are skipped.
+     * @param csv The CSV catalog
+     * @param binary The binary file to write
+     * @return The number of puzzles written
+     * @throws IOException if either file cannot be accessed
+     */
+    public static int convert(Path csv, Path binary) throws IOException {
+        Path temp = binary.resolveSibling(binary.getFileName() + ".tmp");
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // Count, patched once every line has been read
+            out.writeInt(0);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] data = line.split(",", 5);
+                if (data.length < 4 || data[0].equals("PuzzleId")) {
+                    continue;
+                }
+                try {
+                    writePuzzle(out, data[0], data[1], data[2].trim().split(" "), Integer.parseInt(data[3].trim()));
+                    count++;
+                } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                    // Skip a damaged catalog line
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4).putInt(count);
+            header.flip();
+            channel.write(header, 8);
+        }
+        Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    private static void writePuzzle(DataOutputStream out, String id, String fen, String[] moves, int rating) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        String[] fields = fen.trim().split(" ");
+        if (idBytes.length > 255 || fields.length < 4 || moves.length > 255 || rating < 0 || rating > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad puzzle " + id);
+        }
+        // Validate everything before writing so a bad line leaves no partial record
+        byte[] board = encodeBoard(fields[0]);
+        int flags = fields[1].equals("b") ? 1 : 0;
+        for (char c : fields[2].toCharArray()) {
+            int bit = "KQkq".indexOf(c);
+            if (bit >= 0) {
+                flags |= 2 << bit;
+            }
+        }
+        int ep = fields[3].equals("-") ? 0xFF : MoveCodec.square(fields[3], 0);
+        int halfmove = fields.length > 4 ? Math.min(255, Integer.parseInt(fields[4])) : 0;
+        int fullmove = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        short[] solution = new short[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            solution[i] = MoveCodec.fromUci(moves[i]);
+        }
+
+        out.writeByte(idBytes.length);
+        out.write(idBytes);
+        out.write(board);
+        out.writeByte(flags);
+        out.writeByte(ep);
+        out.writeByte(halfmove);
+        out.writeShort(fullmove);
+        out.writeShort(rating);
+        out.writeByte(solution.length);
+        for (short move : solution) {
+            out.writeShort(move);
+        }
+    }
+
+    /**
+     * Packs the piece placement field of a FEN into 32 bytes, two squares
+     * per byte with the even square in the low nibble.
+     */
+    private static byte[] encodeBoard(String placement) {
+        byte[] board = new byte[32];
+        int rank = 7;
+        int file = 0;
+        for (char c : placement.toCharArray()) {
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int piece = PIECES.indexOf(c);
+                if (piece <= 0 || file > 7 || rank < 0) {
+                    throw new IllegalArgumentException("Bad FEN: " + placement);
+                }
+                int square = rank * 8 + file++;
+                board[square / 2] |= (byte) (square % 2 == 0 ? piece : piece << 4);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Records where each puzzle starts and groups puzzles by difficulty.
+     */
+    private void indexRecords() {
+        int position = 12;
+        int[] counts = new int[DIFFICULTIES.length];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = position;
+            int idLength = data.get(position) & 0xFF;
+            ratings[i] = data.getShort(position + 1 + idLength + 32 + 5);
+            int moves = data.get(position + 1 + idLength + 32 + 7) & 0xFF;
+            position += 1 + idLength + 32 + 8 + moves * 2;
+            counts[difficultyOf(ratings[i])]++;
+        }
+        for (int d = 0; d < DIFFICULTIES.length; d++) {
+            // Sort by rating using packed (rating, index) keys to avoid boxing
+            long[] keys = new long[counts[d]];
+            int n = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                if (difficultyOf(ratings[i]) == d) {
+                    keys[n++] = ((long) ratings[i] << 32) | i;
+                }
+            }
+            Arrays.sort(keys);
+            byDifficulty[d] = new int[n];
+            for (int i = 0; i < n; i++) {
+                byDifficulty[d][i] = (int) keys[i];
+            }
+        }
+    }
+
+    private static int difficultyOf(int rating) {
+        if (rating < HARD_RATING) {
+            return 0;
+        }
+        return rating < EXTREMELY_HARD_RATING ? 1 : 2;
+    }
+
+    /**
+     * Returns the position of a difficulty in {@link #DIFFICULTIES}.
+     * @param difficulty "Easy", "Hard" or "Extremely Hard"
+     * @return The difficulty number
+     */
+    public static int difficultyNumber(String difficulty) {
+        int number = Arrays.asList(DIFFICULTIES).indexOf(difficulty);
+        if (number < 0) {
+            throw new IllegalArgumentException("Unknown difficulty: " + difficulty);
+        }
+        return number;
+    }
+
+    /**
+     * Returns the number of puzzles in the catalog.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the number of puzzles of one difficulty.
+     */
+    int size(int difficulty) {
+        return byDifficulty[difficulty].length;
+    }
+
+    /**
+     * Returns the n-th easiest puzzle of a difficulty.
+     */
+    int puzzleAt(int difficulty, int position) {
+        return byDifficulty[difficulty][position];
+    }
+
+    /**
+     * Returns the position of the first puzzle of a difficulty rated at
+     * least the given rating, by binary search.
+     */
+    int positionForRating(int difficulty, int rating) {
+        int[] puzzles = byDifficulty[difficulty];
+        int low = 0;
+        int high = puzzles.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ratings[puzzles[middle]] < rating) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == puzzles.length ? 0 : low;
+    }
+
+    /**
+     * Decodes one puzzle.
+     * @param index The puzzle's position in the catalog
+     * @return The puzzle
+     */
+    public Puzzle get(int index) {
+        int position = offsets[index];
+        int idLength = data.get(position) & 0xFF;
+        byte[] id = new byte[idLength];
+        for (int i = 0; i < idLength; i++) {
+            id[i] = data.get(position + 1 + i);
+        }
+        int board = position + 1 + idLength;
+        int flags = data.get(board + 32) & 0xFF;
+        int ep = data.get(board + 33) & 0xFF;
+        int halfmove = data.get(board + 34) & 0xFF;
+        int fullmove = data.getShort(board + 35) & 0xFFFF;
+        int moves = data.get(board + 39) & 0xFF;
+        short[] solution = new short[moves];
+        for (int i = 0; i < moves; i++) {
+            solution[i] = data.getShort(board + 40 + i * 2);
+        }
+
+        StringBuilder fen = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int square = rank * 8 + file;
+                int packed = data.get(board + square / 2) & 0xFF;
+                int piece = square % 2 == 0 ? packed & 0xF : packed >>> 4;
+                if (piece == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(PIECES.charAt(piece));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+        fen.append((flags & 1) != 0 ? " b " : " w ");
+        int castlingStart = fen.length();
+        for (int bit = 0; bit < 4; bit++) {
+            if ((flags & (2 << bit)) != 0) {
+                fen.append("KQkq".charAt(bit));
+            }
+        }
+        if (fen.length() == castlingStart) {
+            fen.append('-');
+        }
+        fen.append(' ').append(ep == 0xFF ? "-" : MoveCodec.squareName(ep));
+        fen.append(' ').append(halfmove).append(' ').append(fullmove);
+        return new Puzzle(index, new String(id, StandardCharsets.UTF_8), fen.toString(), solution, ratings[index]);
+    }
+
+    /**
+     * Finds a puzzle by its catalog ID. The ID map is built on first use.
+     * @param id The puzzle's ID in the source catalog
+     * @return The puzzle's index, or -1 if there is no such puzzle
+     */
+    public synchronized int indexOf(String id) {
+        if (indexById == null) {
+            indexById = new HashMap<>(offsets.length * 2);
+            for (int i = 0; i < offsets.length; i++) {
+                int position = offsets[i];
+                byte[] bytes = new byte[data.get(position) & 0xFF];
+                for (int j = 0; j < bytes.length; j++) {
+                    bytes[j] = data.get(position + 1 + j);
+                }
+                indexById.put(new String(bytes, StandardCharsets.UTF_8), i);
+            }
+        }
+        Integer index = indexById.get(id);
+        return index == null ? -1 : index;
+    }
+}
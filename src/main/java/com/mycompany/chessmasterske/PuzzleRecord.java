@@ -0,0 +1,34 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents one puzzle attempt as stored in puzzle_credentials.txt.
+ */
+public final class PuzzleRecord {
+    private final String id;
+    private final String username;
+    private final String difficulty;
+
+    /**
+     * Constructor to create a puzzle record.
+     * @param id The ID entered in the puzzle form
+     * @param username The username of the solver
+     * @param difficulty The difficulty chosen in the puzzle form
+     */
+    public PuzzleRecord(String id, String username, String difficulty) {
+        this.id = id;
+        this.username = username;
+        this.difficulty = difficulty;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getDifficulty() {
+        return difficulty;
+    }
+}
@@ -0,0 +1,177 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * This class serves each user the next puzzle they have not seen yet. Every
+ * user has a bitset of the puzzles already served to them and, for each
+ * difficulty, a cursor into the catalog's rating-sorted list that starts at
+ * the user's own rating. Serving a puzzle pops it from a small per-user
+ * queue; when the queue runs low the next batch is decoded in the
+ * background, so the user never waits for the catalog. Served puzzles are
+ * recorded in puzzle_progress.txt as "username,puzzleId" and replayed on
+ * startup.
+ */
+public class PuzzleServer {
+    public static final String PROGRESS_FILE = "puzzle_progress.txt";
+
+    private static final int BATCH_SIZE = 16;
+    private static final int LOW_WATER = 4;
+
+    private final PuzzleCatalog catalog;
+    private final RecordFile progressLog;
+    private final GroupCommitWriter writer;
+    private final Executor executor;
+    private final Map<String, Progress> progress = new ConcurrentHashMap<>();
+
+    /**
+     * This class holds one user's served puzzles, cursors and prefetched
+     * puzzles. All access is synchronized on the instance.
+     */
+    private static final class Progress {
+        final BitSet served = new BitSet();
+        final int[] cursors = new int[PuzzleCatalog.DIFFICULTIES.length];
+        // How many positions each cursor has advanced; a full lap means every puzzle was seen
+        final int[] walked = new int[PuzzleCatalog.DIFFICULTIES.length];
+        // A generic array can only be made by a cast, which holds since the constructor creates every deque
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<Puzzle>[] prefetched = (ArrayDeque<Puzzle>[]) new ArrayDeque<?>[PuzzleCatalog.DIFFICULTIES.length];
+        final boolean[] prefetching = new boolean[PuzzleCatalog.DIFFICULTIES.length];
+
+        Progress() {
+            Arrays.fill(cursors, -1);
+            for (int i = 0; i < prefetched.length; i++) {
+                prefetched[i] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    private PuzzleServer(PuzzleCatalog catalog, RecordFile progressLog, GroupCommitWriter writer, Executor executor) {
+        this.catalog = catalog;
+        this.progressLog = progressLog;
+        this.writer = writer;
+        this.executor = executor;
+    }
+
+    /**
+     * Opens the puzzle server and replays the progress log.
+     * @param catalog The puzzle catalog
+     * @param progressFile The progress log, e.g. "puzzle_progress.txt"
+     * @param writer The writer that commits progress records
+     * @param executor The executor that prefetches puzzles
+     * @return The puzzle server
+     * @throws IOException if the progress log cannot be read
+     */
+    public static PuzzleServer open(PuzzleCatalog catalog, String progressFile, GroupCommitWriter writer,
+                                    Executor executor) throws IOException {
+        PuzzleServer server = new PuzzleServer(catalog, RecordFile.open(progressFile), writer, executor);
+        server.progressLog.forEach(line -> {
+            int comma = line.lastIndexOf(',');
+            if (comma > 0) {
+                int index = catalog.indexOf(line.substring(comma + 1));
+                if (index >= 0) {
+                    server.progressOf(line.substring(0, comma)).served.set(index);
+                }
+            }
+        });
+        return server;
+    }
+
+    private Progress progressOf(String username) {
+        return progress.computeIfAbsent(username, name -> new Progress());
+    }
+
+    /**
+     * Serves the next unseen puzzle of a difficulty to a user.
+     * @param username The user
+     * @param difficulty "Easy", "Hard" or "Extremely Hard"
+     * @param rating The user's rating, where their walk through the
+     *               difficulty starts on first use
+     * @return The puzzle, or null if the user has seen every puzzle of the
+     *         difficulty
+     */
+    public Puzzle next(String username, String difficulty, int rating) {
+        int d = PuzzleCatalog.difficultyNumber(difficulty);
+        Progress user = progressOf(username);
+        Puzzle puzzle;
+        synchronized (user) {
+            if (user.cursors[d] < 0) {
+                user.cursors[d] = catalog.size(d) == 0 ? 0 : catalog.positionForRating(d, rating);
+            }
+            if (user.prefetched[d].isEmpty()) {
+                // Nothing prefetched yet, e.g. the first request; fill inline
+                fill(user, d);
+            }
+            puzzle = user.prefetched[d].poll();
+            if (puzzle != null) {
+                user.served.set(puzzle.getIndex());
+            }
+            if (user.prefetched[d].size() < LOW_WATER && !user.prefetching[d]) {
+                user.prefetching[d] = true;
+                executor.execute(() -> {
+                    synchronized (user) {
+                        fill(user, d);
+                        user.prefetching[d] = false;
+                    }
+                });
+            }
+        }
+        if (puzzle != null) {
+            writer.submit(progressLog, username + "," + puzzle.getId()).whenComplete((recordNumber, ex) -> {
+                if (ex != null) {
+                    ex.printStackTrace();
+                }
+            });
+        }
+        return puzzle;
+    }
+
+    /**
+     * Serves the next unseen puzzle on the given executor.
+     * @param username The user
+     * @param difficulty "Easy", "Hard" or "Extremely Hard"
+     * @param rating The user's rating
+     * @return A future of the puzzle, or of null if none are left
+     */
+    public CompletableFuture<Puzzle> nextAsync(String username, String difficulty, int rating) {
+        return CompletableFuture.supplyAsync(() -> next(username, difficulty, rating), executor);
+    }
+
+    /**
+     * Decodes the next batch of unseen puzzles into the user's queue. Must
+     * be called while holding the user's lock.
+     */
+    private void fill(Progress user, int d) {
+        int size = catalog.size(d);
+        while (user.prefetched[d].size() < BATCH_SIZE && user.walked[d] < size) {
+            int index = catalog.puzzleAt(d, user.cursors[d]);
+            user.cursors[d] = (user.cursors[d] + 1) % size;
+            user.walked[d]++;
+            if (!user.served.get(index)) {
+                user.prefetched[d].add(catalog.get(index));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of puzzles served to a user.
+     * @param username The user
+     * @return The number of distinct puzzles the user has seen
+     */
+    public int servedCount(String username) {
+        Progress user = progress.get(username);
+        if (user == null) {
+            return 0;
+        }
+        synchronized (user) {
+            return user.served.cardinality();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This exception is thrown when an attempt is refused because the caller
+ * has made too many attempts recently.
+ */
+public class RateLimitedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    /**
+     * Constructor to create the exception.
+     * @param retryAfterMillis How long until the caller may try again
+     */
+    public RateLimitedException(long retryAfterMillis) {
+        super("Too many attempts; retry in " + retryAfterMillis + " ms");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Returns how long until the caller may try again, rounded up to whole
+     * seconds.
+     */
+    public long getRetryAfterSeconds() {
+        return (retryAfterMillis + 999) / 1000;
+    }
+}
@@ -0,0 +1,96 @@
+package com.mycompany.chessmasterske;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class limits how often each key, such as a username or a client
+ * address, may do something, with one token bucket per key. A bucket holds
+ * up to a burst of tokens and refills at a steady rate; each attempt takes
+ * one token and is refused when the bucket is empty. A bucket is kept as a
+ * single number, the time at which it will be full again, and an attempt
+ * advances it with one compare-and-set, so keys never share a lock and a
+ * busy key does not slow the others.
+ * <p>
+ * A bucket that has refilled completely behaves like a new one, so such
+ * buckets are dropped whenever the limiter grows past its size. If it is
+ * still full of active buckets, a key it has no room for is not limited by
+ * it at all, rather than sharing a bucket with every other such key, so a
+ * flood of made-up keys can neither grow it without limit nor lock out
+ * everyone else. It is meant to sit behind a limiter on a coarser key,
+ * e.g. usernames behind client addresses, which then limits those keys.
+ */
+public class RateLimiter {
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxKeys;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // Sweeps scan every bucket, so a flood of new keys triggers one at most this often
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * Constructor to create a limiter.
+     * @param burst The most attempts a key can make at once
+     * @param refillMillis How long a key waits for each further attempt
+     * @param maxKeys The largest number of keys tracked separately
+     */
+    public RateLimiter(int burst, long refillMillis, int maxKeys) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(refillMillis);
+        this.burstNanos = intervalNanos * burst;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Takes a token for a key if one is left.
+     * @param key The key, e.g. a username
+     * @return 0 if the attempt is allowed, including when the limiter has
+     *         no room to track the key, otherwise how many milliseconds
+     *         until the key has a token again
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                sweep(now);
+            }
+            if (buckets.size() >= maxKeys) {
+                return 0;
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long full = bucket.get();
+            // The bucket is full again at 'full'; taking a token pushes that one interval later
+            long next = Math.max(full - now, 0) + intervalNanos;
+            if (next > burstNanos) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next - burstNanos));
+            }
+            if (bucket.compareAndSet(full, now + next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drops the buckets that have refilled completely.
+     */
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    /**
+     * Returns the number of keys tracked separately.
+     */
+    public int size() {
+        return buckets.size();
+    }
+}
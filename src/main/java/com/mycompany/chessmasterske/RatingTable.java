@@ -0,0 +1,120 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class maps usernames to ratings and game counts with open addressing
+ * over plain arrays, so a rating update does no boxing and no allocation.
+ * It is not thread-safe; EloEngine guards it.
+ */
+final class RatingTable {
+    private String[] keys;
+    private int[] ratings;
+    private int[] games;
+    private int size;
+
+    /**
+     * Constructor to create a table sized for an expected number of players.
+     * @param expectedPlayers The number of players expected
+     */
+    RatingTable(int expectedPlayers) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedPlayers * 2 - 1)) << 1;
+        keys = new String[capacity];
+        ratings = new int[capacity];
+        games = new int[capacity];
+    }
+
+    /**
+     * Returns the slot of a player, or -1 if the player is not in the table.
+     */
+    int slotOf(String username) {
+        int mask = keys.length - 1;
+        int slot = mix(username.hashCode()) & mask;
+        while (keys[slot] != null) {
+            if (keys[slot].equals(username)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot of a player, adding the player with the given rating
+     * if needed. Slots stay valid until the next call that adds a player.
+     */
+    int slotOrAdd(String username, int initialRating) {
+        int mask = keys.length - 1;
+        int slot = mix(username.hashCode()) & mask;
+        while (keys[slot] != null) {
+            if (keys[slot].equals(username)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotOrAdd(username, initialRating);
+        }
+        keys[slot] = username;
+        ratings[slot] = initialRating;
+        size++;
+        return slot;
+    }
+
+    String username(int slot) {
+        return keys[slot];
+    }
+
+    int rating(int slot) {
+        return ratings[slot];
+    }
+
+    void setRating(int slot, int rating) {
+        ratings[slot] = rating;
+    }
+
+    int games(int slot) {
+        return games[slot];
+    }
+
+    void addGame(int slot) {
+        games[slot]++;
+    }
+
+    void setGames(int slot, int count) {
+        games[slot] = count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots, for iterating with {@link #username(int)};
+     * empty slots have a null username.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldRatings = ratings;
+        int[] oldGames = games;
+        keys = new String[oldKeys.length * 2];
+        ratings = new int[keys.length];
+        games = new int[keys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slotOrAdd(oldKeys[i], oldRatings[i]);
+                games[slot] = oldGames[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        // Spread the bits so similar usernames don't cluster
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
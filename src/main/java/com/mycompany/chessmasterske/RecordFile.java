@@ -0,0 +1,621 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * This class is the storage engine shared by users.txt and the
+ * *_credentials.txt logs. Each file stays a plain text file with one record
+ * per line, but it is accessed through memory mapped segments and a sidecar
+ * index (e.g. users.txt.idx) that stores the end offset of every record as
+ * an 8-byte value. Appends copy straight into the mapped region and reads of
+ * record n jump to its offset without scanning the lines before it. The
+ * offsets are read from the mapped index itself rather than copied onto
+ * the heap, so a log of millions of records costs no heap for them.
+ *
+ * One instance is shared per file; use {@link #open(String)} to get it.
+ * Open files are closed by a shutdown hook, which also trims the mapped
+ * padding off the end of each file.
+ *
+ * A file can be replaced by a compacted copy while it is open (see
+ * {@link LogCompactor}). Record numbers refer to the file's current
+ * generation; after a compaction the same record usually has a lower number.
+ *
+ * A file opened with {@link #openShared(String)} may be appended to by
+ * several processes at once. Appends then hold a lock on a sidecar file
+ * (e.g. users-0.txt.lock) and first pick up whatever other processes have
+ * appended, so each record lands whole after the last one; other
+ * processes' records are otherwise seen after {@link #refresh()}. A shared
+ * file is never cut back to its data, since another process may still have
+ * the padding mapped, and cannot be compacted in place.
+ */
+public class RecordFile implements AutoCloseable {
+    private static final Map<Path, RecordFile> OPEN_FILES = new ConcurrentHashMap<>();
+    private static final byte NEWLINE = '\n';
+    private static final List<Runnable> BEFORE_CLOSE = new CopyOnWriteArrayList<>();
+    // Index entries checked against the data on open; see loadIndex
+    private static final int CHECKED_TAIL = 65536;
+    private static final int SAMPLES = 64;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(RecordFile::closeAll, "record-file-close"));
+    }
+
+    private final Path path;
+    private final boolean shared;
+    // Held around appends to a shared file: first by one thread of this process, then across processes
+    private final ReentrantLock processLock = new ReentrantLock();
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+    private MappedFile data;
+    private MappedFile index;
+    // Records whose end offsets (exclusive, including the newline) the index
+    // holds. Volatile so reads can run without the lock: an entry is written
+    // before the count that makes it visible
+    private volatile int count;
+    private volatile long generation;
+    // Held for reading by every read and for writing while replaceWith swaps
+    // the mapping, so a read never pairs one generation's count with another's
+    // index, nor touches a mapping that has been closed
+    private final ReentrantReadWriteLock mappingLock = new ReentrantReadWriteLock();
+    private long dataEnd;
+    // Bytes appended since the last force(), so force() only syncs what changed
+    private long dirtyFrom = Long.MAX_VALUE;
+    private long dirtyIndexFrom = Long.MAX_VALUE;
+
+    private RecordFile(Path path, boolean shared) throws IOException {
+        this.path = path;
+        this.shared = shared;
+        if (shared) {
+            lockChannel = FileChannel.open(path.resolveSibling(path.getFileName() + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lockShared();
+            try {
+                openFiles();
+            } finally {
+                unlockShared();
+            }
+        } else {
+            openFiles();
+        }
+    }
+
+    /**
+     * Returns the shared record file for the given file name, opening it on
+     * first use.
+     * @param fileName The log file, e.g. "users.txt"
+     * @return The open record file
+     * @throws IOException if the file or its index cannot be opened
+     */
+    public static RecordFile open(String fileName) throws IOException {
+        return open(fileName, false);
+    }
+
+    /**
+     * Returns the record file for the given file name, opening it on first
+     * use so that several processes can append to it.
+     * @param fileName The log file, e.g. "users-0.txt"
+     * @return The open record file
+     * @throws IOException if the file or its index cannot be opened
+     * @throws IllegalStateException if this process already has the file
+     *         open for itself alone
+     */
+    public static RecordFile openShared(String fileName) throws IOException {
+        RecordFile file = open(fileName, true);
+        if (!file.shared) {
+            throw new IllegalStateException(file.path + " is already open unshared");
+        }
+        return file;
+    }
+
+    private static RecordFile open(String fileName, boolean shared) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        synchronized (OPEN_FILES) {
+            RecordFile file = OPEN_FILES.get(path);
+            if (file == null) {
+                file = new RecordFile(path, shared);
+                OPEN_FILES.put(path, file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Returns whether a file is open in this process.
+     * @param path The absolute, normalized path of the file
+     */
+    static boolean isOpen(Path path) {
+        return OPEN_FILES.containsKey(path);
+    }
+
+    /**
+     * Creates a file that is not shared through {@link #open(String)}, e.g.
+     * a compacted copy that is still being written. Any existing file and
+     * index at the path are replaced.
+     * @param path The file to create
+     * @return The empty record file
+     * @throws IOException if the file cannot be created
+     */
+    static RecordFile create(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(indexPath(path));
+        return new RecordFile(path, false);
+    }
+
+    /**
+     * Registers a task to run at shutdown before the files are closed, e.g.
+     * to flush records still queued for writing.
+     * @param task The task to run
+     */
+    static void beforeClose(Runnable task) {
+        BEFORE_CLOSE.add(task);
+    }
+
+    /**
+     * Closes every open record file.
+     */
+    public static void closeAll() {
+        for (Runnable task : BEFORE_CLOSE) {
+            task.run();
+        }
+        synchronized (OPEN_FILES) {
+            for (RecordFile file : OPEN_FILES.values()) {
+                try {
+                    file.closeFiles();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            OPEN_FILES.clear();
+        }
+    }
+
+    /**
+     * Returns the path of the sidecar index for a data file.
+     * @param path The data file
+     * @return The index file next to it
+     */
+    static Path indexPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".idx");
+    }
+
+    private void openFiles() throws IOException {
+        data = new MappedFile(path);
+        index = new MappedFile(indexPath(path));
+        count = 0;
+        dataEnd = 0;
+        long dataSize = data.size();
+        loadIndex(dataSize);
+        int indexed = count;
+        catchUp(dataSize);
+        if (indexed < count) {
+            dirtyIndexFrom = (long) indexed * Long.BYTES;
+        }
+        // Drop padding and stale entries left behind by a run that did not
+        // shut down cleanly. Other processes may have the padding mapped, and
+        // a file that is still mapped cannot always be truncated; the zero
+        // padding is skipped again on the next open, so only the stale
+        // entries must go
+        boolean trimmed = !shared && data.truncate(dataEnd) && index.truncate((long) count * Long.BYTES);
+        if (!trimmed) {
+            for (long at = (long) count * Long.BYTES; at < index.size() && index.getLong(at) != 0; at += Long.BYTES) {
+                index.putLong(at, 0);
+            }
+        }
+    }
+
+    /**
+     * Reads the sidecar index, keeping only the entries that still agree
+     * with the data file. Offsets must increase and stay inside the file;
+     * whether each one really ends a line is checked for the last
+     * {@link #CHECKED_TAIL} entries, which is where a crash can leave entries
+     * whose data never reached the disk (appends are forced in order, data
+     * before index), and for {@link #SAMPLES} entries spread over the rest,
+     * which catches a file edited behind the index's back. If a sample
+     * fails, every entry is checked.
+     */
+    private void loadIndex(long dataSize) throws IOException {
+        // Entries whose offsets increase and stay inside the data file
+        int entries = (int) Math.min(Integer.MAX_VALUE, index.size() / Long.BYTES);
+        int inRange = 0;
+        long previous = 0;
+        while (inRange < entries) {
+            long end = index.getLong((long) inRange * Long.BYTES);
+            if (end <= previous || end > dataSize) {
+                break;
+            }
+            previous = end;
+            inRange++;
+        }
+        int checkedFrom = Math.max(0, inRange - CHECKED_TAIL);
+        int stride = Math.max(1, checkedFrom / SAMPLES);
+        int valid = checkedFrom;
+        for (int i = 0; i < checkedFrom; i += stride) {
+            if (!endsLine(i)) {
+                // The index does not describe this file; keep only what checks out line by line
+                valid = 0;
+                break;
+            }
+        }
+        while (valid < inRange && endsLine(valid)) {
+            valid++;
+        }
+        count = valid;
+        dataEnd = valid == 0 ? 0 : index.getLong((long) (valid - 1) * Long.BYTES);
+    }
+
+    private boolean endsLine(int recordNumber) throws IOException {
+        return data.get(index.getLong((long) recordNumber * Long.BYTES) - 1) == NEWLINE;
+    }
+
+    /**
+     * Indexes any lines in the data file past the last indexed record, e.g.
+     * lines written before the index existed.
+     */
+    private void catchUp(long dataSize) throws IOException {
+        long position = dataEnd;
+        while (position < dataSize) {
+            byte b = data.get(position);
+            if (b == 0) {
+                // Mapped padding from an earlier run
+                break;
+            }
+            position++;
+            if (b == NEWLINE) {
+                addEnd(position);
+            }
+        }
+        if (position > dataEnd) {
+            // Terminate a trailing line that was written without a newline
+            data.put(position, new byte[] {NEWLINE}, 0, 1);
+            addEnd(position + 1);
+        }
+    }
+
+    private void addEnd(long end) throws IOException {
+        index.putLong((long) count * Long.BYTES, end);
+        dataEnd = end;
+        count = count + 1;
+    }
+
+    /**
+     * Returns whether other processes may append to this file, i.e. whether
+     * it was opened with {@link #openShared(String)}.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Takes the lock that appends to a shared file hold, waiting for other
+     * threads and processes to release it. The lock is reentrant; every call
+     * must be matched by {@link #unlockShared()}. Does nothing for a file
+     * that is not shared.
+     * @throws IOException if the lock file cannot be locked
+     */
+    void lockShared() throws IOException {
+        if (!shared) {
+            return;
+        }
+        processLock.lock();
+        if (processLock.getHoldCount() == 1) {
+            try {
+                fileLock = lockFile();
+            } catch (IOException | RuntimeException ex) {
+                processLock.unlock();
+                throw ex;
+            }
+        }
+    }
+
+    private FileLock lockFile() throws IOException {
+        try {
+            return lockChannel.lock();
+        } catch (ClosedChannelException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            // Linux tracks these locks per process, so two threads of this
+            // process holding and waiting for locks of different files can
+            // look like a deadlock with another process even though every
+            // process takes them in the same order. Poll instead
+            while (true) {
+                FileLock lock = lockChannel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for " + path + ".lock");
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the lock taken with {@link #lockShared()}.
+     * @throws IOException if the lock file cannot be unlocked
+     */
+    void unlockShared() throws IOException {
+        if (!shared) {
+            return;
+        }
+        try {
+            if (processLock.getHoldCount() == 1) {
+                fileLock.release();
+                fileLock = null;
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Picks up the records other processes have appended to a shared file
+     * since this process last looked. Their index entries are written after
+     * their data, so each record found is complete.
+     * @return The number of records in the file
+     * @throws IOException if the index cannot be read
+     */
+    public synchronized long refresh() throws IOException {
+        if (shared) {
+            long end;
+            while ((end = index.getLong((long) count * Long.BYTES)) > dataEnd) {
+                VarHandle.loadLoadFence();
+                if (data.get(end - 1) != NEWLINE) {
+                    break;
+                }
+                // The other process wrote the entry; only take it into the count
+                dataEnd = end;
+                count = count + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends one record to the end of the file. A shared file is locked
+     * for the append and refreshed first.
+     * @param record The record text; it must not contain a line break
+     * @return The record number of the appended record
+     * @throws IOException if the record could not be written
+     */
+    public long append(String record) throws IOException {
+        if (!shared) {
+            return appendAtEnd(record);
+        }
+        lockShared();
+        try {
+            refresh();
+            return appendAtEnd(record);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    private synchronized long appendAtEnd(String record) throws IOException {
+        byte[] bytes = encode(record);
+        long start = dataEnd;
+        data.put(start, bytes, 0, bytes.length);
+        dirtyFrom = Math.min(dirtyFrom, start);
+        // Other processes take the index entry as the sign that the data is complete
+        VarHandle.storeStoreFence();
+        dirtyIndexFrom = Math.min(dirtyIndexFrom, (long) count * Long.BYTES);
+        addEnd(start + bytes.length);
+        return count - 1;
+    }
+
+    private static byte[] encode(String record) {
+        if (record.indexOf('\n') >= 0 || record.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Record must not contain a line break");
+        }
+        byte[] text = record.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = Arrays.copyOf(text, text.length + 1);
+        bytes[text.length] = NEWLINE;
+        return bytes;
+    }
+
+    /**
+     * Reads one record by its record number. Reads run alongside appends
+     * and each other, and wait only while the file is being replaced.
+     * @param recordNumber The record to read, starting at 0
+     * @return The record text without the line break
+     * @throws IOException if the record could not be read
+     */
+    public String read(long recordNumber) throws IOException {
+        byte[] bytes;
+        mappingLock.readLock().lock();
+        try {
+            if (recordNumber < 0 || recordNumber >= count) {
+                throw new IndexOutOfBoundsException("No record " + recordNumber + " in " + path);
+            }
+            long start = recordNumber == 0 ? 0 : index.getLong((recordNumber - 1) * Long.BYTES);
+            bytes = new byte[(int) (index.getLong(recordNumber * Long.BYTES) - start - 1)];
+            data.get(start, bytes, 0, bytes.length);
+        } finally {
+            mappingLock.readLock().unlock();
+        }
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            // Line written by a Windows BufferedWriter.newLine()
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Passes every record from the given record number onwards to the
+     * consumer, in file order.
+     * @param from The first record to visit
+     * @param consumer The consumer to receive each record
+     * @throws IOException if a record could not be read
+     */
+    public void forEach(long from, Consumer<String> consumer) throws IOException {
+        long end = count();
+        for (long i = from; i < end; i++) {
+            consumer.accept(read(i));
+        }
+    }
+
+    /**
+     * Passes every record to the consumer, in file order.
+     * @param consumer The consumer to receive each record
+     * @throws IOException if a record could not be read
+     */
+    public void forEach(Consumer<String> consumer) throws IOException {
+        forEach(0, consumer);
+    }
+
+    /**
+     * Returns the end offset of a record: the number of bytes taken by it
+     * and every record before it, line breaks included.
+     * @param recordNumber The record, starting at 0
+     * @throws IOException if the index cannot be read
+     */
+    long endOf(long recordNumber) throws IOException {
+        mappingLock.readLock().lock();
+        try {
+            if (recordNumber < 0 || recordNumber >= count) {
+                throw new IndexOutOfBoundsException("No record " + recordNumber + " in " + path);
+            }
+            return index.getLong(recordNumber * Long.BYTES);
+        } finally {
+            mappingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of records in the file.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes of record data in the file.
+     */
+    public synchronized long byteSize() {
+        return dataEnd;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns how many times the file has been replaced by a compacted copy
+     * since it was opened. Record numbers read in an earlier generation may
+     * refer to different records now.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Replaces this file with a compacted copy. Records appended to this
+     * file from the given record number onwards, i.e. while the copy was
+     * being written, are first copied to the end of the copy; appends wait
+     * only for that and the rename. The copy is closed and takes this
+     * file's place on disk, index included.
+     * @param compacted The copy, from {@link #create(Path)}
+     * @param from The first record of this file that is not in the copy
+     * @throws IOException if the copy could not be completed or renamed;
+     *         the file is then reopened from whichever data is on disk
+     */
+    synchronized void replaceWith(RecordFile compacted, long from) throws IOException {
+        if (shared) {
+            throw new IllegalStateException(path + " is shared with other processes and cannot be replaced");
+        }
+        for (long i = from; i < count; i++) {
+            compacted.append(read(i));
+        }
+        compacted.force();
+        compacted.closeFiles();
+        // Wait for the reads of the old mapping to finish; later reads wait for the new one
+        mappingLock.writeLock().lock();
+        Path indexPath = indexPath(path);
+        boolean replaced = false;
+        try {
+            // Unmaps the old files, as Windows will not replace a mapped file
+            closeFiles();
+            // Remove the old index first: if the rename is interrupted, the
+            // index is rebuilt from whichever data file is in place
+            Files.deleteIfExists(indexPath);
+            Files.move(compacted.path, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexPath(compacted.path), indexPath, StandardCopyOption.ATOMIC_MOVE);
+            data = new MappedFile(path);
+            index = new MappedFile(indexPath);
+            dataEnd = compacted.dataEnd;
+            count = compacted.count;
+            replaced = true;
+        } finally {
+            try {
+                if (!replaced) {
+                    openFiles();
+                }
+            } finally {
+                dirtyFrom = Long.MAX_VALUE;
+                dirtyIndexFrom = Long.MAX_VALUE;
+                generation++;
+                mappingLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Flushes everything appended since the last call to the storage device.
+     */
+    public synchronized void force() {
+        data.force(dirtyFrom, dataEnd);
+        index.force(dirtyIndexFrom, (long) count * Long.BYTES);
+        dirtyFrom = Long.MAX_VALUE;
+        dirtyIndexFrom = Long.MAX_VALUE;
+    }
+
+    private synchronized void closeFiles() throws IOException {
+        mappingLock.writeLock().lock();
+        try {
+            if (shared) {
+                data.close();
+                index.close();
+                lockChannel.close();
+            } else {
+                data.close(dataEnd);
+                index.close((long) count * Long.BYTES);
+            }
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes this file and removes it from the shared set; the next
+     * {@link #open(String)} reopens it from disk.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_FILES) {
+            OPEN_FILES.remove(path, this);
+            closeFiles();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.mycompany.chessmasterske;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class converts a record log written before it had a schema to the
+ * schema's format. The old file is read line by line and each record is
+ * written straight to a temporary file, so the whole file is never in
+ * memory; the temporary file then replaces the old one in one rename. Lines
+ * the old format cannot parse are kept in a ".rejected" file next to the
+ * log rather than dropped. A log that already starts with the schema's
+ * header is left alone, and a missing log is created with just the header.
+ */
+public final class RecordMigration {
+    private RecordMigration() {
+    }
+
+    /**
+     * Migrates a log to its schema if it has not been migrated yet. This
+     * must run before the log is opened as a {@link RecordFile}.
+     * @param fileName The log file, e.g. "users.txt"
+     * @param schema The schema of the log
+     * @return The number of records converted, 0 if there was nothing to do
+     * @throws IOException if the log cannot be read or replaced, or starts
+     *         with the header of a different schema
+     */
+    public static <T> long migrate(String fileName, RecordSchema<T> schema) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        if (RecordFile.isOpen(path)) {
+            throw new IllegalStateException(fileName + " is already open");
+        }
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            Files.write(path, (schema.header() + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.deleteIfExists(RecordFile.indexPath(path));
+            return 0;
+        }
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String first = in.readLine();
+            if (first != null && first.startsWith("#")) {
+                if (first.equals(schema.header())) {
+                    return 0;
+                }
+                throw new IOException(fileName + " has an unknown schema: " + first);
+            }
+        }
+        return convert(path, schema);
+    }
+
+    private static <T> long convert(Path path, RecordSchema<T> schema) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".migrating");
+        Path rejectedPath = path.resolveSibling(path.getFileName() + ".rejected");
+        long converted = 0;
+        BufferedWriter rejected = null;
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(schema.header());
+            out.write('\n');
+            String line;
+            while ((line = in.readLine()) != null) {
+                int padding = line.indexOf('\0');
+                if (padding >= 0) {
+                    // Mapped padding left by a run that did not shut down cleanly
+                    line = line.substring(0, padding);
+                }
+                T record = line.isEmpty() ? null : schema.decodeLegacy(line);
+                if (record != null) {
+                    out.write(schema.encode(record));
+                    out.write('\n');
+                    converted++;
+                } else if (!line.isEmpty()) {
+                    if (rejected == null) {
+                        rejected = Files.newBufferedWriter(rejectedPath, StandardCharsets.UTF_8,
+                                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    }
+                    rejected.write(line);
+                    rejected.write('\n');
+                }
+                if (padding >= 0) {
+                    break;
+                }
+            }
+        } finally {
+            if (rejected != null) {
+                rejected.close();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        // The old index describes the old lines; it is rebuilt on open
+        Files.deleteIfExists(RecordFile.indexPath(path));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return converted;
+    }
+}
@@ -0,0 +1,377 @@
+package com.mycompany.chessmasterske;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * This class describes the layout of one record log and converts between
+ * its lines and typed records. Every log uses the same encoding: fields are
+ * separated by commas, and a comma, backslash or line break inside a field
+ * is escaped with a backslash ("\,", "\\", "\n", "\r"). A line starting
+ * with '#' is the header that names the schema; a field that starts a line
+ * with '#' is written as "\#". Lines are parsed in a single pass over their
+ * characters, without regular expressions or String.split, and a field
+ * without escapes is taken as a substring of the line.
+ * <p>
+ * Each schema also knows the ad-hoc format its log used before schemas
+ * existed, so {@link RecordMigration} can convert old files, and which
+ * leading fields identify a record, so {@link LogCompactor} can drop the
+ * records a later one replaces.
+ *
+ * @param <T> The type of record in the log
+ */
+public final class RecordSchema<T> {
+    private static final char SEPARATOR = ',';
+    private static final char ESCAPE = '\\';
+    private static final char HEADER = '#';
+
+    /** users.txt: username,email,password,eloRating */
+    public static final RecordSchema<UserRecord> USERS = new RecordSchema<>("users", 1,
+            new String[] {"username", "email", "password", "eloRating"}, 1,
+            fields -> new UserRecord(fields[0], fields[1], fields[2], parseRating(fields[3])),
+            user -> new String[] {user.getUsername(), user.getEmail(), user.getPassword(),
+                    Integer.toString(user.getEloRating())},
+            RecordSchema::legacyUser);
+
+    /** lesson_credentials.txt: id,username,fideId,coach,description */
+    public static final RecordSchema<LessonRecord> LESSONS = new RecordSchema<>("lessons", 1,
+            new String[] {"id", "username", "fideId", "coach", "description"}, 5,
+            fields -> new LessonRecord(fields[0], fields[1], fields[2], fields[3], fields[4]),
+            lesson -> new String[] {lesson.getId(), lesson.getUsername(), lesson.getFideId(), lesson.getCoach(),
+                    lesson.getDescription()},
+            RecordSchema::legacyLesson);
+
+    /** puzzle_credentials.txt: id,username,difficulty */
+    public static final RecordSchema<PuzzleRecord> PUZZLES = new RecordSchema<>("puzzles", 1,
+            new String[] {"id", "username", "difficulty"}, 3,
+            fields -> new PuzzleRecord(fields[0], fields[1], fields[2]),
+            puzzle -> new String[] {puzzle.getId(), puzzle.getUsername(), puzzle.getDifficulty()},
+            RecordSchema::legacyPuzzle);
+
+    /** game_credentials.txt: id,whitePlayer,blackPlayer,result */
+    public static final RecordSchema<GameResult> GAMES = new RecordSchema<>("games", 1,
+            new String[] {"id", "whitePlayer", "blackPlayer", "result"}, 4,
+            fields -> game(fields[0], fields[1], fields[2], fields[3]),
+            game -> new String[] {game.getId(), game.getWhitePlayer(), game.getBlackPlayer(), game.getResult()},
+            RecordSchema::legacyGame);
+
+    /** coaching_credentials.txt: id,name,bio,student */
+    public static final RecordSchema<CoachingRecord> COACHING = new RecordSchema<>("coaching", 1,
+            new String[] {"id", "name", "bio", "student"}, 4,
+            fields -> new CoachingRecord(fields[0], fields[1], fields[2], fields[3]),
+            coaching -> new String[] {coaching.getId(), coaching.getName(), coaching.getBio(), coaching.getStudent()},
+            RecordSchema::legacyCoaching);
+
+    private final String name;
+    private final int version;
+    private final String[] fieldNames;
+    private final int keyFields;
+    private final Function<String[], T> reader;
+    private final Function<T, String[]> writer;
+    private final Function<String, T> legacyReader;
+    private final String header;
+
+    private RecordSchema(String name, int version, String[] fieldNames, int keyFields, Function<String[], T> reader,
+                         Function<T, String[]> writer, Function<String, T> legacyReader) {
+        this.name = name;
+        this.version = version;
+        this.fieldNames = fieldNames;
+        this.keyFields = keyFields;
+        this.reader = reader;
+        this.writer = writer;
+        this.legacyReader = legacyReader;
+        this.header = HEADER + name + " v" + version + ": " + String.join(",", fieldNames);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getFieldCount() {
+        return fieldNames.length;
+    }
+
+    /**
+     * Returns the names of the fields, in the order they are written.
+     */
+    public String[] getFieldNames() {
+        return fieldNames.clone();
+    }
+
+    /**
+     * Returns the header line written at the top of the log, e.g.
+     * "#users v1: username,email,password,eloRating".
+     */
+    public String header() {
+        return header;
+    }
+
+    /**
+     * Parses one line of the log.
+     * @param line The line
+     * @return The record, or null for the header or a malformed line
+     */
+    public T decode(String line) {
+        String[] fields = new String[fieldNames.length];
+        if (decodeFields(line, fields) != fields.length) {
+            return null;
+        }
+        return reader.apply(fields);
+    }
+
+    /**
+     * Returns the key that identifies a record: of two records with the
+     * same key, the later one replaces the earlier. Users are keyed by
+     * username; the other logs by the whole record, so only exact repeats
+     * are replaced.
+     * @param line The record's line
+     * @param fields The record's fields, as decoded from the line
+     * @return The key
+     */
+    String key(String line, String[] fields) {
+        return keyFields == fields.length ? line : encodeFields(Arrays.copyOf(fields, keyFields));
+    }
+
+    /**
+     * Formats a record as one line of the log.
+     * @param record The record
+     * @return The line, without a line break
+     */
+    public String encode(T record) {
+        return encodeFields(writer.apply(record));
+    }
+
+    /**
+     * Returns the fields of a record, unescaped, in the order they are written.
+     * @param record The record
+     * @return The fields
+     */
+    public String[] fields(T record) {
+        return writer.apply(record);
+    }
+
+    /**
+     * Parses a line in the format the log used before it had a schema.
+     * @param line The old line
+     * @return The record, or null if the line is malformed
+     */
+    T decodeLegacy(String line) {
+        return legacyReader.apply(line);
+    }
+
+    /**
+     * Splits a line into its unescaped fields.
+     * @param line The line
+     * @param fields Receives the fields
+     * @return The number of fields, or -1 for a header line or a line with
+     *         more fields than the array holds
+     */
+    static int decodeFields(String line, String[] fields) {
+        int length = line.length();
+        if (length > 0 && line.charAt(0) == HEADER) {
+            return -1;
+        }
+        int count = 0;
+        int start = 0;
+        if (line.indexOf(ESCAPE) < 0) {
+            // Most lines have no escapes; find each separator with indexOf
+            while (count < fields.length) {
+                int end = line.indexOf(SEPARATOR, start);
+                fields[count++] = line.substring(start, end < 0 ? length : end);
+                if (end < 0) {
+                    return count;
+                }
+                start = end + 1;
+            }
+            return -1;
+        }
+        // Only fields with escapes are copied through the builder
+        StringBuilder unescaped = null;
+        boolean escaped = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? line.charAt(i) : SEPARATOR;
+            if (c == ESCAPE && i + 1 < length) {
+                if (unescaped == null) {
+                    unescaped = new StringBuilder();
+                }
+                unescaped.append(line, start, i).append(unescape(line.charAt(++i)));
+                start = i + 1;
+                escaped = true;
+            } else if (c == SEPARATOR) {
+                if (count == fields.length) {
+                    return -1;
+                }
+                if (escaped) {
+                    fields[count++] = unescaped.append(line, start, i).toString();
+                    unescaped.setLength(0);
+                    escaped = false;
+                } else {
+                    fields[count++] = line.substring(start, i);
+                }
+                start = i + 1;
+            }
+        }
+        return count;
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            default:
+                return c;
+        }
+    }
+
+    /**
+     * Joins fields into one line, escaping as needed.
+     * @param fields The fields; null is written as an empty field
+     * @return The line
+     */
+    static String encodeFields(String[] fields) {
+        int capacity = fields.length;
+        for (String field : fields) {
+            capacity += field == null ? 0 : field.length();
+        }
+        StringBuilder line = new StringBuilder(capacity + 8);
+        for (int f = 0; f < fields.length; f++) {
+            if (f > 0) {
+                line.append(SEPARATOR);
+            }
+            String field = fields[f] == null ? "" : fields[f];
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                switch (c) {
+                    case SEPARATOR:
+                    case ESCAPE:
+                        line.append(ESCAPE).append(c);
+                        break;
+                    case '\n':
+                        line.append(ESCAPE).append('n');
+                        break;
+                    case '\r':
+                        line.append(ESCAPE).append('r');
+                        break;
+                    case HEADER:
+                        if (line.length() == 0) {
+                            line.append(ESCAPE);
+                        }
+                        line.append(c);
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+        }
+        return line.toString();
+    }
+
+    private static int parseRating(String field) {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException ex) {
+            // Keep the user loginable even if the rating column is damaged
+            return 0;
+        }
+    }
+
+    private static GameResult game(String id, String white, String black, String result) {
+        if (white.isEmpty() || black.isEmpty()
+                || !(GameResult.WHITE.equals(result) || GameResult.BLACK.equals(result) || GameResult.DRAW.equals(result))) {
+            return null;
+        }
+        return new GameResult(id, white, black, result);
+    }
+
+    /**
+     * Parses an old users.txt line, "username,email,password[,eloRating]".
+     */
+    private static UserRecord legacyUser(String line) {
+        int email = line.indexOf(',');
+        int password = email < 0 ? -1 : line.indexOf(',', email + 1);
+        if (password < 0 || email == 0) {
+            return null;
+        }
+        int rating = line.indexOf(',', password + 1);
+        int ratingEnd = rating < 0 ? -1 : line.indexOf(',', rating + 1);
+        return new UserRecord(line.substring(0, email), line.substring(email + 1, password),
+                line.substring(password + 1, rating < 0 ? line.length() : rating),
+                rating < 0 ? 0 : parseRating(line.substring(rating + 1, ratingEnd < 0 ? line.length() : ratingEnd)));
+    }
+
+    /**
+     * Parses an old lesson line, "id,username,fideId,coach,description",
+     * where the description may itself contain commas.
+     */
+    private static LessonRecord legacyLesson(String line) {
+        int[] commas = new int[4];
+        int from = 0;
+        for (int i = 0; i < commas.length; i++) {
+            commas[i] = line.indexOf(',', from);
+            if (commas[i] < 0) {
+                return null;
+            }
+            from = commas[i] + 1;
+        }
+        return new LessonRecord(line.substring(0, commas[0]), line.substring(commas[0] + 1, commas[1]),
+                line.substring(commas[1] + 1, commas[2]), line.substring(commas[2] + 1, commas[3]),
+                line.substring(commas[3] + 1));
+    }
+
+    /**
+     * Parses an old puzzle line, "ID: ..., Username: ..., Difficulty: ...".
+     */
+    private static PuzzleRecord legacyPuzzle(String line) {
+        String id = legacyField(line, "ID: ", ", Username: ");
+        String username = legacyField(line, ", Username: ", ", Difficulty: ");
+        String difficulty = legacyField(line, ", Difficulty: ", null);
+        return id == null || username == null || difficulty == null ? null : new PuzzleRecord(id, username, difficulty);
+    }
+
+    /**
+     * Parses an old game line,
+     * "Your ID: ..., White Player: ..., Black Player: ..., Result: ...".
+     */
+    private static GameResult legacyGame(String line) {
+        String id = legacyField(line, "Your ID: ", ", White Player: ");
+        String white = legacyField(line, ", White Player: ", ", Black Player: ");
+        String black = legacyField(line, ", Black Player: ", ", Result: ");
+        String result = legacyField(line, ", Result: ", null);
+        if (white == null || black == null || result == null) {
+            return null;
+        }
+        return game(id == null ? "" : id, white, black, result);
+    }
+
+    /**
+     * Parses an old coaching line,
+     * "ID: ..., Name: ..., Coach Bio: ..., Student: ...". The bio is free
+     * text, so the student is taken from the last "Student: " key.
+     */
+    private static CoachingRecord legacyCoaching(String line) {
+        int name = line.indexOf(", Name: ");
+        int bio = name < 0 ? -1 : line.indexOf(", Coach Bio: ", name);
+        int student = line.lastIndexOf(", Student: ");
+        if (!line.startsWith("ID: ") || bio < 0 || student < bio) {
+            return null;
+        }
+        return new CoachingRecord(line.substring("ID: ".length(), name), line.substring(name + ", Name: ".length(), bio),
+                line.substring(bio + ", Coach Bio: ".length(), student), line.substring(student + ", Student: ".length()));
+    }
+
+    private static String legacyField(String line, String key, String nextKey) {
+        int start = line.indexOf(key);
+        if (start < 0) {
+            return null;
+        }
+        start += key.length();
+        int end = nextKey == null ? line.length() : line.indexOf(nextKey, start);
+        return end < 0 ? null : line.substring(start, end).trim();
+    }
+}
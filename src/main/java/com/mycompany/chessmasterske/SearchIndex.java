@@ -0,0 +1,328 @@
+package com.mycompany.chessmasterske;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class finds players, coaches and lesson requests from what a user
+ * types, for lookups and typeahead. It is an inverted index kept in
+ * memory: every document is split into lower-cased terms (each word of a
+ * username, email, coach name or lesson description, plus the whole
+ * username, email and name), and a {@link PrefixTrie} maps each term to the
+ * documents that contain it, so a query only walks the terms that start
+ * with it. A search can leave out players' emails, both as terms and as
+ * details, for members who may look players up but not learn their
+ * emails one typed character at a time.
+ * <p>
+ * A query matches the documents with a term starting with the whole query,
+ * e.g. "anna.k@", and then those where every word of the query starts a
+ * term. Documents are added one at a time as records are appended; adding
+ * one the index already has changes nothing. Searches may run while
+ * documents are added.
+ */
+public final class SearchIndex {
+    public enum Kind {
+        PLAYER, COACH, LESSON
+    }
+
+    /**
+     * This class is one search result.
+     */
+    public static final class Hit {
+        private final Kind kind;
+        private final String name;
+        private final String detail;
+
+        Hit(Kind kind, String name, String detail) {
+            this.kind = kind;
+            this.name = name;
+            this.detail = detail;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the username, the coach's name or the lesson's ID.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the player's email (empty if emails were left out), the
+         * coach's bio (empty if unknown) or the lesson's student, coach and
+         * description.
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + (detail.isEmpty() ? "" : " - " + detail);
+        }
+    }
+
+    /**
+     * This class is one indexed document.
+     */
+    private static final class Document {
+        final Kind kind;
+        final String name;
+        String detail;
+        final String[] terms;
+        // The terms before this index do not come from an email
+        final int publicTerms;
+
+        Document(Kind kind, String name, String detail, String[] terms, int publicTerms) {
+            this.kind = kind;
+            this.name = name;
+            this.detail = detail;
+            this.terms = terms;
+            this.publicTerms = publicTerms;
+        }
+
+        boolean hasTermStartingWith(String prefix, boolean includeEmails) {
+            int searched = includeEmails ? terms.length : publicTerms;
+            for (int i = 0; i < searched; i++) {
+                if (terms[i].startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasPublicTerm(String term) {
+            for (int i = 0; i < publicTerms; i++) {
+                if (terms[i].equals(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PrefixTrie trie = new PrefixTrie();
+    private final List<Document> documents = new ArrayList<>();
+    // Lower-cased coach names to their documents; players are found through the trie
+    private final Map<String, Integer> coaches = new HashMap<>();
+    // Lessons, as their log lines, since only an exact repeat is the same lesson
+    private final Set<String> lessons = new HashSet<>();
+
+    /**
+     * Adds a player, unless the index already has the username.
+     * @param user The player
+     */
+    public void addUser(UserRecord user) {
+        lock.writeLock().lock();
+        try {
+            if (!hasPlayer(user.getUsername())) {
+                add(Kind.PLAYER, user.getUsername(), user.getEmail(), new String[] {user.getUsername()},
+                        user.getEmail());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a coach, unless the index already has the name; a known coach
+     * without a bio takes this one.
+     * @param name The coach's name
+     * @param bio The coach's bio, or "" if unknown
+     */
+    public void addCoach(String name, String bio) {
+        lock.writeLock().lock();
+        try {
+            addCoachLocked(name, bio);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a lesson request and its coach, unless the index already has the
+     * same request.
+     * @param lesson The lesson request
+     */
+    public void addLesson(LessonRecord lesson) {
+        lock.writeLock().lock();
+        try {
+            if (lessons.add(RecordSchema.LESSONS.encode(lesson))) {
+                add(Kind.LESSON, lesson.getId(), lesson.getUsername() + " with " + lesson.getCoach() + ": "
+                        + lesson.getDescription(), new String[] {lesson.getId(), lesson.getUsername(),
+                        lesson.getCoach(), lesson.getDescription()});
+            }
+            addCoachLocked(lesson.getCoach(), "");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with a lock held
+    private boolean hasPlayer(String username) {
+        for (int id : trie.ids(username.trim().toLowerCase(Locale.ROOT))) {
+            Document document = documents.get(id);
+            if (document.kind == Kind.PLAYER && document.name.equals(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addCoachLocked(String name, String bio) {
+        String key = name.trim().toLowerCase(Locale.ROOT);
+        Integer known = coaches.get(key);
+        if (known == null) {
+            coaches.put(key, add(Kind.COACH, name, bio, new String[] {name}));
+        } else if (documents.get(known).detail.isEmpty()) {
+            documents.get(known).detail = bio;
+        }
+    }
+
+    // Adds a document with the terms of its texts and of the player's email,
+    // if any; called with the write lock held
+    private int add(Kind kind, String name, String detail, String[] texts, String... emails) {
+        Set<String> terms = new LinkedHashSet<>();
+        addTerms(terms, texts);
+        int publicTerms = terms.size();
+        addTerms(terms, emails);
+        int id = documents.size();
+        String[] shared = new String[terms.size()];
+        int i = 0;
+        for (String term : terms) {
+            shared[i++] = trie.add(term, id);
+        }
+        documents.add(new Document(kind, name, detail, shared, publicTerms));
+        return id;
+    }
+
+    private static void addTerms(Set<String> terms, String[] texts) {
+        for (String text : texts) {
+            String lowered = text.trim().toLowerCase(Locale.ROOT);
+            if (!lowered.isEmpty()) {
+                terms.add(lowered);
+                terms.addAll(words(lowered));
+            }
+        }
+    }
+
+    /**
+     * Finds the documents matching a query: first those with a term that
+     * starts with the whole query, then those where each word of the query
+     * starts a term, each in the order of their terms.
+     * @param query What the user typed, e.g. "magnus" or "ruy lopez"
+     * @param limit The most results to return
+     * @return The results
+     */
+    public List<Hit> search(String query, int limit) {
+        return search(query, limit, true);
+    }
+
+    /**
+     * Finds the documents matching a query as {@link #search(String, int)}
+     * does, optionally as if players' emails were not indexed.
+     * @param query What the user typed
+     * @param limit The most results to return
+     * @param includeEmails Whether players are matched by email and their
+     *        hits carry it; false for members, who may not see emails
+     * @return The results
+     */
+    public List<Hit> search(String query, int limit, boolean includeEmails) {
+        String whole = query.trim().toLowerCase(Locale.ROOT);
+        List<String> words = words(whole);
+        if (words.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<Hit> hits = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            trie.forEachWithPrefix(whole, (term, id) -> {
+                if ((includeEmails || documents.get(id).hasPublicTerm(term)) && seen.add(id)) {
+                    hits.add(hit(id, includeEmails));
+                }
+                return hits.size() < limit;
+            });
+            if (hits.size() < limit && !(words.size() == 1 && words.get(0).equals(whole))) {
+                // The documents of the rarest word are the candidates, and are checked for the others
+                String candidates = words.get(0);
+                int fewest = Integer.MAX_VALUE;
+                for (String word : words) {
+                    int count = trie.count(word);
+                    if (count < fewest) {
+                        candidates = word;
+                        fewest = count;
+                    }
+                }
+                if (fewest > 0) {
+                    trie.forEachWithPrefix(candidates, (term, id) -> {
+                        if (seen.add(id) && matchesAll(documents.get(id), words, includeEmails)) {
+                            hits.add(hit(id, includeEmails));
+                        }
+                        return hits.size() < limit;
+                    });
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the number of documents indexed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Hit hit(int id, boolean includeEmails) {
+        Document document = documents.get(id);
+        // A player's detail is the email
+        String detail = includeEmails || document.kind != Kind.PLAYER ? document.detail : "";
+        return new Hit(document.kind, document.name, detail);
+    }
+
+    private static boolean matchesAll(Document document, List<String> words, boolean includeEmails) {
+        for (String word : words) {
+            if (!document.hasTermStartingWith(word, includeEmails)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Splits lower-cased text into its runs of letters and digits
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,177 @@
+package com.mycompany.chessmasterske;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps the sessions of logged-in members. A successful login
+ * gets an opaque token, 256 random bits that say nothing about the member,
+ * and later actions present the token instead of a typed username. A
+ * session expires once it has been idle for the time-to-live; each use
+ * pushes the expiry back. The store holds at most a fixed number of
+ * sessions: tokens are queued in the order they were issued, and when the
+ * store is full the oldest sessions are dropped first. Lookups and logins
+ * go through a concurrent map, so they do not contend on a lock.
+ */
+public class SessionStore {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final int DEFAULT_MAX_SESSIONS = 100_000;
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final long ttlNanos;
+    private final int maxSessions;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Tokens in issue order; may still hold tokens that have since ended
+    private final ConcurrentLinkedQueue<String> issued = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * This class is one logged-in member.
+     */
+    public static final class Session {
+        private final String token;
+        private final String username;
+        private volatile long expiresNanos;
+
+        Session(String token, String username, long expiresNanos) {
+            this.token = token;
+            this.username = username;
+            this.expiresNanos = expiresNanos;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        boolean isExpired(long now) {
+            return expiresNanos - now <= 0;
+        }
+    }
+
+    /**
+     * Constructor to create a store with the default time-to-live and size.
+     */
+    public SessionStore() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Constructor to create an empty store.
+     * @param ttlMillis How long a session lasts without being used
+     * @param maxSessions The largest number of sessions kept
+     */
+    public SessionStore(long ttlMillis, int maxSessions) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Starts a session for a member whose credentials have been checked.
+     * @param username The member
+     * @return The new session
+     */
+    public Session create(String username) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, username, System.nanoTime() + ttlNanos);
+        sessions.put(token, session);
+        issued.add(token);
+        queued.incrementAndGet();
+        evict();
+        return session;
+    }
+
+    /**
+     * Drops ended sessions from the head of the issue queue, and the oldest
+     * live one if the store is over its size. Each new session pushes out at
+     * most one other, so logins racing each other cannot empty the store.
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        boolean evictedLive = false;
+        String token;
+        while ((token = issued.peek()) != null) {
+            Session session = sessions.get(token);
+            if (session != null && !session.isExpired(now)) {
+                if (evictedLive || sessions.size() <= maxSessions) {
+                    break;
+                }
+                evictedLive = true;
+            }
+            if (issued.remove(token)) {
+                queued.decrementAndGet();
+                sessions.remove(token);
+            }
+        }
+        // Sessions ended behind a long-lived head still hold queue entries;
+        // clear them out once they outnumber the live sessions
+        if (queued.get() > 2 * Math.max(sessions.size(), 1024) && sweeping.compareAndSet(false, true)) {
+            try {
+                issued.removeIf(queuedToken -> {
+                    Session session = sessions.get(queuedToken);
+                    if (session == null || session.isExpired(now)) {
+                        sessions.remove(queuedToken);
+                        queued.decrementAndGet();
+                        return true;
+                    }
+                    return false;
+                });
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    /**
+     * Looks up a session and extends it.
+     * @param token The token presented
+     * @return The session, or null if the token is unknown or has expired
+     */
+    public Session find(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (session.isExpired(now)) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresNanos = now + ttlNanos;
+        return session;
+    }
+
+    /**
+     * Ends a session, e.g. on logout.
+     * @param token The session's token
+     * @return true if the session was live
+     */
+    public boolean invalidate(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    /**
+     * Returns the number of sessions held, including any that have expired
+     * but not yet been dropped.
+     */
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,61 @@
+package com.mycompany.chessmasterske;
+
+import java.util.Arrays;
+
+/**
+ * This class assigns keys to shards by consistent hashing. Every shard is
+ * placed at many points on a ring of 64-bit hashes, and a key belongs to
+ * the shard at the first point at or after the key's own hash. The many
+ * points even out the shards' sizes, and going from n to n + 1 shards
+ * moves only about one key in n + 1, all of them to the new shard.
+ */
+final class ShardRing {
+    // Points per shard; more points spread the keys more evenly
+    private static final int POINTS_PER_SHARD = 160;
+
+    private final int shards;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Constructor to create the ring for a number of shards.
+     * @param shards The number of shards, at least 1
+     */
+    ShardRing(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("There must be at least one shard");
+        }
+        this.shards = shards;
+        long[] placed = new long[shards * POINTS_PER_SHARD];
+        for (int i = 0; i < placed.length; i++) {
+            placed[i] = BloomFilter.hash("shard-" + i / POINTS_PER_SHARD + "#" + i % POINTS_PER_SHARD);
+        }
+        points = placed.clone();
+        Arrays.sort(points);
+        owners = new int[points.length];
+        for (int i = 0; i < placed.length; i++) {
+            owners[Arrays.binarySearch(points, placed[i])] = i / POINTS_PER_SHARD;
+        }
+    }
+
+    int size() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard a key belongs to.
+     * @param key The key, e.g. a username
+     * @return The shard, from 0 to {@link #size()} - 1
+     */
+    int shardOf(String key) {
+        if (shards == 1) {
+            return 0;
+        }
+        int at = Arrays.binarySearch(points, BloomFilter.hash(key));
+        if (at < 0) {
+            at = -at - 1;
+        }
+        // Past the last point the ring wraps around to the first
+        return owners[at == points.length ? 0 : at];
+    }
+}
@@ -0,0 +1,66 @@
+package com.mycompany.chessmasterske;
+
+import java.time.LocalDate;
+
+/**
+ * This class represents one game in the game store: the players, the
+ * date, the result and the moves, packed 16 bits each by MoveCodec.
+ */
+public final class StoredGame {
+    private final long offset;
+    private final String whitePlayer;
+    private final String blackPlayer;
+    private final LocalDate date;
+    private final String result;
+    private final short[] moves;
+
+    /**
+     * Constructor to create a game.
+     * @param offset Where the game is stored, or -1 if it has not been stored yet
+     * @param whitePlayer The white player
+     * @param blackPlayer The black player
+     * @param date The date the game was played, or null if unknown
+     * @param result GameResult.WHITE, BLACK or DRAW, or "*" if unfinished
+     * @param moves The moves from the starting position
+     */
+    public StoredGame(long offset, String whitePlayer, String blackPlayer, LocalDate date, String result, short[] moves) {
+        this.offset = offset;
+        this.whitePlayer = whitePlayer;
+        this.blackPlayer = blackPlayer;
+        this.date = date;
+        this.result = result;
+        this.moves = moves;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getWhitePlayer() {
+        return whitePlayer;
+    }
+
+    public String getBlackPlayer() {
+        return blackPlayer;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    public short getMove(int ply) {
+        return moves[ply];
+    }
+
+    public short[] getMoves() {
+        return moves.clone();
+    }
+}
@@ -0,0 +1,58 @@
+package com.mycompany.chessmasterske;
+
+/**
+ * This class represents one registered user as stored in users.txt.
+ */
+public final class UserRecord {
+    private final String username;
+    private final String email;
+    private final String password;
+    private final int eloRating;
+
+    /**
+     * Constructor to create a user record.
+     * @param username The username of the user
+     * @param email The email of the user
+     * @param password The stored password of the user
+     * @param eloRating The Elo rating entered at registration
+     */
+    public UserRecord(String username, String email, String password, int eloRating) {
+        this.username = username;
+        this.email = email;
+        this.password = password;
+        this.eloRating = eloRating;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getEloRating() {
+        return eloRating;
+    }
+
+    /**
+     * Parses one line of users.txt.
+     * @param line The line in the {@link RecordSchema#USERS} format
+     * @return The parsed record, or null for the header or a malformed line
+     */
+    public static UserRecord parse(String line) {
+        return RecordSchema.USERS.decode(line);
+    }
+
+    /**
+     * Formats this record as one line of users.txt.
+     * @return The record in the {@link RecordSchema#USERS} format
+     */
+    public String toLine() {
+        return RecordSchema.USERS.encode(this);
+    }
+}
@@ -0,0 +1,409 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This class holds the users of one users file: users.txt, or one shard of
+ * it when the users are split (see {@link UserStore}). The file is read
+ * once when the shard is loaded, starting from its {@link UserSnapshot} if
+ * there is one; afterwards lookups are answered from memory and
+ * registrations are group-committed to the file and then added. When a
+ * username appears more than once in the file the last line wins.
+ * <p>
+ * Bloom filters over the usernames and emails answer the common case, a
+ * name nobody has, from a few bits; only a possible match is looked up in
+ * the exact indexes. If the file is shared with other processes,
+ * {@link #catchUp()} reads the records they have appended.
+ */
+final class UserShard {
+    private static final double FILTER_FALSE_POSITIVES = 0.01;
+    private static final long MIN_FILTER_CAPACITY = 1 << 14;
+    // Users per task when the indexes are rebuilt in parallel
+    private static final long PARALLELISM_THRESHOLD = 4096;
+
+    private final RecordFile file;
+    private final GroupCommitWriter writer;
+    private UserSnapshot snapshot = UserSnapshot.empty();
+    // What the snapshot on disk covers, or null if there is none
+    private volatile LogPosition saved;
+    // Users added or changed since the snapshot; these hide the snapshot's copy
+    private final ConcurrentHashMap<String, UserRecord> usersByName = new ConcurrentHashMap<>();
+    // Usernames in usersByName that the snapshot does not have
+    private final AtomicInteger added = new AtomicInteger();
+    // Lower-cased emails of the users in usersByName to their usernames
+    private final ConcurrentHashMap<String, String> usernamesByEmail = new ConcurrentHashMap<>();
+    // For each write in flight, the record count before it; its record is at or after that
+    private final Queue<Long> pendingFrom = new ConcurrentLinkedQueue<>();
+    // Usernames whose registration is being written
+    private final Set<String> registering = ConcurrentHashMap.newKeySet();
+    // Records of the file applied so far, guarded by replayLock
+    private final Object replayLock = new Object();
+    private long replayed;
+    // Set once the email index and filters cover the loaded users
+    private volatile boolean indexed;
+    private volatile BloomFilter usernameFilter;
+    private volatile BloomFilter emailFilter;
+    private final List<Consumer<UserRecord>> listeners = new CopyOnWriteArrayList<>();
+    private final VerificationCache verified;
+
+    /**
+     * Constructor to create an empty shard over a users file; {@link #load()}
+     * reads it.
+     * @param file The users file
+     * @param writer The writer that commits new registrations
+     * @param cacheEntries The most recent logins remembered; 0 turns the
+     *                     cache off
+     */
+    UserShard(RecordFile file, GroupCommitWriter writer, int cacheEntries) {
+        this.file = file;
+        this.writer = writer;
+        this.verified = new VerificationCache(TimeUnit.MINUTES.toMillis(5), cacheEntries);
+    }
+
+    RecordFile getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the users from the snapshot, if it still matches the file, and
+     * the records after it, then builds the indexes.
+     * @throws IOException if the file cannot be read
+     */
+    void load() throws IOException {
+        long from = 0;
+        UserSnapshot opened = null;
+        try {
+            opened = UserSnapshot.open(UserSnapshot.pathFor(file.getPath()));
+        } catch (IOException ex) {
+            // A damaged snapshot only costs a full load; a new one replaces it
+            ex.printStackTrace();
+        }
+        if (opened != null && opened.getPosition().matches(file)) {
+            snapshot = opened;
+            saved = opened.getPosition();
+            from = saved.getRecords();
+        } else if (opened != null) {
+            opened.close();
+        }
+        synchronized (replayLock) {
+            replayed = from;
+            replay(file.refresh());
+        }
+        usersByName.forEachValue(PARALLELISM_THRESHOLD, user -> usernamesByEmail.merge(UserStore.emailKey(user.getEmail()),
+                user.getUsername(), UserShard::firstUsername));
+        if (snapshot.size() > 0) {
+            usernameFilter = snapshot.usernameFilter();
+            emailFilter = snapshot.emailFilter();
+            usersByName.forEachKey(PARALLELISM_THRESHOLD, usernameFilter::add);
+            usernamesByEmail.forEachKey(PARALLELISM_THRESHOLD, emailFilter::add);
+            if (size() > usernameFilter.capacity()) {
+                CompletableFuture.runAsync(this::rebuildFilters);
+            }
+        } else {
+            rebuildFilters();
+        }
+        indexed = true;
+    }
+
+    private static String firstUsername(String held, String other) {
+        return held.compareTo(other) <= 0 ? held : other;
+    }
+
+    /**
+     * Applies the records of the file up to the given count that have not
+     * been applied yet. Called with replayLock held.
+     */
+    private void replay(long end) throws IOException {
+        for (long i = replayed; i < end; i++) {
+            UserRecord user = UserRecord.parse(file.read(i));
+            if (user != null) {
+                apply(user);
+            }
+        }
+        replayed = Math.max(replayed, end);
+    }
+
+    /**
+     * Adds or replaces a user, keeping the counts and, once loaded, the
+     * indexes up to date. Applying the same record twice changes nothing.
+     */
+    private void apply(UserRecord user) {
+        String username = user.getUsername();
+        if (usersByName.put(username, user) == null && findInSnapshot(username) == null) {
+            added.incrementAndGet();
+        }
+        if (indexed) {
+            String email = UserStore.emailKey(user.getEmail());
+            usernamesByEmail.merge(email, username, UserShard::firstUsername);
+            usernameFilter.add(username);
+            emailFilter.add(email);
+        }
+        for (Consumer<UserRecord> listener : listeners) {
+            listener.accept(user);
+        }
+    }
+
+    /**
+     * Registers a listener called with every user applied from now on.
+     * @param listener The listener to add
+     */
+    void addListener(Consumer<UserRecord> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reads the records other processes have appended to a shared file
+     * since the last call. Does nothing for a file this process has alone.
+     * @throws IOException if the file cannot be read
+     */
+    void catchUp() throws IOException {
+        if (file.isShared()) {
+            synchronized (replayLock) {
+                replay(file.refresh());
+            }
+        }
+    }
+
+    /**
+     * Returns how many records of the file the snapshot on disk does not
+     * cover, i.e. how many the next open would parse.
+     */
+    long recordsSinceSnapshot() throws IOException {
+        LogPosition position = saved;
+        return position != null && position.matches(file) ? file.count() - position.getRecords() : file.count();
+    }
+
+    /**
+     * Rebuilds the filters, sized for twice the current number of users,
+     * in parallel over the exact indexes and in one pass over the snapshot.
+     */
+    private synchronized void rebuildFilters() {
+        if (usernameFilter != null && size() <= usernameFilter.capacity()) {
+            return;
+        }
+        long capacity = Math.max(MIN_FILTER_CAPACITY, 2L * size());
+        BloomFilter usernames = new BloomFilter(capacity, FILTER_FALSE_POSITIVES);
+        BloomFilter emails = new BloomFilter(capacity, FILTER_FALSE_POSITIVES);
+        try {
+            snapshot.forEach(user -> {
+                usernames.add(user.getUsername());
+                emails.add(UserStore.emailKey(user.getEmail()));
+            });
+        } catch (IOException ex) {
+            // Keep the old filters; they are only slower to answer
+            ex.printStackTrace();
+            return;
+        }
+        usersByName.forEachKey(PARALLELISM_THRESHOLD, usernames::add);
+        usernamesByEmail.forEachKey(PARALLELISM_THRESHOLD, emails::add);
+        registering.forEach(usernames::add);
+        usernameFilter = usernames;
+        emailFilter = emails;
+    }
+
+    /**
+     * Saves every user to a snapshot next to the file, so the next load
+     * only parses the records appended after this. Lookups and
+     * registrations carry on while it is written.
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeSnapshot() throws IOException {
+        // Read the count before catching up and before the writes in flight:
+        // a write queued after this read is appended after it too
+        long covered = file.count();
+        catchUp();
+        for (Long from : pendingFrom) {
+            covered = Math.min(covered, from);
+        }
+        int users = size();
+        LogPosition position = LogPosition.of(file, covered);
+        UserSnapshot.write(UserSnapshot.pathFor(file.getPath()), position, users,
+                Math.max(MIN_FILTER_CAPACITY, 2L * users), FILTER_FALSE_POSITIVES, this::forEach);
+        saved = position;
+    }
+
+    private UserRecord findInSnapshot(String username) {
+        try {
+            return snapshot.find(username);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private boolean emailInSnapshot(String emailKey) {
+        try {
+            return snapshot.containsEmail(emailKey);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns whether a username belongs to a user of this shard, or to one
+     * being registered, going by the filter first.
+     */
+    boolean isUsernameTaken(String username) {
+        return usernameFilter.mightContain(username) && hasUsername(username);
+    }
+
+    /**
+     * Returns whether a username belongs to a user of this shard, or to one
+     * being registered, without the filter, which can miss the newest
+     * users while it is rebuilt.
+     */
+    boolean hasUsername(String username) {
+        return usersByName.containsKey(username) || registering.contains(username) || findInSnapshot(username) != null;
+    }
+
+    /**
+     * Returns whether an email belongs to a user of this shard, going by the
+     * filter first.
+     * @param emailKey The email, as normalized by {@link UserStore#emailKey(String)}
+     */
+    boolean isEmailTaken(String emailKey) {
+        return emailFilter.mightContain(emailKey) && hasEmail(emailKey);
+    }
+
+    /**
+     * Returns whether an email belongs to a user of this shard, without the
+     * filter.
+     * @param emailKey The email, as normalized by {@link UserStore#emailKey(String)}
+     */
+    boolean hasEmail(String emailKey) {
+        return usernamesByEmail.containsKey(emailKey) || emailInSnapshot(emailKey);
+    }
+
+    /**
+     * Looks up a user by username.
+     * @param username The username to find
+     * @return The user, or null if this shard has no such user
+     */
+    UserRecord find(String username) {
+        UserRecord user = usersByName.get(username);
+        return user != null ? user : findInSnapshot(username);
+    }
+
+    /**
+     * Checks a username and password; see
+     * {@link UserStore#checkCredentials(String, String)}.
+     */
+    boolean checkCredentials(String username, String password) {
+        UserRecord user = find(username);
+        if (user == null) {
+            return false;
+        }
+        String stored = user.getPassword();
+        if (verified.contains(username, password, stored)) {
+            return true;
+        }
+        if (!PasswordHasher.verify(password, stored)) {
+            return false;
+        }
+        verified.put(username, password, stored);
+        if (PasswordHasher.needsUpgrade(stored)) {
+            upgrade(user, password);
+        }
+        return true;
+    }
+
+    /**
+     * Re-hashes a password at the current work factor and appends the
+     * updated user; the newer line wins when the file is loaded again.
+     */
+    private void upgrade(UserRecord user, String password) {
+        UserRecord upgraded = new UserRecord(user.getUsername(), user.getEmail(),
+                PasswordHasher.hash(password), user.getEloRating());
+        Long from = file.count();
+        pendingFrom.add(from);
+        writer.submit(file, upgraded.toLine()).whenComplete((recordNumber, ex) -> {
+            if (ex != null) {
+                // Keep the old hash; the upgrade is retried on the next login
+                ex.printStackTrace();
+            } else if (usersByName.compute(user.getUsername(),
+                    (name, current) -> current == null || current == user ? upgraded : current) == upgraded) {
+                // A user from the snapshot is not in usersByName yet
+                verified.put(user.getUsername(), password, upgraded.getPassword());
+            }
+            pendingFrom.remove(from);
+        });
+    }
+
+    /**
+     * Claims a username for a registration, so no other registration in
+     * this process can take it until {@link #release(String)}.
+     * @return false if the username is taken or already claimed
+     */
+    boolean claim(String username) {
+        if (isUsernameTaken(username) || !registering.add(username)) {
+            return false;
+        }
+        // A filter being rebuilt can miss the newest users, so the claim is checked exactly
+        if (usersByName.containsKey(username) || findInSnapshot(username) != null) {
+            registering.remove(username);
+            return false;
+        }
+        usernameFilter.add(username);
+        return true;
+    }
+
+    void release(String username) {
+        registering.remove(username);
+    }
+
+    /**
+     * Writes a user whose username has been claimed, and adds it once the
+     * write has been committed. The claim is left for the caller to release.
+     * @param user The user, with the password already hashed
+     * @param guard Checks the user right before it is appended, or null
+     * @return A future that completes when the user is registered
+     */
+    CompletableFuture<Void> register(UserRecord user, GroupCommitWriter.Guard guard) {
+        Long from = file.count();
+        pendingFrom.add(from);
+        return writer.submit(file, user.toLine(), guard).whenComplete((recordNumber, ex) -> {
+            if (ex == null) {
+                apply(user);
+            }
+            pendingFrom.remove(from);
+        }).thenAccept(recordNumber -> {
+            if (size() > usernameFilter.capacity()) {
+                CompletableFuture.runAsync(this::rebuildFilters);
+            }
+        });
+    }
+
+    /**
+     * Passes every user of this shard to a consumer.
+     * @param consumer The consumer to receive each user
+     */
+    void forEach(Consumer<UserRecord> consumer) {
+        try {
+            snapshot.forEach(user -> {
+                if (!usersByName.containsKey(user.getUsername())) {
+                    consumer.accept(user);
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        usersByName.values().forEach(consumer);
+    }
+
+    /**
+     * Returns the number of distinct usernames in this shard.
+     */
+    int size() {
+        return snapshot.size() + added.get();
+    }
+}
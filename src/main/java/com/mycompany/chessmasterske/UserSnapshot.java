@@ -0,0 +1,351 @@
+package com.mycompany.chessmasterske;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * This class is a saved copy of every registered user, so the user store
+ * can start from it instead of parsing all of users.txt. The snapshot file
+ * (users.txt.snap) is memory mapped and used where it lies: two open
+ * addressing hash tables, one by username and one by email, point at the
+ * users' records, and a user is decoded only when it is looked up. The
+ * user store's Bloom filters are saved with it. A {@link LogPosition} says
+ * how much of users.txt the snapshot covers; records appended after that
+ * are replayed on top of it.
+ * <p>
+ * The file starts with a fixed header, followed by the username table, the
+ * email table, both filters and then the records, each an int length and
+ * the user's users.txt line. A table entry holds 24 bits of the key's hash,
+ * to skip most non-matching records without decoding them, and the
+ * record's offset plus one; 0 is an empty slot.
+ */
+final class UserSnapshot {
+    private static final int MAGIC = 0x43555331;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 128;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private static final UserSnapshot EMPTY = new UserSnapshot();
+
+    private final MappedFile file;
+    private final LogPosition position;
+    private final int users;
+    private final int mask;
+    private final long usernameTable;
+    private final long emailTable;
+    private final long records;
+    private final long end;
+    private final BloomFilter usernameFilter;
+    private final BloomFilter emailFilter;
+
+    private UserSnapshot() {
+        this.file = null;
+        this.position = null;
+        this.users = 0;
+        this.mask = 0;
+        this.usernameTable = 0;
+        this.emailTable = 0;
+        this.records = 0;
+        this.end = 0;
+        this.usernameFilter = null;
+        this.emailFilter = null;
+    }
+
+    private UserSnapshot(MappedFile file, LogPosition position, int users, int slots, int filterWords, long end,
+                         BloomFilter usernameFilter, BloomFilter emailFilter) {
+        this.file = file;
+        this.position = position;
+        this.users = users;
+        this.mask = slots - 1;
+        this.usernameTable = HEADER_BYTES;
+        this.emailTable = usernameTable + (long) slots * Long.BYTES;
+        this.records = emailTable + (long) slots * Long.BYTES + 2L * filterWords * Long.BYTES;
+        this.end = end;
+        this.usernameFilter = usernameFilter;
+        this.emailFilter = emailFilter;
+    }
+
+    /**
+     * Returns a snapshot with no users, for a store that has none saved.
+     */
+    static UserSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the path of the snapshot for a users file.
+     * @param usersPath The users file
+     */
+    static Path pathFor(Path usersPath) {
+        return usersPath.resolveSibling(usersPath.getFileName() + ".snap");
+    }
+
+    /**
+     * Opens a saved snapshot.
+     * @param path The snapshot file
+     * @return The snapshot, or null if there is none
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static UserSnapshot open(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        LogPosition position;
+        int users;
+        int slots;
+        long filterCapacity;
+        int filterWords;
+        long end;
+        long[] usernameWords;
+        long[] emailWords;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            DataInputStream header = new DataInputStream(Channels.newInputStream(channel));
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IOException(path + " is not a user snapshot");
+            }
+            position = LogPosition.read(header);
+            users = header.readInt();
+            slots = header.readInt();
+            filterCapacity = header.readLong();
+            filterWords = header.readInt();
+            end = header.readLong();
+            if (Integer.bitCount(slots) != 1 || end > channel.size()) {
+                throw new IOException(path + " is incomplete");
+            }
+            long filters = HEADER_BYTES + 2L * slots * Long.BYTES;
+            usernameWords = readWords(channel, filters, filterWords);
+            emailWords = readWords(channel, filters + (long) filterWords * Long.BYTES, filterWords);
+        }
+        return new UserSnapshot(new MappedFile(path), position, users, slots, filterWords, end,
+                new BloomFilter(filterCapacity, usernameWords), new BloomFilter(filterCapacity, emailWords));
+    }
+
+    private static long[] readWords(FileChannel channel, long position, int count) throws IOException {
+        long[] words = new long[count];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Long.BYTES * 65536);
+        int read = 0;
+        while (read < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (long) (count - read) * Long.BYTES));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + (long) read * Long.BYTES + buffer.position()) < 0) {
+                    throw new IOException("Snapshot ends early");
+                }
+            }
+            buffer.flip();
+            int longs = buffer.remaining() / Long.BYTES;
+            buffer.asLongBuffer().get(words, read, longs);
+            read += longs;
+        }
+        return words;
+    }
+
+    /**
+     * Saves users to a new snapshot, which replaces the old one in a single
+     * rename once it is complete. The users are streamed into the mapped
+     * file, so the heap only holds the Bloom filters.
+     * @param path The snapshot file
+     * @param position How much of users.txt the users cover
+     * @param expectedUsers About how many users there are; the tables are
+     *                      sized with room for a quarter more
+     * @param filterCapacity How many keys the saved filters are sized for
+     * @param falsePositiveRate The filters' false positive rate
+     * @param source Passes every user to the consumer it is given
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(Path path, LogPosition position, int expectedUsers, long filterCapacity,
+                      double falsePositiveRate, Consumer<Consumer<UserRecord>> source) throws IOException {
+        // Room for a quarter more users, with the tables at most three quarters full
+        int room = expectedUsers + expectedUsers / 4 + 1024;
+        int slots = Integer.highestOneBit(room + room / 3) << 1;
+        BloomFilter usernames = new BloomFilter(filterCapacity, falsePositiveRate);
+        BloomFilter emails = new BloomFilter(filterCapacity, falsePositiveRate);
+        int filterWords = BloomFilter.wordCount(filterCapacity, falsePositiveRate);
+        // Named per process, since processes sharing a users file may write its snapshot at once
+        Path temp = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        Files.deleteIfExists(temp);
+        MappedFile out = new MappedFile(temp);
+        UserSnapshot layout = new UserSnapshot(out, position, 0, slots, filterWords, 0, usernames, emails);
+        long[] next = {layout.records};
+        int[] written = {0};
+        boolean complete = false;
+        try {
+            try {
+                source.accept(user -> {
+                    if (++written[0] * 4L > slots * 3L) {
+                        throw new UncheckedIOException(new IOException("Too many users registered during the snapshot"));
+                    }
+                    byte[] line = user.toLine().getBytes(StandardCharsets.UTF_8);
+                    long offset = next[0] - layout.records;
+                    String email = UserStore.emailKey(user.getEmail());
+                    try {
+                        putInt(out, next[0], line.length);
+                        out.put(next[0] + Integer.BYTES, line, 0, line.length);
+                        layout.insert(layout.usernameTable, user.getUsername(), offset);
+                        layout.insert(layout.emailTable, email, offset);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    usernames.add(user.getUsername());
+                    emails.add(email);
+                    next[0] += Integer.BYTES + line.length;
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            long filters = layout.emailTable + (long) slots * Long.BYTES;
+            long[][] words = {usernames.toWords(), emails.toWords()};
+            for (long[] filter : words) {
+                for (long word : filter) {
+                    out.putLong(filters, word);
+                    filters += Long.BYTES;
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES);
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            position.write(header);
+            header.writeInt(written[0]);
+            header.writeInt(slots);
+            header.writeLong(filterCapacity);
+            header.writeInt(filterWords);
+            header.writeLong(next[0]);
+            out.put(0, bytes.toByteArray(), 0, bytes.size());
+            complete = true;
+        } finally {
+            out.close(complete ? next[0] : 0);
+            if (!complete) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void insert(long table, String key, long offset) throws IOException {
+        long hash = BloomFilter.hash(key);
+        int slot = (int) hash & mask;
+        while (file.getLong(table + (long) slot * Long.BYTES) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        file.putLong(table + (long) slot * Long.BYTES, (hash >>> OFFSET_BITS) << OFFSET_BITS | (offset + 1));
+    }
+
+    LogPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the number of users in the snapshot.
+     */
+    int size() {
+        return users;
+    }
+
+    BloomFilter usernameFilter() {
+        return usernameFilter;
+    }
+
+    BloomFilter emailFilter() {
+        return emailFilter;
+    }
+
+    /**
+     * Looks up a user by username.
+     * @param username The username
+     * @return The user, or null if the snapshot does not hold it
+     */
+    UserRecord find(String username) throws IOException {
+        return lookup(usernameTable, username, false);
+    }
+
+    /**
+     * Returns whether a user in the snapshot has an email.
+     * @param emailKey The email, as normalized by {@link UserStore#emailKey(String)}
+     */
+    boolean containsEmail(String emailKey) throws IOException {
+        return lookup(emailTable, emailKey, true) != null;
+    }
+
+    private UserRecord lookup(long table, String key, boolean byEmail) throws IOException {
+        if (file == null) {
+            return null;
+        }
+        long hash = BloomFilter.hash(key);
+        long tag = hash >>> OFFSET_BITS;
+        int slot = (int) hash & mask;
+        while (true) {
+            long entry = file.getLong(table + (long) slot * Long.BYTES);
+            if (entry == 0) {
+                return null;
+            }
+            if (entry >>> OFFSET_BITS == tag) {
+                UserRecord user = record(records + (entry & OFFSET_MASK) - 1);
+                if (user != null && key.equals(byEmail ? UserStore.emailKey(user.getEmail()) : user.getUsername())) {
+                    return user;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private UserRecord record(long at) throws IOException {
+        byte[] line = new byte[getInt(file, at)];
+        file.get(at + Integer.BYTES, line, 0, line.length);
+        return UserRecord.parse(new String(line, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Passes every user in the snapshot to a consumer, in file order.
+     * @param consumer The consumer to receive each user
+     */
+    void forEach(Consumer<UserRecord> consumer) throws IOException {
+        if (file == null) {
+            return;
+        }
+        long at = records;
+        while (at < end) {
+            int length = getInt(file, at);
+            byte[] line = new byte[length];
+            file.get(at + Integer.BYTES, line, 0, length);
+            UserRecord user = UserRecord.parse(new String(line, StandardCharsets.UTF_8));
+            if (user != null) {
+                consumer.accept(user);
+            }
+            at += Integer.BYTES + length;
+        }
+    }
+
+    /**
+     * Releases the snapshot's file.
+     */
+    void close() throws IOException {
+        if (file != null) {
+            file.close(end);
+        }
+    }
+
+    private static void putInt(MappedFile file, long position, int value) throws IOException {
+        byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        file.put(position, bytes, 0, bytes.length);
+    }
+
+    private static int getInt(MappedFile file, long position) throws IOException {
+        byte[] bytes = new byte[Integer.BYTES];
+        file.get(position, bytes, 0, bytes.length);
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+    }
+}
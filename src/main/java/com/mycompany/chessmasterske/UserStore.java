@@ -0,0 +1,493 @@
+package com.mycompany.chessmasterske;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps all registered users, indexed by username.
+ * users.txt is read once when the store is opened; afterwards logins are
+ * answered from the index and registrations are group-committed to the
+ * file and then added to the index. When a username appears more than once in the file
+ * the last line wins.
+ * <p>
+ * A registration is refused if its username or email is already taken.
+ * Bloom filters over the usernames and emails answer the common case, a
+ * name nobody has, from a few bits; only a possible match is looked up in
+ * the exact indexes. Both are rebuilt in one parallel pass over the users
+ * after loading, and the filters again whenever registrations outgrow them.
+ * <p>
+ * To start quickly on a large club, the users can be saved to a
+ * {@link UserSnapshot} with {@link #writeSnapshot()}. The store then opens
+ * on the snapshot, which is looked up where it lies on disk, and parses
+ * only the users.txt records appended since; those, and every later
+ * registration, are kept in memory in front of it.
+ * <p>
+ * Several processes can share the users when the store is opened with
+ * {@link #openSharded(String, int)}. The users are then split by a
+ * {@link ShardRing} over the username into shard files (users-0.txt,
+ * users-1.txt, ...), each a {@link UserShard} with its own writer thread
+ * and its own lock across processes. A username is only ever looked up
+ * and written in its own shard, so logins and registrations spread over
+ * the shards. A registration is checked again with its shard locked,
+ * after reading what other processes have appended, and with the shard
+ * its email hashes to locked as well: two processes registering the same
+ * email therefore take turns, and the second one sees the first's record
+ * whichever shard it went to.
+ */
+public class UserStore {
+    // Recent logins remembered per shard, so a repeated login skips the hash
+    public static final int DEFAULT_CACHE_ENTRIES = 10_000;
+
+    private final UserShard[] shards;
+    private final ShardRing ring;
+    private final boolean sharded;
+    // Lower-cased emails of the users being registered, to their usernames
+    private final ConcurrentHashMap<String, String> claimedEmails = new ConcurrentHashMap<>();
+
+    private UserStore(UserShard[] shards, boolean sharded) {
+        this.shards = shards;
+        this.ring = new ShardRing(shards.length);
+        this.sharded = sharded;
+    }
+
+    /**
+     * Opens the user store and loads every user from the given file.
+     * @param fileName The users file, e.g. "users.txt"
+     * @return The loaded user store
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static UserStore open(String fileName) throws IOException {
+        return open(fileName, GroupCommitWriter.shared());
+    }
+
+    /**
+     * Opens the user store with its own writer for registrations.
+     * @param fileName The users file, e.g. "users.txt"
+     * @param writer The writer that commits new registrations
+     * @return The loaded user store
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static UserStore open(String fileName, GroupCommitWriter writer) throws IOException {
+        return open(fileName, writer, DEFAULT_CACHE_ENTRIES);
+    }
+
+    /**
+     * Opens the user store with its own writer for registrations and a
+     * login cache of the given size.
+     * @param fileName The users file, e.g. "users.txt"
+     * @param writer The writer that commits new registrations
+     * @param cacheEntries The most recent logins whose password check is
+     *                     remembered; 0 checks every login afresh
+     * @return The loaded user store
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static UserStore open(String fileName, GroupCommitWriter writer, int cacheEntries) throws IOException {
+        UserShard shard = new UserShard(RecordFile.open(fileName), writer, cacheEntries);
+        shard.load();
+        return new UserStore(new UserShard[] {shard}, false);
+    }
+
+    /**
+     * Opens the user store split into shard files that several processes
+     * can use at once. The first time, the users of the given file are
+     * moved into the shards and the file is renamed to e.g.
+     * users.txt.unsharded; the number of shards is recorded next to it
+     * (users.txt.shards) and cannot change afterwards.
+     * @param fileName The users file the shards are named after, e.g. "users.txt"
+     * @param shardCount The number of shards
+     * @return The loaded user store
+     * @throws IOException if a shard cannot be read, or the users are
+     *         already split into a different number of shards
+     */
+    public static UserStore openSharded(String fileName, int shardCount) throws IOException {
+        Path usersPath = Paths.get(fileName).toAbsolutePath().normalize();
+        ShardRing ring = new ShardRing(shardCount);
+        prepareShards(usersPath, ring);
+        UserShard[] shards = new UserShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new UserShard(RecordFile.openShared(shardPath(usersPath, i).toString()),
+                    GroupCommitWriter.create(), DEFAULT_CACHE_ENTRIES);
+        }
+        // The shards are independent, so they load side by side
+        CompletableFuture<?>[] loads = new CompletableFuture<?>[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            UserShard shard = shards[i];
+            loads[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    shard.load();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        try {
+            CompletableFuture.allOf(loads).join();
+        } catch (RuntimeException ex) {
+            Throwable cause = ex.getCause() instanceof UncheckedIOException ? ex.getCause().getCause() : ex;
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        return new UserStore(shards, true);
+    }
+
+    /**
+     * Returns the file of one shard, e.g. users-3.txt for shard 3 of users.txt.
+     */
+    static Path shardPath(Path usersPath, int shard) {
+        String name = usersPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String shardName = dot < 0 ? name + "-" + shard : name.substring(0, dot) + "-" + shard + name.substring(dot);
+        return usersPath.resolveSibling(shardName);
+    }
+
+    /**
+     * Creates the shard files the first time, moving the users of the
+     * unsharded file into them, or checks that the recorded number of
+     * shards matches. The layout file is locked meanwhile, so only one
+     * process creates the shards.
+     */
+    private static void prepareShards(Path usersPath, ShardRing ring) throws IOException {
+        Path layoutPath = usersPath.resolveSibling(usersPath.getFileName() + ".shards");
+        try (FileChannel layout = FileChannel.open(layoutPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Released when the channel is closed
+            layout.lock();
+            ByteBuffer recorded = ByteBuffer.allocate((int) layout.size());
+            while (recorded.hasRemaining() && layout.read(recorded) >= 0) {
+                // Read the whole layout
+            }
+            String text = new String(recorded.array(), StandardCharsets.UTF_8).trim();
+            if (!text.isEmpty()) {
+                int existing = Integer.parseInt(text);
+                if (existing != ring.size()) {
+                    throw new IOException(usersPath + " is split into " + existing + " shards, not " + ring.size());
+                }
+                return;
+            }
+            splitUsers(usersPath, ring);
+            // Written last: until then a crashed split is started again from scratch
+            layout.write(ByteBuffer.wrap((ring.size() + "\n").getBytes(StandardCharsets.UTF_8)), 0);
+            layout.force(true);
+        }
+    }
+
+    private static void splitUsers(Path usersPath, ShardRing ring) throws IOException {
+        RecordFile[] targets = new RecordFile[ring.size()];
+        for (int i = 0; i < targets.length; i++) {
+            Path shardPath = shardPath(usersPath, i);
+            // Left over from a split that did not finish
+            Files.deleteIfExists(shardPath);
+            Files.deleteIfExists(RecordFile.indexPath(shardPath));
+            targets[i] = RecordFile.openShared(shardPath.toString());
+            targets[i].append(RecordSchema.USERS.header());
+        }
+        if (Files.exists(usersPath)) {
+            RecordFile source = RecordFile.open(usersPath.toString());
+            source.forEach(line -> {
+                UserRecord user = UserRecord.parse(line);
+                if (user != null) {
+                    try {
+                        targets[ring.shardOf(user.getUsername())].append(line);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+            source.close();
+        }
+        for (RecordFile target : targets) {
+            target.force();
+        }
+        if (Files.exists(usersPath)) {
+            Files.move(usersPath, usersPath.resolveSibling(usersPath.getFileName() + ".unsharded"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(RecordFile.indexPath(usersPath));
+        }
+    }
+
+    /**
+     * Returns whether the users are split into shard files shared with
+     * other processes. Shard files are not compacted.
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    private UserShard shardFor(String username) {
+        return shards[ring.shardOf(username)];
+    }
+
+    /**
+     * Reads what other processes have appended to every shard.
+     */
+    private void catchUp() {
+        if (sharded) {
+            for (UserShard shard : shards) {
+                catchUp(shard);
+            }
+        }
+    }
+
+    private static void catchUp(UserShard shard) {
+        try {
+            shard.catchUp();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns how many records of the users files the snapshots on disk do
+     * not cover, i.e. how many the next open would parse.
+     */
+    public long recordsSinceSnapshot() throws IOException {
+        long records = 0;
+        for (UserShard shard : shards) {
+            records += shard.recordsSinceSnapshot();
+        }
+        return records;
+    }
+
+    /**
+     * Saves every user to a snapshot next to the users file, one per shard,
+     * so the next open only parses the records appended after this. Logins
+     * and registrations carry on while it is written.
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot() throws IOException {
+        for (UserShard shard : shards) {
+            shard.writeSnapshot();
+        }
+    }
+
+    static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns whether a username belongs to a registered user, or to one
+     * being registered.
+     * @param username The username
+     */
+    public boolean isUsernameTaken(String username) {
+        UserShard shard = shardFor(username);
+        if (sharded) {
+            catchUp(shard);
+        }
+        return shard.isUsernameTaken(username);
+    }
+
+    /**
+     * Returns whether an email belongs to a registered user, or to one
+     * being registered. Emails are compared ignoring case.
+     * @param email The email
+     */
+    public boolean isEmailTaken(String email) {
+        String key = emailKey(email);
+        if (claimedEmails.containsKey(key)) {
+            return true;
+        }
+        catchUp();
+        for (UserShard shard : shards) {
+            if (shard.isEmailTaken(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasEmail(String emailKey) {
+        for (UserShard shard : shards) {
+            if (shard.hasEmail(emailKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up a user by username.
+     * @param username The username to find
+     * @return The user, or null if no such user is registered
+     */
+    public UserRecord find(String username) {
+        UserShard shard = shardFor(username);
+        UserRecord user = shard.find(username);
+        if (user == null && sharded) {
+            // The user may have registered through another process
+            catchUp(shard);
+            user = shard.find(username);
+        }
+        return user;
+    }
+
+    /**
+     * Checks the entered username and password against the stored users.
+     * Passwords are verified against their salted hash, which is slow on
+     * purpose, so this should run on a worker thread. Logins verified within
+     * the last few minutes are answered from a cache, and a password stored
+     * as plaintext or with an outdated work factor is re-hashed after the
+     * first successful login.
+     * @param username The entered username
+     * @param password The entered password
+     * @return true if the credentials are valid, false otherwise
+     */
+    public boolean checkCredentials(String username, String password) {
+        return find(username) != null && shardFor(username).checkCredentials(username, password);
+    }
+
+    /**
+     * Queues a new user to be appended to the users file. The username and
+     * email are claimed first, so two registrations racing for the same one
+     * cannot both succeed, and a taken one is refused before the password
+     * is hashed. The password is replaced by its salted hash before
+     * anything is written, and the user is added to the index once the
+     * write has been committed.
+     * @param user The user to register, with a plaintext password
+     * @return A future that completes when the user is registered, or
+     *         exceptionally with a {@link DuplicateRegistrationException} if
+     *         the username or email is taken, or another exception if the
+     *         user could not be written
+     */
+    public CompletableFuture<Void> register(UserRecord user) {
+        return register(user, true);
+    }
+
+    /**
+     * Queues a new user whose password has already been hashed, e.g. one
+     * exported from another club, to be appended to the users file. The
+     * username and email are claimed exactly as by {@link #register(UserRecord)}.
+     * @param user The user to register, with a password hashed by
+     *        {@link PasswordHasher}
+     * @return A future that completes when the user is registered, or
+     *         exceptionally as the one returned by {@link #register(UserRecord)}
+     */
+    public CompletableFuture<Void> registerHashed(UserRecord user) {
+        if (!PasswordHasher.isHashed(user.getPassword())) {
+            throw new IllegalArgumentException("The password is not hashed");
+        }
+        return register(user, false);
+    }
+
+    private CompletableFuture<Void> register(UserRecord user, boolean hashPassword) {
+        String username = user.getUsername();
+        String email = emailKey(user.getEmail());
+        UserShard shard = shardFor(username);
+        if (sharded) {
+            catchUp(shard);
+        }
+        if (!shard.claim(username)) {
+            return CompletableFuture.failedFuture(new DuplicateRegistrationException(DuplicateRegistrationException.USERNAME));
+        }
+        // Claimed before the exact check, so a registration finishing meanwhile is seen by one or the other
+        if (isEmailTaken(email) || claimedEmails.putIfAbsent(email, username) != null) {
+            shard.release(username);
+            return CompletableFuture.failedFuture(new DuplicateRegistrationException(DuplicateRegistrationException.EMAIL));
+        }
+        if (hasEmail(email)) {
+            release(shard, username, email);
+            return CompletableFuture.failedFuture(new DuplicateRegistrationException(DuplicateRegistrationException.EMAIL));
+        }
+        UserRecord hashed = user;
+        try {
+            if (hashPassword) {
+                hashed = new UserRecord(username, user.getEmail(), PasswordHasher.hash(user.getPassword()),
+                        user.getEloRating());
+            }
+        } catch (RuntimeException ex) {
+            release(shard, username, email);
+            throw ex;
+        }
+        GroupCommitWriter.Guard guard = sharded ? new RegistrationGuard(shard, username, email) : null;
+        return shard.register(hashed, guard).whenComplete((registered, ex) -> release(shard, username, email));
+    }
+
+    private void release(UserShard shard, String username, String email) {
+        claimedEmails.remove(email, username);
+        shard.release(username);
+    }
+
+    /**
+     * This class checks a registration again on its shard's writer thread,
+     * with its shard and its email's shard locked against other processes,
+     * after reading what they have appended.
+     */
+    private final class RegistrationGuard implements GroupCommitWriter.Guard {
+        private final UserShard shard;
+        private final String username;
+        private final String email;
+
+        RegistrationGuard(UserShard shard, String username, String email) {
+            this.shard = shard;
+            this.username = username;
+            this.email = email;
+        }
+
+        @Override
+        public Collection<RecordFile> locks() {
+            return Collections.singletonList(shards[ring.shardOf(email)].getFile());
+        }
+
+        @Override
+        public void check() throws IOException {
+            for (UserShard each : shards) {
+                each.catchUp();
+            }
+            if (shard.find(username) != null) {
+                throw new DuplicateRegistrationException(DuplicateRegistrationException.USERNAME);
+            }
+            if (hasEmail(email)) {
+                throw new DuplicateRegistrationException(DuplicateRegistrationException.EMAIL);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener called with every user added or replaced from
+     * now on, including users other processes add to shared shards, once
+     * this process reads them. It may be called with a user it already had.
+     * @param listener The listener to add
+     */
+    public void addListener(Consumer<UserRecord> listener) {
+        for (UserShard shard : shards) {
+            shard.addListener(listener);
+        }
+    }
+
+    /**
+     * Passes every registered user to a consumer.
+     * @param consumer The consumer to receive each user
+     */
+    public void forEach(Consumer<UserRecord> consumer) {
+        catchUp();
+        for (UserShard shard : shards) {
+            shard.forEach(consumer);
+        }
+    }
+
+    /**
+     * Returns the number of distinct registered usernames.
+     * @return The number of users in the index
+     */
+    public int size() {
+        catchUp();
+        int size = 0;
+        for (UserShard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+}
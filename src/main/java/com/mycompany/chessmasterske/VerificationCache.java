@@ -0,0 +1,91 @@
+package com.mycompany.chessmasterske;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class remembers logins that were verified recently, so a kiosk that
+ * logs the same member in again within the time-to-live skips the slow
+ * password hash. Entries are keyed by a SHA-256 of a per-process secret, the
+ * username, the password and the stored hash: no password is kept, and an
+ * entry stops matching as soon as the stored hash changes. The cache holds
+ * at most a fixed number of entries and drops the least recently used.
+ */
+public class VerificationCache {
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final byte[] secret = new byte[32];
+    private final Map<String, Long> expiries;
+
+    /**
+     * Constructor to create an empty cache.
+     * @param ttlMillis How long a verified login is remembered
+     * @param maxEntries The largest number of remembered logins
+     */
+    public VerificationCache(long ttlMillis, int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        new SecureRandom().nextBytes(secret);
+        this.expiries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > VerificationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Checks whether this exact login was verified within the time-to-live.
+     * @param username The entered username
+     * @param password The entered password
+     * @param stored The stored hash it was verified against
+     * @return true if the login can be accepted without hashing
+     */
+    public boolean contains(String username, String password, String stored) {
+        String key = key(username, password, stored);
+        synchronized (expiries) {
+            Long expiry = expiries.get(key);
+            if (expiry == null) {
+                return false;
+            }
+            if (expiry - System.nanoTime() <= 0) {
+                expiries.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Remembers a successfully verified login.
+     * @param username The entered username
+     * @param password The entered password
+     * @param stored The stored hash it was verified against
+     */
+    public void put(String username, String password, String stored) {
+        String key = key(username, password, stored);
+        synchronized (expiries) {
+            expiries.put(key, System.nanoTime() + ttlNanos);
+        }
+    }
+
+    private String key(String username, String password, String stored) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(secret);
+            for (String part : new String[] {username, password, stored}) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that the filter never loses an added string, keeps
+ * close to its false positive rate at capacity, and survives being saved
+ * and restored from its words.
+ */
+class BloomFilterTest {
+    private static final int CAPACITY = 20_000;
+    private static final double RATE = 0.01;
+
+    @Test
+    void addedStringsAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(CAPACITY, RATE);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.add("user" + i);
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+        BloomFilter restored = new BloomFilter(filter.capacity(), filter.toWords());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(restored.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    void falsePositivesStayNearTheRate() {
+        BloomFilter filter = new BloomFilter(CAPACITY, RATE);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.add("user" + i);
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("stranger" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * RATE * 2, falsePositives + " false positives");
+    }
+}
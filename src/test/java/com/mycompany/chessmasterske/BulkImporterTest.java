@@ -0,0 +1,90 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class checks that rows spanning several chunks reach the sink in
+ * file order, whatever the order of the columns, and that invalid rows and
+ * rows the sink refuses are reported by line and skipped.
+ */
+class BulkImporterTest {
+    private static final int ROWS = BulkImporter.CHUNK_ROWS * 3 + 17;
+
+    @Test
+    void rowsReachTheSinkInFileOrder() throws IOException {
+        StringBuilder text = new StringBuilder("result,blackPlayer,id,whitePlayer\n");
+        for (int i = 0; i < ROWS; i++) {
+            text.append(GameResult.DRAW).append(",black").append(i).append(',').append(i).append(",white").append(i).append('\n');
+        }
+        List<GameResult> saved = new ArrayList<>();
+        BulkImporter<GameResult> importer = new BulkImporter<>(RecordSchema.GAMES, BulkImporterTest::game,
+                records -> {
+                    saved.addAll(records);
+                    List<CompletableFuture<?>> written = new ArrayList<>();
+                    for (int i = 0; i < records.size(); i++) {
+                        written.add(CompletableFuture.completedFuture(null));
+                    }
+                    return written;
+                });
+        BulkImporter.Report report = importer.run(new CsvReader(new StringReader(text.toString())));
+        assertEquals(ROWS, report.getRows());
+        assertEquals(ROWS, report.getImported());
+        assertEquals(0, report.getRejected());
+        for (int i = 0; i < ROWS; i++) {
+            GameResult game = saved.get(i);
+            assertEquals(Integer.toString(i), game.getId());
+            assertEquals("white" + i, game.getWhitePlayer());
+            assertEquals("black" + i, game.getBlackPlayer());
+        }
+    }
+
+    @Test
+    void invalidAndRefusedRowsAreReported() throws IOException {
+        String text = "id,whitePlayer,blackPlayer,result\n"
+                + "1,alice,bob,White\n"
+                + "2,alice,bob,Resigned\n"
+                + "3,alice\n"
+                + "4,carol,refused,Black\n"
+                + "5,bob,alice,Draw\n";
+        BulkImporter<GameResult> importer = new BulkImporter<>(RecordSchema.GAMES, BulkImporterTest::game,
+                records -> {
+                    List<CompletableFuture<?>> written = new ArrayList<>();
+                    for (GameResult game : records) {
+                        written.add(game.getBlackPlayer().equals("refused")
+                                ? CompletableFuture.failedFuture(new IllegalStateException("not a member"))
+                                : CompletableFuture.completedFuture(null));
+                    }
+                    return written;
+                });
+        BulkImporter.Report report = importer.run(new CsvReader(new StringReader(text)));
+        assertEquals(5, report.getRows());
+        assertEquals(2, report.getImported());
+        assertEquals(3, report.getRejected());
+        assertEquals("line 3: unknown result", report.getProblems().get(0));
+        assertEquals("line 4: Expected 4 fields", report.getProblems().get(1));
+        assertEquals("line 5: not a member", report.getProblems().get(2));
+    }
+
+    @Test
+    void headerMustNameEveryField() {
+        BulkImporter<GameResult> importer = new BulkImporter<>(RecordSchema.GAMES, BulkImporterTest::game,
+                records -> new ArrayList<>());
+        assertThrows(IOException.class, () -> importer.run(new CsvReader(new StringReader("id,whitePlayer\n1,a\n"))));
+    }
+
+    private static GameResult game(String[] row) {
+        if (!row[3].equals(GameResult.WHITE) && !row[3].equals(GameResult.BLACK) && !row[3].equals(GameResult.DRAW)) {
+            throw new IllegalArgumentException("unknown result");
+        }
+        return new GameResult(row[0], row[1], row[2], row[3]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class checks that quoted fields, line endings, a byte order mark and
+ * blank lines are read as spreadsheets write them, and that whatever
+ * {@link CsvWriter} writes is read back unchanged.
+ */
+class CsvReaderTest {
+    @Test
+    void readsSpreadsheetOutput() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(
+                "\uFEFFname,bio\r\n\r\n\"Smith, Anna\",\"says \"\"hi\"\"\ntwice\"\nbob,\n"));
+        assertArrayEquals(new String[] {"name", "bio"}, csv.next());
+        assertEquals(1, csv.getLine());
+        assertArrayEquals(new String[] {"Smith, Anna", "says \"hi\"\ntwice"}, csv.next());
+        assertEquals(3, csv.getLine());
+        assertArrayEquals(new String[] {"bob", ""}, csv.next());
+        assertEquals(5, csv.getLine());
+        assertNull(csv.next());
+    }
+
+    @Test
+    void unclosedQuoteIsAnError() {
+        CsvReader csv = new CsvReader(new StringReader("a,\"never closed\n"));
+        assertThrows(IOException.class, csv::next);
+    }
+
+    @Test
+    void writtenRowsReadBackUnchanged() throws IOException {
+        String[][] rows = {
+                {"plain", "with,comma", "with \"quotes\""},
+                {"line\r\nbreak", "", " spaced "},
+                {"\"", ",", "\n"},
+        };
+        StringWriter text = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(text)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        }
+        CsvReader csv = new CsvReader(new StringReader(text.toString()));
+        for (String[] row : rows) {
+            assertArrayEquals(row, csv.next());
+        }
+        assertNull(csv.next());
+    }
+}
@@ -0,0 +1,111 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class checks that the ratings replayed from the journal, or from a
+ * snapshot and the journal lines after it, match the ratings before the
+ * engine was reopened, and that a full recomputation counts every game
+ * exactly once, also after a reopen.
+ */
+class EloEngineTest {
+    private static final String[] PLAYERS = {"magnus", "hikaru", "comma, player", "fabiano"};
+    private static final String[] RESULTS = {GameResult.WHITE, GameResult.BLACK, GameResult.DRAW};
+
+    @TempDir
+    Path directory;
+
+    private GroupCommitWriter writer;
+    private UserStore users;
+
+    @BeforeEach
+    void openUsers() throws Exception {
+        writer = new GroupCommitWriter(64, 1);
+        users = UserStore.open(directory.resolve("users.txt").toString(), writer);
+    }
+
+    @AfterEach
+    void closeFiles() {
+        writer.close();
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void reopeningReplaysTheJournal() throws Exception {
+        EloEngine engine = open("journal.txt");
+        for (int i = 0; i < 100; i++) {
+            engine.apply(game(i)).join();
+        }
+        EloEngine reopened = open("journal.txt");
+        for (String player : PLAYERS) {
+            assertEquals(engine.rating(player), reopened.rating(player), player);
+            assertEquals(engine.games(player), reopened.games(player), player);
+        }
+    }
+
+    @Test
+    void recomputingCountsEveryGameOnce() throws Exception {
+        RecordFile gameLog = RecordFile.open(directory.resolve("games.txt").toString());
+        EloEngine expected = open("expected.txt");
+        EloEngine engine = open("journal.txt");
+        for (int i = 0; i < 50; i++) {
+            long recordNumber = writer.submit(gameLog, game(i).toLine()).join();
+            engine.apply(game(i), gameLog, recordNumber).join();
+            expected.apply(game(i)).join();
+        }
+        // Logged before the recomputation but applied after it
+        long pending = writer.submit(gameLog, game(50).toLine()).join();
+        expected.apply(game(50)).join();
+        engine.recompute(gameLog).join();
+        engine.apply(game(50), gameLog, pending).join();
+        long after = writer.submit(gameLog, game(51).toLine()).join();
+        engine.apply(game(51), gameLog, after).join();
+        expected.apply(game(51)).join();
+
+        EloEngine reopened = open("journal.txt");
+        for (String player : PLAYERS) {
+            assertEquals(expected.rating(player), engine.rating(player), player);
+            assertEquals(expected.games(player), engine.games(player), player);
+            assertEquals(expected.rating(player), reopened.rating(player), player);
+            assertEquals(expected.games(player), reopened.games(player), player);
+        }
+    }
+
+    @Test
+    void reopeningFromSnapshotReplaysOnlyTheTail() throws Exception {
+        EloEngine engine = open("journal.txt");
+        for (int i = 0; i < 60; i++) {
+            engine.apply(game(i)).join();
+        }
+        engine.writeSnapshot();
+        assertEquals(0, engine.recordsSinceSnapshot());
+        for (int i = 60; i < 80; i++) {
+            engine.apply(game(i)).join();
+        }
+        RecordFile.closeAll();
+
+        EloEngine reopened = open("journal.txt");
+        assertEquals(20, reopened.recordsSinceSnapshot());
+        for (String player : PLAYERS) {
+            assertEquals(engine.rating(player), reopened.rating(player), player);
+            assertEquals(engine.games(player), reopened.games(player), player);
+        }
+    }
+
+    private EloEngine open(String journalFile) throws Exception {
+        return EloEngine.open(directory.resolve(journalFile).toString(), users, writer);
+    }
+
+    private static GameResult game(int i) {
+        String white = PLAYERS[i % PLAYERS.length];
+        String black = PLAYERS[(i + 1 + i / PLAYERS.length % (PLAYERS.length - 1)) % PLAYERS.length];
+        return new GameResult(Integer.toString(i), white, black, RESULTS[i % RESULTS.length]);
+    }
+}
@@ -0,0 +1,91 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that queued records are appended in submission order
+ * with the record numbers their futures report, that a guard refusing a
+ * record fails only that record, and that closing commits what is queued.
+ */
+class GroupCommitWriterTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeFiles() {
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void recordsAreNumberedInSubmissionOrder() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(16, 1);
+        RecordFile file = RecordFile.open(directory.resolve("log.txt").toString());
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(writer.submit(file, "record " + i));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            long recordNumber = futures.get(i).join();
+            assertEquals(i, recordNumber);
+            assertEquals("record " + i, file.read(recordNumber));
+        }
+        writer.close();
+    }
+
+    @Test
+    void refusedRecordFailsAlone() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(16, 50);
+        RecordFile file = RecordFile.open(directory.resolve("log.txt").toString());
+        IllegalStateException refusal = new IllegalStateException("taken");
+        CompletableFuture<Long> first = writer.submit(file, "first");
+        CompletableFuture<Long> refused = writer.submit(file, "refused", new GroupCommitWriter.Guard() {
+            @Override
+            public List<RecordFile> locks() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void check() {
+                throw refusal;
+            }
+        });
+        CompletableFuture<Long> last = writer.submit(file, "last");
+        assertEquals(0L, first.join());
+        CompletionException failure = assertThrows(CompletionException.class, refused::join);
+        assertSame(refusal, failure.getCause());
+        assertEquals(1L, last.join());
+        assertEquals(2, file.count());
+        writer.close();
+    }
+
+    @Test
+    void closeCommitsQueuedRecords() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(4, 1000);
+        RecordFile file = RecordFile.open(directory.resolve("log.txt").toString());
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(writer.submit(file, "record " + i));
+        }
+        writer.close();
+        for (CompletableFuture<Long> future : futures) {
+            assertTrue(future.isDone());
+            future.join();
+        }
+        assertEquals(10, file.count());
+        assertThrows(CompletionException.class, () -> writer.submit(file, "late").join());
+    }
+}
@@ -0,0 +1,67 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class checks rank, top-K and rating-range queries against a plain
+ * sort of the same ratings while players are added and moved around.
+ */
+class LeaderboardTest {
+    private static final Comparator<Map.Entry<String, Integer>> ORDER =
+            Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    @Test
+    void queriesMatchASortedList() {
+        Leaderboard board = new Leaderboard();
+        Map<String, Integer> ratings = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            String username = "player" + random.nextInt(500);
+            // Few distinct ratings, so ties are ordered by username
+            int rating = 1000 + 10 * random.nextInt(100);
+            board.ratingChanged(username, rating);
+            ratings.put(username, rating);
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(ratings.entrySet());
+        sorted.sort(ORDER);
+
+        assertEquals(sorted.size(), board.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(i + 1, board.rank(sorted.get(i).getKey()));
+        }
+        List<Leaderboard.Entry> top = board.top(25);
+        assertEquals(25, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(sorted.get(i).getKey(), top.get(i).getUsername());
+            assertEquals((int) sorted.get(i).getValue(), top.get(i).getRating());
+        }
+        List<String> expected = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sorted) {
+            if (entry.getValue() >= 1300 && entry.getValue() <= 1500) {
+                expected.add(entry.getKey());
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        for (Leaderboard.Entry entry : board.range(1300, 1500)) {
+            actual.add(entry.getUsername());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void unknownPlayerHasNoRank() {
+        Leaderboard board = new Leaderboard();
+        board.ratingChanged("alice", 1500);
+        assertEquals(-1, board.rank("bob"));
+        assertEquals(1, board.top(10).size());
+    }
+}
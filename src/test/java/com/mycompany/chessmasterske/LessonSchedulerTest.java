@@ -0,0 +1,90 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that a request for someone who is not a coach waits
+ * until they offer coaching, and that on opening the bookings of requests
+ * gone from the logs are dropped from the booking log and their slots
+ * given to requests that have none.
+ */
+class LessonSchedulerTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeFiles() {
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void requestForUnknownCoachWaits() throws Exception {
+        LessonScheduler scheduler = open(Collections.emptyList(), Collections.emptyList());
+        assertNull(scheduler.book(new LessonRequest("1", "anna", "Nobody")));
+        assertEquals(1, scheduler.waitingCount());
+        assertTrue(scheduler.lessonsOf("Nobody").isEmpty());
+        // Once they offer coaching, the waiting request is booked with them
+        scheduler.addCoach("Nobody");
+        assertEquals(0, scheduler.waitingCount());
+        assertEquals("Nobody", scheduler.lessonsOf("anna").get(0).getCoach());
+    }
+
+    @Test
+    void bookingsOfRemovedRequestsAreDropped() throws Exception {
+        int tuesday = 24 * 60;
+        List<String> bookings = new ArrayList<>();
+        bookings.add(RecordSchema.encodeFields(new String[] {"1", "anna", "Magnus", "Magnus",
+                Integer.toString(tuesday + 18 * 60)}));
+        // Request 2 has since left the lesson log
+        bookings.add(RecordSchema.encodeFields(new String[] {"2", "bob", "Magnus", "Magnus",
+                Integer.toString(tuesday + 17 * 60)}));
+        List<LessonRecord> lessons = new ArrayList<>();
+        lessons.add(new LessonRecord("1", "anna", "", "Magnus", "Openings"));
+        lessons.add(new LessonRecord("3", "carol", "", "Magnus", "Endgames"));
+        LessonScheduler scheduler = open(bookings, lessons);
+
+        assertEquals(2, scheduler.bookedCount());
+        assertEquals(0, scheduler.waitingCount());
+        assertEquals("Tue 18:00-19:00", scheduler.lessonsOf("anna").get(0).getSlot());
+        assertEquals("Tue 17:00-18:00", scheduler.lessonsOf("carol").get(0).getSlot());
+        assertTrue(scheduler.lessonsOf("bob").isEmpty());
+
+        RecordFile log = RecordFile.open(directory.resolve(LessonScheduler.BOOKINGS_FILE).toString());
+        List<String> logged = new ArrayList<>();
+        log.forEach(logged::add);
+        assertEquals(2, logged.size());
+        assertEquals(bookings.get(0), logged.get(0));
+        assertTrue(logged.get(1).startsWith("3,carol,Magnus,Magnus,"));
+    }
+
+    private LessonScheduler open(List<String> bookings, List<LessonRecord> lessons) throws Exception {
+        Path hours = directory.resolve(LessonScheduler.AVAILABILITY_FILE);
+        Files.write(hours, Collections.singletonList("Magnus,Tue,17:00,19:00"), StandardCharsets.UTF_8);
+        RecordFile bookingLog = RecordFile.open(directory.resolve(LessonScheduler.BOOKINGS_FILE).toString());
+        for (String booking : bookings) {
+            bookingLog.append(booking);
+        }
+        RecordFile lessonLog = RecordFile.open(directory.resolve("lessons.txt").toString());
+        lessonLog.append(RecordSchema.LESSONS.header());
+        for (LessonRecord lesson : lessons) {
+            lessonLog.append(RecordSchema.LESSONS.encode(lesson));
+        }
+        RecordFile coachingLog = RecordFile.open(directory.resolve("coaching.txt").toString());
+        coachingLog.append(RecordSchema.COACHING.header());
+        return LessonScheduler.open(hours.toString(), bookingLog, lessonLog, coachingLog, player -> 1500,
+                GroupCommitWriter.create());
+    }
+}
@@ -0,0 +1,89 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that compacting a log keeps the latest record of each
+ * key and every record appended while the compaction runs.
+ */
+class LogCompactorTest {
+    private static final int USERS = 2000;
+    private static final int UPDATES = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compactionKeepsLatestRecordsAndConcurrentAppends() throws Exception {
+        String fileName = directory.resolve("users.txt").toString();
+        RecordFile file = RecordFile.open(fileName);
+        file.append(RecordSchema.USERS.header());
+        for (int update = 0; update < UPDATES; update++) {
+            for (int i = 0; i < USERS; i++) {
+                file.append(RecordSchema.USERS.encode(user("player" + i, 1000 + update)));
+            }
+        }
+        file.append("player-without,all,fields");
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger appended = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread appender = new Thread(() -> {
+            try {
+                while (!stop.get() || appended.get() < 100) {
+                    file.append(RecordSchema.USERS.encode(user("late" + appended.get(), 1500)));
+                    appended.incrementAndGet();
+                }
+            } catch (Throwable ex) {
+                failure.compareAndSet(null, ex);
+            }
+        });
+        appender.start();
+        LogCompactor.Result result;
+        try {
+            // Small partitions, so the keys are spilled to disk as for a large log
+            result = new LogCompactor(4096).compact(fileName, RecordSchema.USERS);
+        } finally {
+            stop.set(true);
+            appender.join();
+        }
+        assertNull(failure.get());
+        assertTrue(result.isRewritten());
+        assertEquals(USERS * (UPDATES - 1), result.getDuplicates());
+        assertEquals(1, result.getRejected());
+
+        Map<String, Integer> ratings = new HashMap<>();
+        AtomicInteger records = new AtomicInteger();
+        file.forEach(line -> {
+            UserRecord user = RecordSchema.USERS.decode(line);
+            if (user != null) {
+                records.incrementAndGet();
+                ratings.put(user.getUsername(), user.getEloRating());
+            }
+        });
+        assertEquals(USERS + appended.get(), records.get());
+        for (int i = 0; i < USERS; i++) {
+            assertEquals(1000 + UPDATES - 1, ratings.get("player" + i));
+        }
+        for (int i = 0; i < appended.get(); i++) {
+            assertEquals(1500, ratings.get("late" + i));
+        }
+        file.close();
+    }
+
+    private static UserRecord user(String username, int rating) {
+        return new UserRecord(username, username + "@example.com", "hash", rating);
+    }
+}
@@ -0,0 +1,113 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class checks that the model shows a log newest first without its
+ * header, reads a page only when one of its rows is shown, shows appended
+ * records on refresh and drops the least recently shown pages.
+ */
+class LogTableModelTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeFiles() {
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void rowsAreShownNewestFirst() throws Exception {
+        RecordFile file = log(600);
+        // Pages are read straight away; their rows still arrive on the EDT
+        LogTableModel model = new LogTableModel(file, RecordSchema.GAMES, Runnable::run);
+        assertEquals(600, model.getRowCount());
+        assertEquals("whitePlayer", model.getColumnName(1));
+        assertEquals(LogTableModel.LOADING, onEdt(() -> model.getValueAt(0, 0)));
+        assertEquals("599", onEdt(() -> model.getValueAt(0, 0)));
+        assertEquals("white599", onEdt(() -> model.getValueAt(0, 1)));
+        assertEquals(LogTableModel.LOADING, onEdt(() -> model.getValueAt(599, 0)));
+        assertEquals("0", onEdt(() -> model.getValueAt(599, 0)));
+    }
+
+    @Test
+    void refreshInsertsAppendedRowsAtTheTop() throws Exception {
+        RecordFile file = log(10);
+        LogTableModel model = new LogTableModel(file, RecordSchema.GAMES, Runnable::run);
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+        for (int i = 10; i < 13; i++) {
+            file.append(game(i));
+        }
+        onEdt(() -> {
+            model.refresh();
+            return null;
+        });
+        assertEquals(13, model.getRowCount());
+        assertEquals(1, events.size());
+        assertEquals(TableModelEvent.INSERT, events.get(0).getType());
+        assertEquals(0, events.get(0).getFirstRow());
+        assertEquals(2, events.get(0).getLastRow());
+        onEdt(() -> model.getValueAt(0, 0));
+        assertEquals("12", onEdt(() -> model.getValueAt(0, 0)));
+    }
+
+    @Test
+    void leastRecentlyShownPagesAreDropped() throws Exception {
+        int records = LogTableModel.PAGE_SIZE * (LogTableModel.MAX_PAGES + 1);
+        RecordFile file = log(records);
+        LogTableModel model = new LogTableModel(file, RecordSchema.GAMES, Runnable::run);
+        for (int row = 0; row < records; row += LogTableModel.PAGE_SIZE) {
+            int shown = row;
+            onEdt(() -> model.getValueAt(shown, 0));
+        }
+        onEdt(() -> null);
+        // Every page was read once; the first one shown has been dropped since
+        assertEquals(LogTableModel.LOADING, onEdt(() -> model.getValueAt(0, 0)));
+        assertEquals(Integer.toString(records - 1), onEdt(() -> model.getValueAt(0, 0)));
+        assertEquals(Integer.toString(LogTableModel.PAGE_SIZE - 1),
+                onEdt(() -> model.getValueAt(records - LogTableModel.PAGE_SIZE, 0)));
+    }
+
+    private RecordFile log(int games) throws Exception {
+        RecordFile file = RecordFile.open(directory.resolve("games.txt").toString());
+        file.append(RecordSchema.GAMES.header());
+        for (int i = 0; i < games; i++) {
+            file.append(game(i));
+        }
+        return file;
+    }
+
+    private static String game(int i) {
+        return new GameResult(Integer.toString(i), "white" + i, "black" + i, GameResult.DRAW).toLine();
+    }
+
+    // Runs on the EDT after the page loads already queued there
+    private static Object onEdt(Callable<Object> call) throws Exception {
+        AtomicReference<Object> result = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.set(call.call());
+            } catch (Exception ex) {
+                failure.set(ex);
+            }
+        });
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return result.get();
+    }
+}
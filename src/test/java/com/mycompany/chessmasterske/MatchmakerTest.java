@@ -0,0 +1,78 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that players are paired with the closest rated player
+ * who is waiting, that a wide rating gap is bridged only after waiting, and
+ * that leaving the queue cancels the player's pairing.
+ */
+class MatchmakerTest {
+    private Matchmaker matchmaker;
+
+    @BeforeEach
+    void start() {
+        matchmaker = new Matchmaker();
+    }
+
+    @AfterEach
+    void stop() {
+        matchmaker.close();
+    }
+
+    @Test
+    void closestRatedPlayerIsPaired() throws Exception {
+        CompletableFuture<Matchmaker.Match> far = matchmaker.join("far", 1540);
+        CompletableFuture<Matchmaker.Match> near = matchmaker.join("near", 1510);
+        assertEquals(new HashSet<>(Arrays.asList("far", "near")), players(near.get(5, TimeUnit.SECONDS)));
+        assertSame(far.join(), near.join());
+
+        // Too far apart to be paired with each other straight away
+        matchmaker.join("low", 1500);
+        CompletableFuture<Matchmaker.Match> match = matchmaker.join("high", 1560);
+        CompletableFuture<Matchmaker.Match> closest = matchmaker.join("closest", 1540);
+        Matchmaker.Match pairing = closest.get(5, TimeUnit.SECONDS);
+        assertEquals(new HashSet<>(Arrays.asList("closest", "high")), players(pairing));
+        assertSame(pairing, match.join());
+        assertEquals(1, matchmaker.waitingCount());
+    }
+
+    @Test
+    void wideGapIsBridgedAfterWaiting() throws Exception {
+        CompletableFuture<Matchmaker.Match> first = matchmaker.join("first", 1200);
+        CompletableFuture<Matchmaker.Match> second = matchmaker.join("second", 1400);
+        assertFalse(first.isDone());
+        // The bracket reaches 200 points after six seconds
+        Matchmaker.Match match = first.get(15, TimeUnit.SECONDS);
+        assertSame(match, second.join());
+        assertEquals(0, matchmaker.waitingCount());
+    }
+
+    @Test
+    void leavingCancelsThePairing() {
+        CompletableFuture<Matchmaker.Match> waiting = matchmaker.join("alice", 1500);
+        assertSame(waiting, matchmaker.join("alice", 1500));
+        assertTrue(matchmaker.leave("alice"));
+        assertTrue(waiting.isCancelled());
+        assertFalse(matchmaker.leave("alice"));
+        CompletableFuture<Matchmaker.Match> other = matchmaker.join("bob", 1500);
+        assertFalse(other.isDone());
+        assertEquals(1, matchmaker.waitingCount());
+    }
+
+    private static HashSet<String> players(Matchmaker.Match match) {
+        return new HashSet<>(Arrays.asList(match.getWhitePlayer(), match.getBlackPlayer()));
+    }
+}
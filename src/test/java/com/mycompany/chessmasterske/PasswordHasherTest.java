@@ -0,0 +1,43 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that hashes verify only their own password, carry their
+ * work factor, and that legacy plaintext and weaker hashes are flagged for
+ * an upgrade.
+ */
+class PasswordHasherTest {
+    private static final int ITERATIONS = 1000;
+
+    @Test
+    void hashVerifiesOnlyItsPassword() {
+        String stored = PasswordHasher.hash("secret", ITERATIONS);
+        assertTrue(PasswordHasher.isHashed(stored));
+        assertEquals(ITERATIONS, PasswordHasher.iterationsOf(stored));
+        assertTrue(PasswordHasher.verify("secret", stored));
+        assertFalse(PasswordHasher.verify("Secret", stored));
+        // Fresh salt every time
+        assertNotEquals(stored, PasswordHasher.hash("secret", ITERATIONS));
+    }
+
+    @Test
+    void plaintextAndWeakHashesNeedAnUpgrade() {
+        assertTrue(PasswordHasher.verify("secret", "secret"));
+        assertFalse(PasswordHasher.verify("secret", "other"));
+        assertEquals(0, PasswordHasher.iterationsOf("secret"));
+        assertTrue(PasswordHasher.needsUpgrade("secret"));
+        assertTrue(PasswordHasher.needsUpgrade(PasswordHasher.hash("secret", ITERATIONS)));
+    }
+
+    @Test
+    void damagedHashFailsToVerify() {
+        assertFalse(PasswordHasher.verify("secret", PasswordHasher.PREFIX + "1000$not base64$!"));
+        assertFalse(PasswordHasher.verify("secret", PasswordHasher.PREFIX + "1000"));
+    }
+}
@@ -0,0 +1,75 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class checks that moves in standard algebraic notation resolve to
+ * the right squares.
+ */
+class PositionTest {
+    private static String san(String fen, String san) {
+        return MoveCodec.toUci(Position.fromFen(fen).parseSan(san));
+    }
+
+    @Test
+    void pawnAndPieceMovesFromTheStart() {
+        Position position = Position.start();
+        assertEquals("e2e4", MoveCodec.toUci(position.parseSan("e4")));
+        assertEquals("g1f3", MoveCodec.toUci(position.parseSan("Nf3+")));
+        position.play(position.parseSan("e4"));
+        assertEquals("e7e5", MoveCodec.toUci(position.parseSan("e5")));
+        assertEquals("b8c6", MoveCodec.toUci(position.parseSan("Nc6")));
+    }
+
+    @Test
+    void captures() {
+        String fen = "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2";
+        assertEquals("e4d5", san(fen, "exd5"));
+        assertEquals("d1h5", san(fen, "Qh5"));
+    }
+
+    @Test
+    void enPassant() {
+        assertEquals("e5d6", san("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "exd6"));
+    }
+
+    @Test
+    void castling() {
+        String fen = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+        assertEquals("e1g1", san(fen, "O-O"));
+        assertEquals("e1c1", san(fen, "O-O-O"));
+        assertEquals("e8g8", san(fen.replace(" w ", " b "), "0-0"));
+    }
+
+    @Test
+    void promotions() {
+        String fen = "8/4P1k1/8/8/8/8/8/4K3 w - - 0 1";
+        assertEquals("e7e8q", san(fen, "e8=Q+"));
+        assertEquals("e7e8n", san(fen, "e8N"));
+    }
+
+    @Test
+    void disambiguation() {
+        String fen = "4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1";
+        assertEquals("b1d2", san(fen, "Nbd2"));
+        assertEquals("f3d2", san(fen, "N3d2"));
+        assertEquals("f3e5", san(fen, "Ne5"));
+        assertThrows(IllegalArgumentException.class, () -> san(fen, "Nd2"));
+    }
+
+    @Test
+    void pinnedPieceNeedsNoDisambiguation() {
+        // The knight on c3 is pinned against the king, so only the one on g1 can reach e2
+        assertEquals("g1e2", san("4k3/8/8/b7/8/2N5/8/4K1N1 w - - 0 1", "Ne2"));
+    }
+
+    @Test
+    void illegalMovesAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> Position.start().parseSan("e5"));
+        assertThrows(IllegalArgumentException.class, () -> Position.start().parseSan("Nd4"));
+        assertThrows(IllegalArgumentException.class, () -> Position.start().parseSan("e8=K"));
+    }
+}
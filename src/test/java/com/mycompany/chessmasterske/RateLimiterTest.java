@@ -0,0 +1,49 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that a key is refused once its burst is used, with the
+ * time until its next token, that keys do not share buckets, and that a key
+ * the full limiter has no room for is let through rather than limited
+ * together with others.
+ */
+class RateLimiterTest {
+    @Test
+    void burstIsRefusedWithRetryTime() {
+        RateLimiter limiter = new RateLimiter(3, 60_000, 10);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("anna"));
+        }
+        long retryAfter = limiter.tryAcquire("anna");
+        assertTrue(retryAfter > 59_000 && retryAfter <= 60_000, "retry after " + retryAfter);
+        // A refusal does not take a token, so the wait does not grow
+        assertTrue(limiter.tryAcquire("anna") <= retryAfter);
+        assertEquals(0, limiter.tryAcquire("bob"));
+    }
+
+    @Test
+    void tokensRefill() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1, 20, 10);
+        assertEquals(0, limiter.tryAcquire("anna"));
+        assertTrue(limiter.tryAcquire("anna") > 0);
+        Thread.sleep(40);
+        assertEquals(0, limiter.tryAcquire("anna"));
+    }
+
+    @Test
+    void untrackedKeysAreNotLimitedTogether() {
+        RateLimiter limiter = new RateLimiter(1, 60_000, 2);
+        assertEquals(0, limiter.tryAcquire("anna"));
+        assertEquals(0, limiter.tryAcquire("bob"));
+        // Both buckets are still refilling, so there is no room for more keys
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.tryAcquire("guess" + i));
+        }
+        assertEquals(2, limiter.size());
+        assertTrue(limiter.tryAcquire("anna") > 0);
+    }
+}
@@ -0,0 +1,170 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that records appended from several threads at once are
+ * all kept, in full, and survive closing and reopening the file, that
+ * reads running while the file is replaced see whole records, and that an
+ * index cut short, damaged or lost is rebuilt from the data on opening.
+ */
+class RecordFileTest {
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 2000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentAppendsAreAllKept() throws Exception {
+        String fileName = directory.resolve("log.txt").toString();
+        RecordFile file = RecordFile.open(fileName);
+        List<Thread> threads = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                        file.append(thread + ",record " + i + ",ünïcode");
+                    }
+                } catch (Throwable ex) {
+                    failure.compareAndSet(null, ex);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(THREADS * RECORDS_PER_THREAD, file.count());
+        Set<String> expected = expectedRecords();
+        assertEquals(expected, readAll(file));
+
+        file.close();
+        RecordFile reopened = RecordFile.open(fileName);
+        try {
+            assertEquals(THREADS * RECORDS_PER_THREAD, reopened.count());
+            assertEquals(expected, readAll(reopened));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void readsDuringReplacementSeeWholeRecords() throws Exception {
+        RecordFile file = RecordFile.open(directory.resolve("replaced.txt").toString());
+        for (int i = 0; i < 5000; i++) {
+            file.append("record " + i);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                while (!stop.get()) {
+                    long count = file.count();
+                    try {
+                        String record = file.read(ThreadLocalRandom.current().nextLong(count));
+                        if (!record.startsWith("record ")) {
+                            failure.compareAndSet(null, new AssertionError("Torn record: " + record));
+                        }
+                    } catch (IndexOutOfBoundsException ex) {
+                        // The file shrank since count() was read
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        try {
+            for (int round = 0; round < 50; round++) {
+                RecordFile copy = RecordFile.create(directory.resolve("replaced.txt.compacting"));
+                int records = round % 2 == 0 ? 10 : 5000;
+                for (int i = 0; i < records; i++) {
+                    copy.append("record " + i);
+                }
+                file.replaceWith(copy, file.count());
+            }
+        } finally {
+            stop.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            file.close();
+        }
+        assertNull(failure.get());
+        assertTrue(file.generation() >= 50);
+    }
+
+    @Test
+    void damagedIndexIsRebuiltOnOpen() throws Exception {
+        String fileName = directory.resolve("indexed.txt").toString();
+        Path index = RecordFile.indexPath(directory.resolve("indexed.txt"));
+        RecordFile file = RecordFile.open(fileName);
+        for (int i = 0; i < 100; i++) {
+            file.append("record " + i);
+        }
+        file.close();
+
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(40L * Long.BYTES);
+        }
+        assertReadsBack(fileName);
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            // An offset in the middle of record 50
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, 495), 50L * Long.BYTES);
+        }
+        assertReadsBack(fileName);
+        Files.delete(index);
+        assertReadsBack(fileName);
+    }
+
+    private static void assertReadsBack(String fileName) throws Exception {
+        RecordFile file = RecordFile.open(fileName);
+        try {
+            assertEquals(100, file.count());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("record " + i, file.read(i));
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static Set<String> expectedRecords() {
+        Set<String> expected = new HashSet<>();
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                expected.add(t + ",record " + i + ",ünïcode");
+            }
+        }
+        return expected;
+    }
+
+    private static Set<String> readAll(RecordFile file) throws Exception {
+        Set<String> records = new HashSet<>();
+        file.forEach(records::add);
+        return records;
+    }
+}
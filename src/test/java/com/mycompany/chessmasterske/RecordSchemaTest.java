@@ -0,0 +1,68 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * This class checks that fields and records survive a trip through the log
+ * format, whatever characters they contain.
+ */
+class RecordSchemaTest {
+    private static String[] roundTrip(String... fields) {
+        String[] decoded = new String[fields.length];
+        assertEquals(fields.length, RecordSchema.decodeFields(RecordSchema.encodeFields(fields), decoded));
+        return decoded;
+    }
+
+    @Test
+    void plainFieldsRoundTrip() {
+        String[] fields = {"anna", "anna@example.com", "1500"};
+        assertEquals("anna,anna@example.com,1500", RecordSchema.encodeFields(fields));
+        assertArrayEquals(fields, roundTrip(fields));
+    }
+
+    @Test
+    void separatorsEscapesAndLineBreaksRoundTrip() {
+        String[] fields = {"smith, john", "back\\slash", "two\nlines", "carriage\rreturn", "\\,", ""};
+        String line = RecordSchema.encodeFields(fields);
+        assertEquals(-1, line.indexOf('\n'));
+        assertEquals(-1, line.indexOf('\r'));
+        assertArrayEquals(fields, roundTrip(fields));
+    }
+
+    @Test
+    void nullIsWrittenAsEmpty() {
+        assertArrayEquals(new String[] {"a", "", "c"}, roundTrip("a", null, "c"));
+    }
+
+    @Test
+    void headerAndOverlongLinesAreRejected() {
+        String[] fields = new String[2];
+        assertEquals(-1, RecordSchema.decodeFields(RecordSchema.USERS.header(), fields));
+        assertEquals(-1, RecordSchema.decodeFields("a,b,c", fields));
+        assertEquals(-1, RecordSchema.decodeFields("a\\,b,c,d", fields));
+    }
+
+    @Test
+    void recordsRoundTrip() {
+        UserRecord user = new UserRecord("o'neil, pat", "pat@example.com", "pbkdf2$1000$salt$hash", 1875);
+        UserRecord decoded = RecordSchema.USERS.decode(RecordSchema.USERS.encode(user));
+        assertEquals(user.getUsername(), decoded.getUsername());
+        assertEquals(user.getEmail(), decoded.getEmail());
+        assertEquals(user.getPassword(), decoded.getPassword());
+        assertEquals(user.getEloRating(), decoded.getEloRating());
+
+        LessonRecord lesson = new LessonRecord("7", "anna", "4100018", "Magnus", "Endgames,\nrook vs pawn");
+        LessonRecord read = RecordSchema.LESSONS.decode(RecordSchema.LESSONS.encode(lesson));
+        assertArrayEquals(RecordSchema.LESSONS.fields(lesson), RecordSchema.LESSONS.fields(read));
+    }
+
+    @Test
+    void malformedLinesDecodeToNull() {
+        assertNull(RecordSchema.USERS.decode(RecordSchema.USERS.header()));
+        assertNull(RecordSchema.USERS.decode("only,three,fields"));
+    }
+}
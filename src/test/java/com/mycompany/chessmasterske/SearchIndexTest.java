@@ -0,0 +1,84 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks prefix lookups of players, coaches and lesson requests,
+ * that repeated documents are indexed once, and that a search without
+ * emails neither matches nor shows them.
+ */
+class SearchIndexTest {
+    private SearchIndex index;
+
+    @BeforeEach
+    void fill() {
+        index = new SearchIndex();
+        index.addUser(new UserRecord("anna_k", "anna.k@example.com", "x", 1500));
+        index.addUser(new UserRecord("magnus", "carlsen@example.com", "x", 2800));
+        index.addUser(new UserRecord("magnolia", "mags@example.com", "x", 1300));
+        index.addCoach("Susan Polgar", "");
+        index.addCoach("susan polgar", "Former world champion");
+        index.addLesson(new LessonRecord("7", "anna_k", "", "Susan Polgar", "Ruy Lopez main lines"));
+    }
+
+    @Test
+    void prefixesFindDocuments() {
+        assertEquals(names("PLAYER magnolia", "PLAYER magnus"), names(index.search("magn", 10)));
+        assertEquals(names("PLAYER magnus"), names(index.search("magnu", 10)));
+        assertEquals(names("COACH Susan Polgar", "LESSON 7"), names(index.search("pol", 10)));
+        // Every word must start a term of the same document
+        assertEquals(names("LESSON 7"), names(index.search("lopez ruy", 10)));
+        assertEquals(0, index.search("lopez magnus", 10).size());
+        assertEquals(1, index.search("magn", 1).size());
+    }
+
+    @Test
+    void repeatsAreIndexedOnce() {
+        int size = index.size();
+        index.addUser(new UserRecord("magnus", "carlsen@example.com", "x", 2800));
+        index.addCoach("SUSAN POLGAR", "Another bio");
+        index.addLesson(new LessonRecord("7", "anna_k", "", "Susan Polgar", "Ruy Lopez main lines"));
+        assertEquals(size, index.size());
+        // The first bio that was not empty stays
+        assertEquals("Former world champion", index.search("susan", 1).get(0).getDetail());
+    }
+
+    @Test
+    void emailsAreSearchedOnlyWhenIncluded() {
+        List<SearchIndex.Hit> withEmails = index.search("carlsen", 10);
+        assertEquals(names("PLAYER magnus"), names(withEmails));
+        assertEquals("carlsen@example.com", withEmails.get(0).getDetail());
+        assertEquals(names("PLAYER magnolia"), names(index.search("mags@", 10)));
+
+        assertEquals(0, index.search("carlsen", 10, false).size());
+        assertEquals(0, index.search("mags@", 10, false).size());
+        assertEquals(0, index.search("example magnus", 10, false).size());
+        List<SearchIndex.Hit> members = index.search("magnus", 10, false);
+        assertEquals(names("PLAYER magnus"), names(members));
+        assertTrue(members.get(0).getDetail().isEmpty());
+        // Words shared with the username still match
+        assertEquals(names("PLAYER anna_k", "LESSON 7"), names(index.search("anna", 10, false)));
+        assertEquals("anna_k with Susan Polgar: Ruy Lopez main lines",
+                index.search("ruy", 10, false).get(0).getDetail());
+    }
+
+    private static List<String> names(String... hits) {
+        return Arrays.asList(hits);
+    }
+
+    private static List<String> names(List<SearchIndex.Hit> hits) {
+        List<String> names = new ArrayList<>();
+        for (SearchIndex.Hit hit : hits) {
+            names.add(hit.getKind() + " " + hit.getName());
+        }
+        return names;
+    }
+}
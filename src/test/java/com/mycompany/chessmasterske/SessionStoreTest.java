@@ -0,0 +1,62 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that tokens find their sessions until they are logged
+ * out or left idle past the time-to-live, and that a full store drops its
+ * oldest sessions first.
+ */
+class SessionStoreTest {
+    @Test
+    void tokensFindSessionsUntilLogout() {
+        SessionStore store = new SessionStore();
+        SessionStore.Session anna = store.create("anna");
+        SessionStore.Session again = store.create("anna");
+        assertNotEquals(anna.getToken(), again.getToken());
+        assertSame(anna, store.find(anna.getToken()));
+        assertEquals("anna", store.find(again.getToken()).getUsername());
+        assertNull(store.find("made-up"));
+        assertNull(store.find(null));
+
+        assertTrue(store.invalidate(anna.getToken()));
+        assertFalse(store.invalidate(anna.getToken()));
+        assertNull(store.find(anna.getToken()));
+        assertSame(again, store.find(again.getToken()));
+    }
+
+    @Test
+    void idleSessionsExpire() throws InterruptedException {
+        SessionStore store = new SessionStore(500, 10);
+        SessionStore.Session used = store.create("anna");
+        SessionStore.Session idle = store.create("bob");
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(150);
+            // Each use pushes the expiry back
+            assertSame(used, store.find(used.getToken()));
+        }
+        assertNull(store.find(idle.getToken()));
+    }
+
+    @Test
+    void fullStoreDropsOldestFirst() {
+        SessionStore store = new SessionStore(60_000, 3);
+        SessionStore.Session[] sessions = new SessionStore.Session[5];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = store.create("member" + i);
+        }
+        assertEquals(3, store.size());
+        assertNull(store.find(sessions[0].getToken()));
+        assertNull(store.find(sessions[1].getToken()));
+        for (int i = 2; i < sessions.length; i++) {
+            assertSame(sessions[i], store.find(sessions[i].getToken()));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that the ring spreads keys evenly and that adding a
+ * shard only moves keys to the new shard, and that a user store split into
+ * shards keeps every user of the file it was split from.
+ */
+class ShardRingTest {
+    private static final int KEYS = 100_000;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeFiles() {
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void keysAreSpreadEvenly() {
+        ShardRing ring = new ShardRing(8);
+        int[] counts = new int[ring.size()];
+        for (int i = 0; i < KEYS; i++) {
+            counts[ring.shardOf("user" + i)]++;
+        }
+        for (int count : counts) {
+            // Within a third of an even share
+            assertTrue(Math.abs(count - KEYS / 8) < KEYS / 24, count + " keys in one shard");
+        }
+    }
+
+    @Test
+    void addingAShardMovesKeysOnlyToIt() {
+        ShardRing before = new ShardRing(4);
+        ShardRing after = new ShardRing(5);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user" + i;
+            int shard = after.shardOf(key);
+            if (shard != before.shardOf(key)) {
+                assertEquals(4, shard, key);
+                moved++;
+            }
+        }
+        assertTrue(moved < KEYS / 5 * 4 / 3, moved + " keys moved");
+    }
+
+    @Test
+    void splittingKeepsEveryUser() throws Exception {
+        Path usersPath = directory.resolve("users.txt");
+        UserStore unsharded = UserStore.open(usersPath.toString(), GroupCommitWriter.create());
+        for (int i = 0; i < 100; i++) {
+            unsharded.registerHashed(UserStoreTest.user("player" + i, "player" + i + "@example.com")).join();
+        }
+        RecordFile.closeAll();
+
+        UserStore sharded = UserStore.openSharded(usersPath.toString(), 4);
+        assertTrue(sharded.isSharded());
+        assertFalse(Files.exists(usersPath));
+        assertTrue(Files.exists(directory.resolve("users.txt.unsharded")));
+        sharded.registerHashed(UserStoreTest.user("newcomer", "newcomer@example.com")).join();
+        assertEquals(101, sharded.size());
+        RecordFile.closeAll();
+
+        UserStore reopened = UserStore.openSharded(usersPath.toString(), 4);
+        assertEquals(101, reopened.size());
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(reopened.find("player" + i));
+        }
+        assertNotNull(reopened.find("newcomer"));
+        assertThrows(IOException.class, () -> UserStore.openSharded(usersPath.toString(), 8));
+    }
+}
@@ -0,0 +1,73 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that a user store reopened from its snapshot parses
+ * only the records appended after it and still finds every user, and that
+ * a snapshot that no longer matches the users file is ignored.
+ */
+class UserSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeFiles() {
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void reopensFromSnapshotAndTail() throws Exception {
+        String fileName = directory.resolve("users.txt").toString();
+        UserStore store = UserStore.open(fileName, GroupCommitWriter.create());
+        for (int i = 0; i < 200; i++) {
+            store.registerHashed(UserStoreTest.user("player" + i, "player" + i + "@example.com")).join();
+        }
+        store.writeSnapshot();
+        assertEquals(0, store.recordsSinceSnapshot());
+        for (int i = 200; i < 250; i++) {
+            store.registerHashed(UserStoreTest.user("player" + i, "player" + i + "@example.com")).join();
+        }
+        RecordFile.closeAll();
+
+        UserStore reopened = UserStore.open(fileName, GroupCommitWriter.create());
+        assertEquals(50, reopened.recordsSinceSnapshot());
+        assertEquals(250, reopened.size());
+        for (int i = 0; i < 250; i++) {
+            UserRecord user = reopened.find("player" + i);
+            assertNotNull(user, "player" + i);
+            assertEquals("player" + i + "@example.com", user.getEmail());
+            assertTrue(reopened.isEmailTaken("PLAYER" + i + "@example.com"));
+        }
+        assertNull(reopened.find("player250"));
+        assertFalse(reopened.isEmailTaken("player250@example.com"));
+    }
+
+    @Test
+    void staleSnapshotIsIgnored() throws Exception {
+        String fileName = directory.resolve("users.txt").toString();
+        UserStore store = UserStore.open(fileName, GroupCommitWriter.create());
+        store.registerHashed(UserStoreTest.user("alice", "alice@example.com")).join();
+        store.writeSnapshot();
+        RecordFile.closeAll();
+        // The users file is replaced behind the snapshot's back
+        Files.delete(directory.resolve("users.txt"));
+        Files.delete(RecordFile.indexPath(directory.resolve("users.txt")));
+
+        UserStore reopened = UserStore.open(fileName, GroupCommitWriter.create());
+        assertNull(reopened.find("alice"));
+        reopened.registerHashed(UserStoreTest.user("bob", "bob@example.com")).join();
+        assertEquals(1, reopened.size());
+    }
+}
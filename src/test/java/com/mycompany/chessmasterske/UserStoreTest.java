@@ -0,0 +1,95 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that a username or email is registered only once,
+ * emails ignoring case and surrounding spaces, also when the users are
+ * split into shards and the two registrations land on different shards.
+ */
+class UserStoreTest {
+    // Hashed cheaply, so registering does not spend the real work factor
+    private static final String PASSWORD = PasswordHasher.hash("secret", 1000);
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeFiles() {
+        RecordFile.closeAll();
+    }
+
+    @Test
+    void duplicatesAreRefused() throws Exception {
+        UserStore store = UserStore.open(directory.resolve("users.txt").toString(), GroupCommitWriter.create());
+        store.registerHashed(user("alice", "Alice@example.com")).join();
+        assertTrue(store.isUsernameTaken("alice"));
+        assertTrue(store.isEmailTaken(" alice@EXAMPLE.com"));
+        assertFalse(store.isEmailTaken("bob@example.com"));
+
+        assertRefused(DuplicateRegistrationException.USERNAME, store.registerHashed(user("alice", "other@example.com")));
+        assertRefused(DuplicateRegistrationException.EMAIL, store.registerHashed(user("bob", "alice@example.com ")));
+        store.registerHashed(user("bob", "bob@example.com")).join();
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void emailIsUniqueAcrossShards() throws Exception {
+        UserStore store = UserStore.openSharded(directory.resolve("users.txt").toString(), 4);
+        ShardRing ring = new ShardRing(4);
+        String other = "bob";
+        for (int i = 0; ring.shardOf(other) == ring.shardOf("alice"); i++) {
+            other = "bob" + i;
+        }
+        store.registerHashed(user("alice", "alice@example.com")).join();
+        assertRefused(DuplicateRegistrationException.EMAIL, store.registerHashed(user(other, "ALICE@example.com")));
+        assertFalse(store.isUsernameTaken(other));
+    }
+
+    @Test
+    void racingRegistrationsForOneEmailLetOneThrough() throws Exception {
+        UserStore store = UserStore.openSharded(directory.resolve("users.txt").toString(), 4);
+        List<CompletableFuture<Void>> attempts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String username = "player" + i;
+            attempts.add(CompletableFuture.supplyAsync(() -> store.registerHashed(user(username, "shared@example.com")))
+                    .thenCompose(registration -> registration));
+        }
+        int registered = 0;
+        for (CompletableFuture<Void> attempt : attempts) {
+            try {
+                attempt.join();
+                registered++;
+            } catch (CompletionException ex) {
+                assertInstanceOf(DuplicateRegistrationException.class, ex.getCause());
+            }
+        }
+        assertEquals(1, registered);
+        assertEquals(1, store.size());
+    }
+
+    static UserRecord user(String username, String email) {
+        return new UserRecord(username, email, PASSWORD, 1200);
+    }
+
+    private static void assertRefused(String field, CompletableFuture<Void> registration) {
+        CompletionException failure = assertThrows(CompletionException.class, registration::join);
+        DuplicateRegistrationException duplicate = assertInstanceOf(DuplicateRegistrationException.class,
+                failure.getCause());
+        assertEquals(field, duplicate.getField());
+    }
+}
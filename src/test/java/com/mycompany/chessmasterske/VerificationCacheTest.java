@@ -0,0 +1,37 @@
+package com.mycompany.chessmasterske;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class checks that the verification cache matches only the exact
+ * login it remembered, until the stored hash changes, the entry expires or
+ * it is the least recently used one of a full cache.
+ */
+class VerificationCacheTest {
+    @Test
+    void cacheMatchesOnlyTheRememberedLogin() {
+        VerificationCache cache = new VerificationCache(60_000, 2);
+        cache.put("alice", "secret", "hash1");
+        assertTrue(cache.contains("alice", "secret", "hash1"));
+        assertFalse(cache.contains("alice", "wrong", "hash1"));
+        assertFalse(cache.contains("bob", "secret", "hash1"));
+        // A changed password hash no longer matches
+        assertFalse(cache.contains("alice", "secret", "hash2"));
+
+        cache.put("bob", "secret", "hash1");
+        cache.put("carol", "secret", "hash1");
+        assertFalse(cache.contains("alice", "secret", "hash1"));
+        assertTrue(cache.contains("carol", "secret", "hash1"));
+    }
+
+    @Test
+    void cacheEntriesExpire() throws Exception {
+        VerificationCache cache = new VerificationCache(1, 10);
+        cache.put("alice", "secret", "hash1");
+        Thread.sleep(20);
+        assertFalse(cache.contains("alice", "secret", "hash1"));
+    }
+}